@@ -53,7 +53,11 @@ public static String toPrettyString(Object j) {
 	 * Serialize one and two into JSON objects, split each into component
 	 * alphanumeric characters, sort them by characters, and then compare the
 	 * result.
+	 * 
+	 * @deprecated this is quadratic in the size of the JSON, and will not detect
+	 *             values that were swapped between fields; use ZHJsonDiff instead.
 	 */
+	@Deprecated
 	public static boolean isEqualBySortedAlphanumerics(Object one, Object two, ObjectMapper om) throws JsonProcessingException {
 
 		List<String> jsonStrings = Arrays.asList(one, two).stream().map(e -> {
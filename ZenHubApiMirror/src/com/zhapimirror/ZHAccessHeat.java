@@ -0,0 +1,231 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapimirror;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Tracks how frequently clients read each resource, as a decaying counter:
+ * each read adds 1 to the heat of the resource (and of its repository), and
+ * the heat halves every half-life. A resource that is read once per half-life
+ * thus has a heat between 1 and 2, and the heat of a resource that is no longer
+ * read decays towards 0.
+ * 
+ * The heat is used to spend more of the ZenHub request budget on the resources
+ * that clients actually read: hot repositories are fully refreshed more often
+ * by the rolling full scan (ZHRollingFullScan), and their hot issues are
+ * re-requested as part of each full refresh.
+ * 
+ * Only client reads (via the REST API) are counted, not the reads of the mirror
+ * itself. The heat is not persisted, and so starts cold after a restart.
+ * 
+ * This class is thread safe.
+ */
+public class ZHAccessHeat {
+
+	/** An issue at or above this heat is considered hot. */
+	public static final double HOT_ISSUE_HEAT = 1;
+
+	/** Resources whose heat decays below this value are forgotten when the map is pruned */
+	private static final double MIN_HEAT = 0.05;
+
+	private static final int MAX_ENTRIES = 100000;
+
+	private final long halfLifeInNanos;
+
+	/** resource key -> heat of that resource */
+	private final Map<String, ZHHeat> resources = new ConcurrentHashMap<>();
+
+	/** repo id -> total heat of the resources of that repository */
+	private final Map<Long, ZHHeat> repositories = new ConcurrentHashMap<>();
+
+	/** The resources map is pruned once it grows beyond this size */
+	private volatile int pruneThreshold = MAX_ENTRIES;
+
+	private static final ZHLog log = ZHLog.getInstance();
+
+	public ZHAccessHeat(long halfLifeInMinutes) {
+		if (halfLifeInMinutes <= 0) {
+			throw new IllegalArgumentException("Invalid access heat half-life: " + halfLifeInMinutes);
+		}
+
+		this.halfLifeInNanos = TimeUnit.NANOSECONDS.convert(halfLifeInMinutes, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Record a client read of the resource.
+	 * 
+	 * @param issueNumber the issue number of an issue-level resource (epic, issue
+	 *                    data, issue events), or null for a repository-level
+	 *                    resource
+	 */
+	public void recordRead(String resourceType, long repoId, Integer issueNumber) {
+		long now = System.nanoTime();
+
+		String key = resourceType + "/" + repoId + (issueNumber != null ? "/" + issueNumber : "");
+
+		resources.compute(key, (k, v) -> v != null ? v.increment(now, halfLifeInNanos)
+				: new ZHHeat(resourceType, repoId, issueNumber, 1, now));
+
+		repositories.compute(repoId,
+				(k, v) -> v != null ? v.increment(now, halfLifeInNanos) : new ZHHeat(null, repoId, null, 1, now));
+
+		if (resources.size() > pruneThreshold) {
+			prune(now);
+		}
+	}
+
+	/** The total heat of all the resources of the repository. */
+	public double getRepositoryHeat(long repoId) {
+		ZHHeat heat = repositories.get(repoId);
+		return heat != null ? heat.getHeat(System.nanoTime(), halfLifeInNanos) : 0;
+	}
+
+	/**
+	 * Return up to 'limit' issues of the repository whose heat (the total of the
+	 * issue data, issue events and epic of the issue) is at least HOT_ISSUE_HEAT,
+	 * hottest first.
+	 */
+	public List<Integer> getHotIssues(long repoId, int limit) {
+		long now = System.nanoTime();
+
+		Map<Integer, Double> heatByIssue = new HashMap<>();
+
+		for (ZHHeat e : resources.values()) {
+			if (e.repoId == repoId && e.issueNumber != null) {
+				heatByIssue.merge(e.issueNumber, e.getHeat(now, halfLifeInNanos), Double::sum);
+			}
+		}
+
+		return heatByIssue.entrySet().stream().filter(e -> e.getValue() >= HOT_ISSUE_HEAT)
+				.sorted(Map.Entry.<Integer, Double>comparingByValue().reversed()).limit(limit).map(e -> e.getKey())
+				.collect(Collectors.toList());
+	}
+
+	/** Return up to 'limit' of the most frequently read resources, hottest first. */
+	public List<ZHAccessHeatEntryJson> getHotResources(int limit) {
+		long now = System.nanoTime();
+
+		List<ZHAccessHeatEntryJson> result = new ArrayList<>();
+
+		for (ZHHeat e : resources.values()) {
+			ZHAccessHeatEntryJson entry = new ZHAccessHeatEntryJson();
+			entry.setResourceType(e.resourceType);
+			entry.setRepoId(e.repoId);
+			entry.setIssueNumber(e.issueNumber);
+			entry.setHeat(e.getHeat(now, halfLifeInNanos));
+			result.add(entry);
+		}
+
+		result.sort(Comparator.comparingDouble(ZHAccessHeatEntryJson::getHeat).reversed());
+
+		return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+	}
+
+	/**
+	 * Forget the resources (and repositories) whose heat has decayed; if most of
+	 * the resources are still hot, the map is allowed to grow before the next
+	 * prune, so that we do not prune on every read.
+	 */
+	private synchronized void prune(long now) {
+		if (resources.size() <= pruneThreshold) {
+			return;
+		}
+
+		int before = resources.size();
+
+		resources.values().removeIf(e -> e.getHeat(now, halfLifeInNanos) < MIN_HEAT);
+		repositories.values().removeIf(e -> e.getHeat(now, halfLifeInNanos) < MIN_HEAT);
+
+		pruneThreshold = Math.max(MAX_ENTRIES, resources.size() * 2);
+
+		log.logDebug("Access heat pruned from " + before + " to " + resources.size() + " resources.");
+	}
+
+	/** The heat of a resource (or repository) as of a given time; immutable. */
+	private static class ZHHeat {
+		private final String resourceType;
+		private final long repoId;
+		private final Integer issueNumber;
+		private final double heat;
+		private final long asOfInNanos;
+
+		ZHHeat(String resourceType, long repoId, Integer issueNumber, double heat, long asOfInNanos) {
+			this.resourceType = resourceType;
+			this.repoId = repoId;
+			this.issueNumber = issueNumber;
+			this.heat = heat;
+			this.asOfInNanos = asOfInNanos;
+		}
+
+		double getHeat(long now, long halfLifeInNanos) {
+			return heat * Math.pow(0.5, (double) Math.max(0, now - asOfInNanos) / halfLifeInNanos);
+		}
+
+		ZHHeat increment(long now, long halfLifeInNanos) {
+			return new ZHHeat(resourceType, repoId, issueNumber, getHeat(now, halfLifeInNanos) + 1, now);
+		}
+	}
+
+	/** A single resource, and its current heat, as returned by the diagnostics endpoint. */
+	public static class ZHAccessHeatEntryJson {
+		private String resourceType;
+		private long repoId;
+		private Integer issueNumber;
+		private double heat;
+
+		/** One of the RESOURCE_* constants of RepositoryChangeEventJson */
+		public String getResourceType() {
+			return resourceType;
+		}
+
+		public void setResourceType(String resourceType) {
+			this.resourceType = resourceType;
+		}
+
+		public long getRepoId() {
+			return repoId;
+		}
+
+		public void setRepoId(long repoId) {
+			this.repoId = repoId;
+		}
+
+		public Integer getIssueNumber() {
+			return issueNumber;
+		}
+
+		public void setIssueNumber(Integer issueNumber) {
+			this.issueNumber = issueNumber;
+		}
+
+		public double getHeat() {
+			return heat;
+		}
+
+		public void setHeat(double heat) {
+			this.heat = heat;
+		}
+	}
+}
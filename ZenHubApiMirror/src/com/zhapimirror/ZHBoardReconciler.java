@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapimirror;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zhapi.json.BoardPipelineEntryJson;
+import com.zhapi.json.BoardPipelineIssueEntryJson;
+import com.zhapi.json.responses.GetBoardForRepositoryResponseJson;
+
+/**
+ * The ZenHub board of a repository already contains the pipeline, estimate and
+ * position of every open issue in the repository. By comparing each new board
+ * with the previous board that we stored, we can determine which issues have
+ * changed on ZenHub, and request the issue data/events of only those issues
+ * (rather than of every issue in the repository).
+ * 
+ * An issue that was added to, or removed from, the board (for example, because
+ * it was opened or closed) is also considered changed.
+ */
+public class ZHBoardReconciler {
+
+	private static final ZHLog log = ZHLog.getInstance();
+
+	/**
+	 * Return the issue numbers whose pipeline, estimate or position differ
+	 * between the old board and the new board. If there is no old board, all the
+	 * issues of the new board are returned.
+	 */
+	public static Set<Integer> getChangedIssues(GetBoardForRepositoryResponseJson oldBoard,
+			GetBoardForRepositoryResponseJson newBoard) throws JsonProcessingException {
+
+		ObjectMapper om = new ObjectMapper();
+
+		Map<Integer, String> oldState = getIssueStates(oldBoard, om);
+		Map<Integer, String> newState = getIssueStates(newBoard, om);
+
+		Set<Integer> result = new TreeSet<>();
+
+		newState.forEach((issueNumber, state) -> {
+			if (!state.equals(oldState.get(issueNumber))) {
+				result.add(issueNumber);
+			}
+		});
+
+		oldState.keySet().stream().filter(e -> !newState.containsKey(e)).forEach(result::add);
+
+		return result;
+	}
+
+	/**
+	 * Compare the new board with the board in the database, and add each changed
+	 * issue to the work queue. This must be called before the new board is
+	 * persisted.
+	 * 
+	 * @return the issue numbers that were changed
+	 */
+	public static Set<Integer> queueChangedIssues(GetBoardForRepositoryResponseJson newBoard, GHOwner owner,
+			String repoName, long repoId, ZHWorkQueue workQueue) throws JsonProcessingException {
+
+		GetBoardForRepositoryResponseJson oldBoard = workQueue.getDb().getZenHubBoardForRepo(repoId).orElse(null);
+
+		Set<Integer> changed = getChangedIssues(oldBoard, newBoard);
+
+		if (!changed.isEmpty()) {
+			log.logDebug("Board changes in " + repoName + " affect " + changed.size() + " issue(s): " + changed);
+		}
+
+		changed.forEach(issueNumber -> workQueue.addIssue(owner, repoName, repoId, issueNumber));
+
+		return changed;
+	}
+
+	/**
+	 * Map each issue on the board to a string that contains the pipeline,
+	 * estimate and position of the issue; two issues are unchanged if their
+	 * strings are equal.
+	 */
+	private static Map<Integer, String> getIssueStates(GetBoardForRepositoryResponseJson board, ObjectMapper om)
+			throws JsonProcessingException {
+
+		Map<Integer, String> result = new HashMap<>();
+		if (board == null || board.getPipelines() == null) {
+			return result;
+		}
+
+		for (BoardPipelineEntryJson pipeline : board.getPipelines()) {
+			if (pipeline.getIssues() == null) {
+				continue;
+			}
+
+			for (BoardPipelineIssueEntryJson issue : pipeline.getIssues()) {
+				String estimate = issue.getEstimate() != null ? om.writeValueAsString(issue.getEstimate()) : "";
+
+				result.put(issue.getIssue_number(),
+						pipeline.getId() + "|" + issue.getPosition() + "|" + estimate + "|" + issue.isIs_epic());
+			}
+		}
+
+		return result;
+	}
+
+}
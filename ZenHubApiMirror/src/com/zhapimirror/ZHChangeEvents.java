@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapimirror;
+
+import java.util.List;
+import java.util.UUID;
+
+import com.zhapi.shared.json.RepositoryChangeEventJson;
+import com.zhapimirror.ZHJsonDiff.ZHJsonDiffEntry;
+
+/**
+ * Records resource-level change events to the change feed: each persist that
+ * changes the content of a resource (board, epics list, epic, dependencies,
+ * issue data, issue events) records an event that identifies the resource, so
+ * that consumers of the feed can request only that resource.
+ */
+public class ZHChangeEvents {
+
+	/** Maximum number of differences that are included in the summary of an event. */
+	public static final int MAX_SUMMARY_ENTRIES = 5;
+
+	private static final ZHLog log = ZHLog.getInstance();
+
+	private ZHChangeEvents() {
+	}
+
+	/**
+	 * Compare the old and new versions of a resource; if they differ, record a
+	 * change event for the resource.
+	 * 
+	 * @param issueNumber the issue number of an issue-level resource (epic, issue
+	 *                    data, issue events), or null for a repository-level
+	 *                    resource
+	 * @return true if the resource changed
+	 */
+	public static boolean persistIfChanged(ZHDatabase db, String resourceType, long repoId, Integer issueNumber,
+			Object oldVersion, Object newVersion) {
+
+		// One more entry than we include, so the summary can indicate that there were more
+		List<ZHJsonDiffEntry> diff = ZHJsonDiff.diff(oldVersion, newVersion, MAX_SUMMARY_ENTRIES + 1);
+		if (diff.isEmpty()) {
+			return false;
+		}
+
+		String summary = oldVersion == null ? "created" : ZHJsonDiff.toSummary(diff, MAX_SUMMARY_ENTRIES);
+
+		persist(db, resourceType, repoId, issueNumber, summary);
+
+		return true;
+	}
+
+	/** Record a change event for the resource. */
+	public static void persist(ZHDatabase db, String resourceType, long repoId, Integer issueNumber,
+			String changeSummary) {
+
+		RepositoryChangeEventJson rcej = new RepositoryChangeEventJson();
+		rcej.setRepoId(repoId);
+		rcej.setTime(System.currentTimeMillis());
+		rcej.setUuid(UUID.randomUUID().toString());
+		rcej.setResourceType(resourceType);
+		rcej.setIssueNumber(issueNumber);
+		rcej.setChangeSummary(changeSummary);
+
+		log.logDebug("Resource changed: " + resourceType + " of " + repoId + (issueNumber != null ? "/" + issueNumber : "")
+				+ ": " + changeSummary);
+
+		db.persistRepositoryChangeEvent(rcej);
+	}
+
+}
@@ -25,7 +25,9 @@
 import com.zhapi.json.responses.GetEpicResponseJson;
 import com.zhapi.json.responses.GetEpicsResponseJson;
 import com.zhapi.json.responses.GetIssueDataResponseJson;
+import com.zhapi.shared.json.ChangeFeedResponseJson;
 import com.zhapi.shared.json.RepositoryChangeEventJson;
+import com.zhapimirror.ZHResourceMetadata.ZHResourceMetadataJson;
 
 /**
  * This interface abstracts the persistence of ZenHub JSON resources, allowing
@@ -36,14 +38,17 @@
  */
 public interface ZHDatabase {
 
-	public static final String LAST_FULL_SCAN = "lastFullScan";
-
 	public Optional<GetIssueDataResponseJson> getIssueData(long repoId, int issueNumber);
 
 	public void persist(GetIssueDataResponseJson json, long repoId, int issueNumber);
 
 	public Optional<List<IssueEventJson>> getIssueEvents(long repoId, int issueNumber);
 
+	/**
+	 * Persist the complete list of events of an issue (newest first, as returned by
+	 * ZenHub); implementations may store only the events that are newer than
+	 * those previously persisted.
+	 */
 	public void persist(List<IssueEventJson> events, long repoId, int issueNumber);
 
 	public Optional<GetBoardForRepositoryResponseJson> getZenHubBoardForRepo(long repoId);
@@ -62,10 +67,41 @@ public interface ZHDatabase {
 
 	public void persist(GetEpicResponseJson epic, long repoId, int issueId);
 
+	/**
+	 * Return the numbers of the issues of the repository for which any
+	 * issue-level resource (issue data, issue events, epic) is stored, in
+	 * ascending order.
+	 */
+	public List<Integer> getIssueNumbers(long repoId);
+
+	/**
+	 * Return the freshness metadata of a resource, identified by its
+	 * RepositoryChangeEventJson resource type.
+	 * 
+	 * @param issueNumber the issue number of an issue-level resource, or null for
+	 *                    a repository-level resource
+	 */
+	public Optional<ZHResourceMetadataJson> getResourceMetadata(String resourceType, long repoId, Integer issueNumber);
+
+	public void persist(ZHResourceMetadataJson metadata, String resourceType, long repoId, Integer issueNumber);
+
 	public void persistRepositoryChangeEvent(RepositoryChangeEventJson newEvent);
 
 	public List<RepositoryChangeEventJson> getRecentRepositoryChangeEvents(long timestampEqualOrGreater);
 
+	/**
+	 * Return up to 'limit' change events with a sequence number greater than
+	 * afterSeq, in ascending sequence order. The persistRepositoryChangeEvent(...)
+	 * method assigns each event its sequence number.
+	 */
+	public ChangeFeedResponseJson getChangeEvents(long afterSeq, int limit);
+
+	/**
+	 * Return the sequence number of the most recently persisted change event (or 0
+	 * if none); this is the current position (head) of the change feed.
+	 */
+	public long getLastChangeEventSeq();
+
 	public boolean isDatabaseInitialized();
 
 	public void initializeDatabase();
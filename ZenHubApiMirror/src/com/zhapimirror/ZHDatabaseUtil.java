@@ -16,6 +16,8 @@
 
 package com.zhapimirror;
 
+import com.zhapi.shared.json.RepositoryChangeEventJson;
+
 /**
  * Utility functions that may be used by implementers of the ZHDatabase
  * interface.
@@ -87,4 +89,44 @@ public static String generateEpicKey(long repoId, int issueId) {
 		return sb.toString();
 	}
 
+	/**
+	 * The key of the freshness metadata of a resource, which is stored alongside
+	 * the resource itself.
+	 */
+	public static String generateResourceMetadataKey(String resourceType, long repoId, Integer issueNumber) {
+		String resourceKey;
+
+		switch (resourceType) {
+		case RepositoryChangeEventJson.RESOURCE_BOARD:
+			resourceKey = generateZenHubBoardKey(repoId);
+			break;
+		case RepositoryChangeEventJson.RESOURCE_EPICS:
+			resourceKey = generateEpicsPluralKey(repoId);
+			break;
+		case RepositoryChangeEventJson.RESOURCE_DEPENDENCIES:
+			resourceKey = generateDependenciesForARepoKey(repoId);
+			break;
+		case RepositoryChangeEventJson.RESOURCE_EPIC:
+			resourceKey = generateEpicKey(repoId, requireIssueNumber(resourceType, issueNumber));
+			break;
+		case RepositoryChangeEventJson.RESOURCE_ISSUE_DATA:
+			resourceKey = generateIssueDataKey(repoId, requireIssueNumber(resourceType, issueNumber));
+			break;
+		case RepositoryChangeEventJson.RESOURCE_ISSUE_EVENTS:
+			resourceKey = generateIssueEventsKey(repoId, requireIssueNumber(resourceType, issueNumber));
+			break;
+		default:
+			throw new IllegalArgumentException("Unrecognized resource type: " + resourceType);
+		}
+
+		return resourceKey + "-metadata";
+	}
+
+	private static int requireIssueNumber(String resourceType, Integer issueNumber) {
+		if (issueNumber == null) {
+			throw new IllegalArgumentException("An issue number is required for resource type: " + resourceType);
+		}
+		return issueNumber;
+	}
+
 }
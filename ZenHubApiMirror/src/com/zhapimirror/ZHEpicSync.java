@@ -0,0 +1,247 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapimirror;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.zhapi.json.EpicIssueJson;
+import com.zhapi.json.responses.GetEpicResponseJson;
+import com.zhapi.json.responses.GetEpicsResponseJson;
+
+/**
+ * Determines which epics of a repository need to be requested from ZenHub,
+ * rather than requesting every epic of the repository on every full scan.
+ * 
+ * An epic is marked as pending (and persisted to the database, so that the
+ * mark survives a restart) when:
+ * 
+ * - The epic was added to the epics list of the repository.
+ * 
+ * - The epic issue itself, or one of the child issues that we stored for the
+ * epic, changed on the board (pipeline/estimate/position) or in its issue data.
+ * 
+ * Only pending epics, and epics that we have never stored, are requested. A
+ * complete reconciliation of all the epics of a repository is still performed
+ * every X hours, as a safety net (for example, for child issues that were added
+ * to an epic without otherwise changing, or for children in other
+ * repositories).
+ * 
+ * This class is thread safe.
+ */
+public class ZHEpicSync {
+
+	private static final String KEY_PREFIX = "epic-sync-";
+
+	private final Object lock = new Object();
+
+	private final ZHDatabase db;
+
+	private final long fullReconciliationIntervalInMsecs;
+
+	private static final ZHLog log = ZHLog.getInstance();
+
+	public ZHEpicSync(ZHDatabase db, long fullReconciliationIntervalInHours) {
+		this.db = db;
+		this.fullReconciliationIntervalInMsecs = TimeUnit.MILLISECONDS.convert(fullReconciliationIntervalInHours,
+				TimeUnit.HOURS);
+	}
+
+	/**
+	 * Compare the new epics list with the previous epics list, and mark any newly
+	 * added epics as pending.
+	 */
+	public void reportEpicsListChanged(long repoId, GetEpicsResponseJson oldEpics, GetEpicsResponseJson newEpics) {
+
+		Set<Integer> oldEpicNumbers = getEpicNumbers(oldEpics);
+		Set<Integer> newEpicNumbers = getEpicNumbers(newEpics);
+
+		Set<Integer> added = new TreeSet<>(newEpicNumbers);
+		added.removeAll(oldEpicNumbers);
+
+		if (!added.isEmpty()) {
+			log.logDebug("Epics added to repository " + repoId + ": " + added);
+			markPending(repoId, added);
+		}
+
+		// Epics that were removed from the list can no longer be requested
+		synchronized (lock) {
+			Set<Integer> pending = getPending(repoId);
+			if (pending.retainAll(newEpicNumbers)) {
+				persistPending(repoId, pending);
+			}
+		}
+	}
+
+	/**
+	 * The given issues changed on ZenHub (on the board, or in their issue data):
+	 * mark as pending each epic that either is one of those issues, or contains
+	 * one of those issues.
+	 */
+	public void reportIssuesChanged(long repoId, Collection<Integer> issueNumbers) {
+		if (issueNumbers.isEmpty()) {
+			return;
+		}
+
+		Set<Integer> epicNumbers = getEpicNumbers(db.getEpics(repoId).orElse(null));
+
+		Set<Integer> affected = new TreeSet<>();
+
+		for (int epicNumber : epicNumbers) {
+			if (issueNumbers.contains(epicNumber)) {
+				affected.add(epicNumber);
+				continue;
+			}
+
+			GetEpicResponseJson epic = db.getEpic(repoId, epicNumber).orElse(null);
+			if (epic == null || epic.getIssues() == null) {
+				// Never stored, so will be requested anyways
+				continue;
+			}
+
+			boolean containsChangedIssue = epic.getIssues().stream()
+					.anyMatch(e -> e.getRepo_id() == repoId && issueNumbers.contains(e.getIssue_number()));
+			if (containsChangedIssue) {
+				affected.add(epicNumber);
+			}
+		}
+
+		if (!affected.isEmpty()) {
+			log.logDebug("Issue changes in repository " + repoId + " affect epic(s): " + affected);
+			markPending(repoId, affected);
+		}
+	}
+
+	/**
+	 * Return the epic numbers of the given epics list that should be requested:
+	 * those that are pending or have never been stored, or all of them if a full
+	 * reconciliation is due.
+	 * 
+	 * The returned epics are no longer pending (so that an epic that is marked
+	 * pending again while the epics are being requested stays pending); the caller
+	 * must call reportEpicsNotRefreshed(...) for any of them that it was unable to
+	 * request.
+	 */
+	public ZHEpicSyncResult getEpicsToRefresh(long repoId, GetEpicsResponseJson epics) {
+
+		Set<Integer> epicNumbers = getEpicNumbers(epics);
+
+		Long lastFullReconciliation = db.getLong(key(repoId, "last-full-reconciliation")).orElse(null);
+
+		boolean fullReconciliation = lastFullReconciliation == null
+				|| System.currentTimeMillis() - lastFullReconciliation >= fullReconciliationIntervalInMsecs;
+
+		synchronized (lock) {
+			Set<Integer> pending = getPending(repoId);
+
+			List<Integer> result = fullReconciliation ? new ArrayList<>(epicNumbers)
+					: epicNumbers.stream().filter(e -> pending.contains(e) || !db.getEpic(repoId, e).isPresent())
+							.collect(Collectors.toList());
+
+			if (pending.removeAll(result)) {
+				persistPending(repoId, pending);
+			}
+
+			return new ZHEpicSyncResult(result, fullReconciliation);
+		}
+	}
+
+	/**
+	 * Called when some of the epics returned by getEpicsToRefresh(...) could not be
+	 * requested (for example, the request failed): they are pending again.
+	 */
+	public void reportEpicsNotRefreshed(long repoId, Collection<Integer> epicNumbers) {
+		if (!epicNumbers.isEmpty()) {
+			markPending(repoId, epicNumbers);
+		}
+	}
+
+	/**
+	 * Called after all the epics returned by getEpicsToRefresh(...) were
+	 * requested.
+	 */
+	public void reportEpicsRefreshed(long repoId, ZHEpicSyncResult refreshed) {
+
+		if (refreshed.isFullReconciliation()) {
+			db.persistLong(key(repoId, "last-full-reconciliation"), System.currentTimeMillis());
+		}
+	}
+
+	private void markPending(long repoId, Collection<Integer> epicNumbers) {
+		synchronized (lock) {
+			Set<Integer> pending = getPending(repoId);
+			if (pending.addAll(epicNumbers)) {
+				persistPending(repoId, pending);
+			}
+		}
+	}
+
+	private Set<Integer> getPending(long repoId) {
+		String str = db.getString(key(repoId, "pending")).orElse("").trim();
+		if (str.isEmpty()) {
+			return new TreeSet<>();
+		}
+
+		return Arrays.stream(str.split(",")).map(e -> Integer.parseInt(e.trim())).collect(Collectors.toCollection(TreeSet::new));
+	}
+
+	private void persistPending(long repoId, Set<Integer> pending) {
+		db.persistString(key(repoId, "pending"), pending.stream().map(e -> e.toString()).collect(Collectors.joining(",")));
+	}
+
+	private static Set<Integer> getEpicNumbers(GetEpicsResponseJson epics) {
+		Set<Integer> result = new TreeSet<>();
+		if (epics == null || epics.getEpic_issues() == null) {
+			return result;
+		}
+
+		for (EpicIssueJson e : epics.getEpic_issues()) {
+			result.add(e.getIssue_number());
+		}
+
+		return result;
+	}
+
+	private static String key(long repoId, String name) {
+		return KEY_PREFIX + repoId + "-" + name;
+	}
+
+	/** The epics of a repository to request, and whether this is a full reconciliation. */
+	public static class ZHEpicSyncResult {
+		private final Collection<Integer> epicNumbers;
+		private final boolean fullReconciliation;
+
+		public ZHEpicSyncResult(Collection<Integer> epicNumbers, boolean fullReconciliation) {
+			this.epicNumbers = epicNumbers;
+			this.fullReconciliation = fullReconciliation;
+		}
+
+		public Collection<Integer> getEpicNumbers() {
+			return epicNumbers;
+		}
+
+		public boolean isFullReconciliation() {
+			return fullReconciliation;
+		}
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapimirror;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import org.kohsuke.github.GitHub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A minimal client for those GitHub REST API requests that are not supported by
+ * the GitHub API library; specifically, conditional requests (If-None-Match
+ * with a previously returned ETag), which do not count against the GitHub rate
+ * limit when the resource is unchanged.
+ * 
+ * The connector and API URL of the given GitHub client are reused, so that any
+ * proxy/enterprise configuration is respected.
+ */
+public class ZHGitHubRestClient {
+
+	private final GitHub githubClient;
+
+	private final String authorization;
+
+	private final ObjectMapper om = new ObjectMapper();
+
+	private static final int PAGE_SIZE = 100;
+
+	public ZHGitHubRestClient(GitHub githubClient, String username, String password) {
+		this.githubClient = githubClient;
+
+		if (username != null && password != null) {
+			String credentials = username + ":" + password;
+			this.authorization = "Basic "
+					+ Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+		} else {
+			this.authorization = null;
+		}
+	}
+
+	/**
+	 * Issue a GET request on a GitHub API path that returns a JSON array, following
+	 * 'next' links until all pages have been read.
+	 * 
+	 * If an ETag is specified, and the first page of the resource has not changed
+	 * since that ETag was returned, then the result will be 'not modified' and no
+	 * further pages are requested. This is only correct for resources where any
+	 * change is reflected in the first page (eg lists sorted by most recently
+	 * updated, or filtered by 'since'); otherwise, use getAllPagesIfModified(...).
+	 * 
+	 * @param pathAndQuery path relative to the API URL, eg
+	 *                     '/repos/(owner)/(repo)/issues?state=all'
+	 * @param etag         ETag from a previous call with the same path, or null
+	 */
+	public ZHGitHubPagedResponse getAllPages(String pathAndQuery, String etag) throws IOException {
+
+		ZHGitHubPagedResponse result = readAllPages(pathAndQuery, etag);
+
+		return result != null ? result : new ZHGitHubPagedResponse(null, Collections.singletonList(etag), true);
+	}
+
+	/**
+	 * Same as getAllPages(...), but for resources where a change may affect any
+	 * page (for example, lists that are sorted by creation date, where new items
+	 * are added to the last page): each page is requested with its own ETag from
+	 * the previous call, and the result is only 'not modified' if every page is
+	 * unchanged, and there is no additional page. Otherwise, all pages are read.
+	 * 
+	 * Unchanged pages do not count against the rate limit; the request for the
+	 * (empty) page after the last page does.
+	 * 
+	 * @param pageEtags the page ETags of a previous call with the same path (see
+	 *                  ZHGitHubPagedResponse.getPageEtags()), or null
+	 */
+	public ZHGitHubPagedResponse getAllPagesIfModified(String pathAndQuery, List<String> pageEtags)
+			throws IOException {
+
+		if (pageEtags != null && !pageEtags.isEmpty() && !pageEtags.contains(null)) {
+
+			boolean notModified = true;
+
+			for (int page = 1; page <= pageEtags.size() && notModified; page++) {
+				HttpURLConnection connection = connect(toUrl(pathAndQuery) + "&page=" + page, pageEtags.get(page - 1));
+				notModified = connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED;
+				connection.disconnect();
+			}
+
+			if (notModified) {
+				String url = toUrl(pathAndQuery) + "&page=" + (pageEtags.size() + 1);
+				notModified = readPage(connect(url, null), url).size() == 0;
+			}
+
+			if (notModified) {
+				return new ZHGitHubPagedResponse(null, pageEtags, true);
+			}
+		}
+
+		return readAllPages(pathAndQuery, null);
+	}
+
+	/**
+	 * Read every page of the resource; returns null if an ETag for the first page
+	 * is specified, and the first page has not changed.
+	 */
+	private ZHGitHubPagedResponse readAllPages(String pathAndQuery, String firstPageEtag) throws IOException {
+
+		List<JsonNode> items = new ArrayList<>();
+
+		List<String> pageEtags = new ArrayList<>();
+
+		String nextUrl = toUrl(pathAndQuery);
+
+		while (nextUrl != null) {
+
+			HttpURLConnection connection = connect(nextUrl, pageEtags.isEmpty() ? firstPageEtag : null);
+
+			if (pageEtags.isEmpty() && firstPageEtag != null
+					&& connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				connection.disconnect();
+				return null;
+			}
+
+			items.addAll(readPage(connection, nextUrl));
+
+			pageEtags.add(connection.getHeaderField("ETag"));
+
+			nextUrl = parseNextLink(connection.getHeaderField("Link"));
+		}
+
+		return new ZHGitHubPagedResponse(items, pageEtags, false);
+	}
+
+	/** Return the JSON array items of a page; fails if the response is not HTTP 200. */
+	private List<JsonNode> readPage(HttpURLConnection connection, String url) throws IOException {
+
+		int code = connection.getResponseCode();
+		if (code != HttpURLConnection.HTTP_OK) {
+			connection.disconnect();
+			throw new IOException("GitHub request failed - HTTP Code: " + code + " for URL: " + url);
+		}
+
+		List<JsonNode> items = new ArrayList<>();
+
+		try (InputStream is = connection.getInputStream()) {
+			JsonNode node = om.readTree(is);
+			if (node != null && node.isArray()) {
+				node.forEach(items::add);
+			}
+		}
+
+		return items;
+	}
+
+	private HttpURLConnection connect(String url, String etag) throws IOException {
+
+		HttpURLConnection connection = githubClient.getConnector().connect(new URL(url));
+		connection.setRequestMethod("GET");
+		connection.setRequestProperty("Accept", "application/vnd.github.v3+json");
+		if (authorization != null) {
+			connection.setRequestProperty("Authorization", authorization);
+		}
+		if (etag != null) {
+			connection.setRequestProperty("If-None-Match", etag);
+		}
+
+		return connection;
+	}
+
+	/** The URL of the first page of the resource. */
+	private String toUrl(String pathAndQuery) {
+		String apiUrl = githubClient.getApiUrl();
+		while (apiUrl.endsWith("/")) {
+			apiUrl = apiUrl.substring(0, apiUrl.length() - 1);
+		}
+
+		return apiUrl + pathAndQuery + (pathAndQuery.contains("?") ? "&" : "?") + "per_page=" + PAGE_SIZE;
+	}
+
+	/** Extract the 'next' URL from a GitHub Link header, or null if there is none. */
+	private static String parseNextLink(String linkHeader) {
+		if (linkHeader == null) {
+			return null;
+		}
+
+		// Format: <https://api.github.com/...&page=2>; rel="next", <...>; rel="last"
+		for (String link : linkHeader.split(",")) {
+			String[] parts = link.split(";");
+			if (parts.length < 2) {
+				continue;
+			}
+
+			String url = parts[0].trim();
+			if (!url.startsWith("<") || !url.endsWith(">")) {
+				continue;
+			}
+
+			for (int x = 1; x < parts.length; x++) {
+				if (parts[x].trim().equals("rel=\"next\"")) {
+					return url.substring(1, url.length() - 1);
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/** The combined JSON array contents of all pages of a response. */
+	public static class ZHGitHubPagedResponse {
+
+		private final List<JsonNode> items;
+
+		private final List<String> pageEtags;
+
+		private final boolean notModified;
+
+		public ZHGitHubPagedResponse(List<JsonNode> items, List<String> pageEtags, boolean notModified) {
+			this.items = items;
+			this.pageEtags = pageEtags;
+			this.notModified = notModified;
+		}
+
+		/** The items of all pages, or null if the resource was not modified. */
+		public List<JsonNode> getItems() {
+			return items;
+		}
+
+		/** ETag of the first page; may be null if the server did not provide one. */
+		public String getEtag() {
+			return pageEtags.isEmpty() ? null : pageEtags.get(0);
+		}
+
+		/**
+		 * ETag of each page, in page order; an entry may be null if the server did
+		 * not provide one.
+		 */
+		public List<String> getPageEtags() {
+			return pageEtags;
+		}
+
+		public boolean isNotModified() {
+			return notModified;
+		}
+	}
+}
@@ -28,7 +28,9 @@
 import com.zhapi.json.responses.GetEpicResponseJson;
 import com.zhapi.json.responses.GetEpicsResponseJson;
 import com.zhapi.json.responses.GetIssueDataResponseJson;
+import com.zhapi.shared.json.ChangeFeedResponseJson;
 import com.zhapi.shared.json.RepositoryChangeEventJson;
+import com.zhapimirror.ZHResourceMetadata.ZHResourceMetadataJson;
 
 /**
  * This class wraps an 'inner' database, and speeds up retrieval operations from
@@ -245,6 +247,30 @@ public void persist(GetEpicResponseJson epic, long repoId, int issueId) {
 		putByKey(key, epic);
 	}
 
+	@Override
+	public Optional<ZHResourceMetadataJson> getResourceMetadata(String resourceType, long repoId, Integer issueNumber) {
+		String key = ZHDatabaseUtil.generateResourceMetadataKey(resourceType, repoId, issueNumber);
+
+		ZHResourceMetadataJson cachedResult = (ZHResourceMetadataJson) getByKey(key);
+		if (cachedResult != null) {
+			return Optional.of(cachedResult);
+		}
+
+		Optional<ZHResourceMetadataJson> result = inner.getResourceMetadata(resourceType, repoId, issueNumber);
+		putByKeyOptional(key, result);
+
+		return result;
+	}
+
+	@Override
+	public void persist(ZHResourceMetadataJson metadata, String resourceType, long repoId, Integer issueNumber) {
+		String key = ZHDatabaseUtil.generateResourceMetadataKey(resourceType, repoId, issueNumber);
+
+		inner.persist(metadata, resourceType, repoId, issueNumber);
+
+		putByKey(key, metadata);
+	}
+
 	@Override
 	public boolean isDatabaseInitialized() {
 		return inner.isDatabaseInitialized();
@@ -315,4 +341,19 @@ public void persistRepositoryChangeEvent(RepositoryChangeEventJson newEvent) {
 	public List<RepositoryChangeEventJson> getRecentRepositoryChangeEvents(long timestampEqualOrGreater) {
 		return inner.getRecentRepositoryChangeEvents(timestampEqualOrGreater);
 	}
+
+	@Override
+	public List<Integer> getIssueNumbers(long repoId) {
+		return inner.getIssueNumbers(repoId);
+	}
+
+	@Override
+	public ChangeFeedResponseJson getChangeEvents(long afterSeq, int limit) {
+		return inner.getChangeEvents(afterSeq, limit);
+	}
+
+	@Override
+	public long getLastChangeEventSeq() {
+		return inner.getLastChangeEventSeq();
+	}
 }
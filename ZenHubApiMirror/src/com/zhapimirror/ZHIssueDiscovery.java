@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapimirror;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.zhapimirror.ZHGitHubRestClient.ZHGitHubPagedResponse;
+
+/**
+ * Determines which issues of a repository need to be requested from ZenHub,
+ * by asking GitHub for only those issues that were updated since the last time
+ * the repository was synchronized.
+ * 
+ * For each repository, we store the most recent 'updated_at' value that GitHub
+ * returned to us (so we are never affected by clock skew between us and
+ * GitHub), and the ETag of the last response. Since the request URL does not
+ * change until a new issue update is seen, an unchanged repository will return
+ * HTTP 304 (Not Modified), which does not count against the GitHub rate limit.
+ * 
+ * A complete listing of all issues is still performed every X hours, as a
+ * safety net.
+ */
+public class ZHIssueDiscovery {
+
+	private static final String KEY_PREFIX = "issue-discovery-";
+
+	private final ZHGitHubRestClient restClient;
+
+	private final ZHDatabase db;
+
+	private final long fullListingIntervalInMsecs;
+
+	private static final ZHLog log = ZHLog.getInstance();
+
+	public ZHIssueDiscovery(ZHGitHubRestClient restClient, ZHDatabase db, long fullListingIntervalInHours) {
+		this.restClient = restClient;
+		this.db = db;
+		this.fullListingIntervalInMsecs = TimeUnit.MILLISECONDS.convert(fullListingIntervalInHours, TimeUnit.HOURS);
+	}
+
+	/**
+	 * Return the numbers of the issues (but not pull requests) in the repository
+	 * that were updated since the last call, or all issues, if a full listing is
+	 * due.
+	 */
+	public List<Integer> discoverIssues(String ownerName, String repoName, long repoId) throws IOException {
+
+		long now = System.currentTimeMillis();
+
+		String since = db.getString(key(repoId, "since")).orElse(null);
+		Long lastFullListing = db.getLong(key(repoId, "last-full-listing")).orElse(null);
+
+		boolean fullListing = since == null || lastFullListing == null
+				|| now - lastFullListing >= fullListingIntervalInMsecs;
+
+		String path = "/repos/" + ownerName + "/" + repoName + "/issues?state=all";
+		if (!fullListing) {
+			path += "&since=" + URLEncoder.encode(since, "UTF-8");
+		}
+
+		// An ETag is only valid for the URL that returned it
+		String etag = null;
+		if (path.equals(db.getString(key(repoId, "etag-path")).orElse(null))) {
+			etag = db.getString(key(repoId, "etag")).orElse(null);
+		}
+
+		ZHGitHubPagedResponse response = restClient.getAllPages(path, etag);
+
+		if (response.isNotModified()) {
+			log.logDebug("No issues updated since " + since + " in " + ownerName + "/" + repoName);
+			return Collections.emptyList();
+		}
+
+		List<Integer> result = new ArrayList<>();
+
+		String newSince = since;
+
+		for (JsonNode issue : response.getItems()) {
+
+			// GitHub returns ISO 8601 timestamps in UTC, so these compare lexicographically.
+			JsonNode updatedAt = issue.get("updated_at");
+			if (updatedAt != null && updatedAt.isTextual()
+					&& (newSince == null || updatedAt.asText().compareTo(newSince) > 0)) {
+				newSince = updatedAt.asText();
+			}
+
+			// Skip pull requests
+			if (issue.has("pull_request")) {
+				continue;
+			}
+
+			JsonNode number = issue.get("number");
+			if (number != null && number.isInt()) {
+				result.add(number.asInt());
+			}
+		}
+
+		if (newSince != null) {
+			db.persistString(key(repoId, "since"), newSince);
+		}
+
+		if (response.getEtag() != null) {
+			db.persistString(key(repoId, "etag"), response.getEtag());
+			db.persistString(key(repoId, "etag-path"), path);
+		}
+
+		if (fullListing) {
+			db.persistLong(key(repoId, "last-full-listing"), now);
+		}
+
+		log.logDebug((fullListing ? "Full" : "Incremental") + " issue listing of " + ownerName + "/" + repoName + " returned "
+				+ result.size() + " issues.");
+
+		return result;
+	}
+
+	private static String key(long repoId, String name) {
+		return KEY_PREFIX + repoId + "-" + name;
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapimirror;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+
+/**
+ * Structural comparison of two JSON-serializable objects (for example, two
+ * versions of the same ZenHub resource).
+ * 
+ * Both objects are converted to Jackson trees (without an intermediate JSON
+ * string), and the trees are walked in parallel: object fields are compared by
+ * name (so field order does not matter), while array elements are compared by
+ * index. The walk is linear in the size of the two trees, and stops early once
+ * the maximum number of differences has been collected.
+ * 
+ * The result is a list of field-level differences, each with a JSON path (eg
+ * 'pipelines[2].issues[0].position') and the old/new values at that path.
+ */
+public class ZHJsonDiff {
+
+	/** Default cap on the number of differences that are collected. */
+	public static final int DEFAULT_MAX_ENTRIES = 100;
+
+	private static final ObjectMapper DEFAULT_OM = new ObjectMapper();
+
+	private ZHJsonDiff() {
+	}
+
+	/** Return true if the JSON representations of the two objects are equal. */
+	public static boolean isEqual(Object one, Object two) {
+		return diff(one, two, 1).isEmpty();
+	}
+
+	/** Return up to DEFAULT_MAX_ENTRIES differences between the two objects. */
+	public static List<ZHJsonDiffEntry> diff(Object oldValue, Object newValue) {
+		return diff(oldValue, newValue, DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Return up to maxEntries differences between the two objects; a null object
+	 * is treated as an absent value. An empty list means the objects are equal.
+	 */
+	public static List<ZHJsonDiffEntry> diff(Object oldValue, Object newValue, int maxEntries) {
+		if (oldValue == newValue) {
+			return Collections.emptyList();
+		}
+
+		List<ZHJsonDiffEntry> result = new ArrayList<>();
+		diffNodes("", toTree(oldValue), toTree(newValue), result, maxEntries);
+		return result;
+	}
+
+	private static JsonNode toTree(Object o) {
+		if (o == null) {
+			return MissingNode.getInstance();
+		}
+		if (o instanceof JsonNode) {
+			return (JsonNode) o;
+		}
+
+		JsonNode node = DEFAULT_OM.valueToTree(o);
+		return node != null ? node : MissingNode.getInstance();
+	}
+
+	private static void diffNodes(String path, JsonNode oldNode, JsonNode newNode, List<ZHJsonDiffEntry> result,
+			int maxEntries) {
+
+		if (result.size() >= maxEntries) {
+			return;
+		}
+
+		if (oldNode.isObject() && newNode.isObject()) {
+
+			// Visit the union of field names, in sorted order so that the result is stable
+			TreeSet<String> fieldNames = new TreeSet<>();
+			oldNode.fieldNames().forEachRemaining(fieldNames::add);
+			newNode.fieldNames().forEachRemaining(fieldNames::add);
+
+			for (String fieldName : fieldNames) {
+				diffNodes(path.isEmpty() ? fieldName : path + "." + fieldName, oldNode.path(fieldName),
+						newNode.path(fieldName), result, maxEntries);
+
+				if (result.size() >= maxEntries) {
+					return;
+				}
+			}
+
+		} else if (oldNode.isArray() && newNode.isArray()) {
+
+			int size = Math.max(oldNode.size(), newNode.size());
+			for (int x = 0; x < size; x++) {
+				diffNodes(path + "[" + x + "]", oldNode.path(x), newNode.path(x), result, maxEntries);
+
+				if (result.size() >= maxEntries) {
+					return;
+				}
+			}
+
+		} else if (!oldNode.equals(newNode)) {
+			result.add(new ZHJsonDiffEntry(path, oldNode.isMissingNode() ? null : oldNode,
+					newNode.isMissingNode() ? null : newNode));
+		}
+	}
+
+	/**
+	 * Return a short, human-readable summary of the given differences. If there
+	 * are more than maxEntriesToInclude, the summary ends with 'and more': the list
+	 * is usually capped by diff(...), so the full number of differences is not
+	 * known.
+	 */
+	public static String toSummary(List<ZHJsonDiffEntry> entries, int maxEntriesToInclude) {
+		StringBuilder sb = new StringBuilder();
+
+		Iterator<ZHJsonDiffEntry> it = entries.iterator();
+		for (int x = 0; x < maxEntriesToInclude && it.hasNext(); x++) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(it.next().toString());
+		}
+
+		if (entries.size() > maxEntriesToInclude) {
+			sb.append(", and more");
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * A single difference: the value at 'path' changed from oldValue to newValue.
+	 * A null value means the path was absent (the field or element was added or
+	 * removed).
+	 */
+	public static class ZHJsonDiffEntry {
+		private final String path;
+		private final JsonNode oldValue;
+		private final JsonNode newValue;
+
+		public ZHJsonDiffEntry(String path, JsonNode oldValue, JsonNode newValue) {
+			this.path = path;
+			this.oldValue = oldValue;
+			this.newValue = newValue;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public JsonNode getOldValue() {
+			return oldValue;
+		}
+
+		public JsonNode getNewValue() {
+			return newValue;
+		}
+
+		public boolean isAdded() {
+			return oldValue == null;
+		}
+
+		public boolean isRemoved() {
+			return newValue == null;
+		}
+
+		@Override
+		public String toString() {
+			String p = path.isEmpty() ? "(root)" : path;
+			if (isAdded()) {
+				return p + " added";
+			} else if (isRemoved()) {
+				return p + " removed";
+			} else {
+				return p + ": " + abbreviate(oldValue) + " -> " + abbreviate(newValue);
+			}
+		}
+
+		private static String abbreviate(JsonNode node) {
+			String str = node.toString();
+			return str.length() > 40 ? str.substring(0, 37) + "..." : str;
+		}
+
+	}
+}
@@ -16,11 +16,19 @@
 
 package com.zhapimirror;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -28,8 +36,10 @@
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
@@ -37,6 +47,7 @@
 import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.zhapi.json.IssueEventJson;
 import com.zhapi.json.responses.DependenciesForARepoResponseJson;
@@ -44,7 +55,9 @@
 import com.zhapi.json.responses.GetEpicResponseJson;
 import com.zhapi.json.responses.GetEpicsResponseJson;
 import com.zhapi.json.responses.GetIssueDataResponseJson;
+import com.zhapi.shared.json.ChangeFeedResponseJson;
 import com.zhapi.shared.json.RepositoryChangeEventJson;
+import com.zhapimirror.ZHResourceMetadata.ZHResourceMetadataJson;
 
 /**
  * Persists the ZH JSON resources to disk, using path and filenames to
@@ -70,6 +83,29 @@ public class ZHPersistJsonDb implements ZHDatabase {
 
 	private final static boolean DEBUG_IGNORE_OLD_DATABASE = false;
 
+	/** ObjectMapper is thread safe once configured, so a single instance is shared */
+	private final static ObjectMapper DEFAULT_OM = new ObjectMapper();
+
+	private final static String KEY_LAST_CHANGE_EVENT_SEQ = "change-event-last-seq";
+
+	/** The highest sequence number of any event that has been deleted after expiring */
+	private final static String KEY_EXPIRED_CHANGE_EVENT_SEQ = "change-event-expired-seq";
+
+	/** Keep events in database for only 8 days */
+	private final static long CHANGE_EVENT_EXPIRE_TIME_IN_MSECS = TimeUnit.MILLISECONDS.convert(8, TimeUnit.DAYS);
+
+	private final Object changeEventSeqLock = new Object();
+
+	/** The sequence number of the most recently persisted event, or -1 if not yet read */
+	private long lastChangeEventSeq_synch_changeEventSeqLock = -1;
+
+	/**
+	 * Sequence number -> file, of every event that has a sequence number, so that
+	 * a read of the change feed does not list the events directory; null if not
+	 * yet read from the directory.
+	 */
+	private TreeMap<Long, ZHChangeEventFile> changeEventIndex_synch_changeEventSeqLock = null;
+
 	public ZHPersistJsonDb(File outputDirectory) {
 		this.outputDirectory = outputDirectory;
 
@@ -81,16 +117,9 @@ public Optional<GetIssueDataResponseJson> getIssueData(long repoId, int issueNum
 
 		String key = ZHDatabaseUtil.generateIssueDataKey(repoId, issueNumber);
 
-		File inputFile = new File(outputDirectory, key + "json");
-		if (!inputFile.exists()) {
-			return Optional.empty();
-		}
-
-		String contents = readFromFile(inputFile).orElse(null);
-
-		GetIssueDataResponseJson result = readValue(contents, GetIssueDataResponseJson.class);
+		File inputFile = new File(outputDirectory, key + ".json");
 
-		return Optional.ofNullable(result);
+		return readValueFromFile(inputFile, GetIssueDataResponseJson.class);
 
 	}
 
@@ -101,35 +130,164 @@ public void persist(GetIssueDataResponseJson json, long repoId, int issueNumber)
 
 		File outputFile = new File(outputDirectory, key + ".json");
 
-		String contents = writeValueAsString(json);
-		writeToFile(contents, outputFile);
+		writeValueToFile(json, outputFile);
 
 	}
 
+	/**
+	 * Issue events are stored as an append-only log (one JSON event per line,
+	 * oldest first), which is read one event at a time; the events are returned
+	 * newest first, matching the ZenHub API.
+	 */
 	@Override
 	public Optional<List<IssueEventJson>> getIssueEvents(long repoId, int issueNumber) {
 		String key = ZHDatabaseUtil.generateIssueEventsKey(repoId, issueNumber);
 
-		File inputFile = new File(outputDirectory, key + ".json");
-		if (!inputFile.exists()) {
-			return Optional.empty();
+		File logFile = new File(outputDirectory, key + ".jsonl");
+		if (!logFile.exists()) {
+
+			// Issue events that were persisted (as a single JSON array) before the
+			// append-only log was introduced.
+			File legacyFile = new File(outputDirectory, key + ".json");
+			if (!legacyFile.exists()) {
+				return Optional.empty();
+			}
+
+			return readValueFromFile(legacyFile, IssueEventJson[].class).map(e -> Arrays.asList(e));
 		}
 
-		String contents = readFromFile(inputFile).orElse(null);
+		List<IssueEventJson> result = new ArrayList<>();
+
+		try {
+			readLock.lock();
+
+			if (!logFile.exists()) {
+				return Optional.empty();
+			}
+
+			try (MappingIterator<IssueEventJson> it = DEFAULT_OM.readerFor(IssueEventJson.class).readValues(logFile)) {
+				while (it.hasNext()) {
+					result.add(it.next());
+				}
+			}
+
+		} catch (IOException e) {
+			log.logSevere("Error from file: " + logFile.getPath(), e);
+			ZHUtil.throwAsUnchecked(e);
+
+		} finally {
+			readLock.unlock();
+		}
 
-		IssueEventJson[] result = readValue(contents, IssueEventJson[].class);
+		Collections.reverse(result);
 
-		return Optional.ofNullable(Arrays.asList(result));
+		return Optional.of(result);
 	}
 
+	/**
+	 * The list of events of an issue only grows, so rather than rewriting the
+	 * entire list, only the events that are newer than the last event in the log
+	 * are appended to it. If the last event in the log is no longer in the list
+	 * (the list was changed on ZenHub), the log is rewritten.
+	 */
 	@Override
 	public void persist(List<IssueEventJson> events, long repoId, int issueNumber) {
 		String key = ZHDatabaseUtil.generateIssueEventsKey(repoId, issueNumber);
 
-		File outputFile = new File(outputDirectory, key + ".json");
+		File logFile = new File(outputDirectory, key + ".jsonl");
+
+		// Oldest first (the sort is stable, so events with the same time retain their order)
+		List<IssueEventJson> chronological = new ArrayList<>(events);
+		Collections.reverse(chronological);
+		chronological.sort(Comparator.comparingLong(e -> e.getCreated_at() != null ? e.getCreated_at().getTime() : 0));
+
+		List<String> lines = chronological.stream().map(e -> writeValueAsString(e)).collect(Collectors.toList());
+
+		try {
+			writeLock.lock();
+
+			int start = 0;
+			boolean append = false;
+
+			String lastLine = logFile.exists() ? readLastLine(logFile) : null;
+			if (lastLine != null) {
+				int index = lines.lastIndexOf(lastLine);
+				if (index != -1) {
+					start = index + 1;
+					append = true;
+				}
+			}
+
+			if (append && start == lines.size()) {
+				// No new events
+				return;
+			}
+
+			logFile.getParentFile().mkdirs();
+
+			try (Writer w = new OutputStreamWriter(new FileOutputStream(logFile, append), StandardCharsets.UTF_8)) {
+				for (String line : lines.subList(start, lines.size())) {
+					w.write(line);
+					w.write("\n");
+				}
+			} catch (IOException e) {
+				ZHUtil.throwAsUnchecked(e);
+			}
 
-		String contents = writeValueAsString(events);
-		writeToFile(contents, outputFile);
+			File legacyFile = new File(outputDirectory, key + ".json");
+			if (legacyFile.exists() && !legacyFile.delete()) {
+				log.logError("Unable to delete: " + legacyFile.getPath());
+			}
+
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/** Return the last non-empty line of the file, reading backwards from the end. */
+	private static String readLastLine(File f) {
+		try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+
+			long end = raf.length();
+
+			// Skip trailing newlines
+			while (end > 0) {
+				raf.seek(end - 1);
+				if (raf.read() != '\n') {
+					break;
+				}
+				end--;
+			}
+
+			long start = end;
+			byte[] buffer = new byte[4096];
+			found: while (start > 0) {
+				int len = (int) Math.min(buffer.length, start);
+				raf.seek(start - len);
+				raf.readFully(buffer, 0, len);
+				for (int x = len - 1; x >= 0; x--) {
+					if (buffer[x] == '\n') {
+						start = start - len + x + 1;
+						break found;
+					}
+				}
+				start -= len;
+			}
+
+			if (start == end) {
+				return null;
+			}
+
+			byte[] line = new byte[(int) (end - start)];
+			raf.seek(start);
+			raf.readFully(line);
+
+			return new String(line, StandardCharsets.UTF_8);
+
+		} catch (IOException e) {
+			ZHUtil.throwAsUnchecked(e);
+			return null;
+		}
 	}
 
 	@Override
@@ -137,15 +295,8 @@ public Optional<GetBoardForRepositoryResponseJson> getZenHubBoardForRepo(long re
 		String key = ZHDatabaseUtil.generateZenHubBoardKey(repoId);
 
 		File inputFile = new File(outputDirectory, key + ".json");
-		if (!inputFile.exists()) {
-			return Optional.empty();
-		}
-
-		String contents = readFromFile(inputFile).orElse(null);
-
-		GetBoardForRepositoryResponseJson result = readValue(contents, GetBoardForRepositoryResponseJson.class);
 
-		return Optional.ofNullable(result);
+		return readValueFromFile(inputFile, GetBoardForRepositoryResponseJson.class);
 
 	}
 
@@ -155,8 +306,7 @@ public void persist(GetBoardForRepositoryResponseJson board, long repoId) {
 
 		File outputFile = new File(outputDirectory, key + ".json");
 
-		String contents = writeValueAsString(board);
-		writeToFile(contents, outputFile);
+		writeValueToFile(board, outputFile);
 	}
 
 	@Override
@@ -164,15 +314,8 @@ public Optional<DependenciesForARepoResponseJson> getDependenciesForARepository(
 		String key = ZHDatabaseUtil.generateDependenciesForARepoKey(repoId);
 
 		File inputFile = new File(outputDirectory, key + ".json");
-		if (!inputFile.exists()) {
-			return Optional.empty();
-		}
-
-		String contents = readFromFile(inputFile).orElse(null);
 
-		DependenciesForARepoResponseJson result = readValue(contents, DependenciesForARepoResponseJson.class);
-
-		return Optional.ofNullable(result);
+		return readValueFromFile(inputFile, DependenciesForARepoResponseJson.class);
 
 	}
 
@@ -182,8 +325,7 @@ public void persist(DependenciesForARepoResponseJson dependencies, long repoId)
 
 		File outputFile = new File(outputDirectory, key + ".json");
 
-		String contents = writeValueAsString(dependencies);
-		writeToFile(contents, outputFile);
+		writeValueToFile(dependencies, outputFile);
 	}
 
 	@Override
@@ -191,15 +333,8 @@ public Optional<GetEpicsResponseJson> getEpics(long repoId) {
 		String key = ZHDatabaseUtil.generateEpicsPluralKey(repoId);
 
 		File inputFile = new File(outputDirectory, key + ".json");
-		if (!inputFile.exists()) {
-			return Optional.empty();
-		}
 
-		String contents = readFromFile(inputFile).orElse(null);
-
-		GetEpicsResponseJson result = readValue(contents, GetEpicsResponseJson.class);
-
-		return Optional.ofNullable(result);
+		return readValueFromFile(inputFile, GetEpicsResponseJson.class);
 
 	}
 
@@ -209,8 +344,7 @@ public void persist(GetEpicsResponseJson epics, long repoId) {
 
 		File outputFile = new File(outputDirectory, key + ".json");
 
-		String contents = writeValueAsString(epics);
-		writeToFile(contents, outputFile);
+		writeValueToFile(epics, outputFile);
 	}
 
 	@Override
@@ -218,25 +352,63 @@ public Optional<GetEpicResponseJson> getEpic(long repoId, int issueId) {
 		String key = ZHDatabaseUtil.generateEpicKey(repoId, issueId);
 
 		File inputFile = new File(outputDirectory, key + ".json");
-		if (!inputFile.exists()) {
-			return Optional.empty();
+
+		return readValueFromFile(inputFile, GetEpicResponseJson.class);
+	}
+
+	@Override
+	public void persist(GetEpicResponseJson epic, long repoId, int issueId) {
+		String key = ZHDatabaseUtil.generateEpicKey(repoId, issueId);
+
+		File outputFile = new File(outputDirectory, key + ".json");
+
+		writeValueToFile(epic, outputFile);
+	}
+
+	@Override
+	public List<Integer> getIssueNumbers(long repoId) {
+		List<Integer> result = new ArrayList<>();
+
+		try {
+			readLock.lock();
+
+			// Issue-level resources are stored under (repo id)/(issue number)/
+			File[] files = new File(outputDirectory, Long.toString(repoId)).listFiles();
+			if (files == null) {
+				return result;
+			}
+
+			for (File f : files) {
+				if (f.isDirectory() && f.getName().matches("[0-9]+")) {
+					result.add(Integer.parseInt(f.getName()));
+				}
+			}
+
+		} finally {
+			readLock.unlock();
 		}
 
-		String contents = readFromFile(inputFile).orElse(null);
+		Collections.sort(result);
+
+		return result;
+	}
 
-		GetEpicResponseJson result = readValue(contents, GetEpicResponseJson.class);
+	@Override
+	public Optional<ZHResourceMetadataJson> getResourceMetadata(String resourceType, long repoId, Integer issueNumber) {
+		String key = ZHDatabaseUtil.generateResourceMetadataKey(resourceType, repoId, issueNumber);
+
+		File inputFile = new File(outputDirectory, key + ".json");
 
-		return Optional.ofNullable(result);
+		return readValueFromFile(inputFile, ZHResourceMetadataJson.class);
 	}
 
 	@Override
-	public void persist(GetEpicResponseJson epic, long repoId, int issueId) {
-		String key = ZHDatabaseUtil.generateEpicKey(repoId, issueId);
+	public void persist(ZHResourceMetadataJson metadata, String resourceType, long repoId, Integer issueNumber) {
+		String key = ZHDatabaseUtil.generateResourceMetadataKey(resourceType, repoId, issueNumber);
 
 		File outputFile = new File(outputDirectory, key + ".json");
 
-		String contents = writeValueAsString(epic);
-		writeToFile(contents, outputFile);
+		writeValueToFile(metadata, outputFile);
 	}
 
 	@Override
@@ -289,25 +461,55 @@ public Optional<String> getString(String key) {
 		return Optional.ofNullable(contents);
 	}
 
-	private <T> T readValue(String contents, Class<T> c) {
-		if (contents == null) {
-			return null;
+	/**
+	 * Parse the JSON file directly from disk with Jackson's streaming parser
+	 * (which detects the UTF-8 encoding), without first reading the file into a
+	 * String.
+	 */
+	private <T> Optional<T> readValueFromFile(File f, Class<T> c) {
+		try {
+			readLock.lock();
+
+			if (!f.exists()) {
+				return Optional.empty();
+			}
+
+			try (InputStream is = new BufferedInputStream(new FileInputStream(f))) {
+				return Optional.ofNullable(DEFAULT_OM.readValue(is, c));
+
+			} catch (IOException e) {
+				log.logSevere("Error from file: " + f.getPath(), e);
+				ZHUtil.throwAsUnchecked(e);
+				return Optional.empty();
+			}
+
+		} finally {
+			readLock.unlock();
 		}
+	}
 
-		ObjectMapper om = new ObjectMapper();
+	/** Serialize the object directly to the file, as UTF-8. */
+	private void writeValueToFile(Object o, File f) {
 		try {
-			return om.readValue(contents, c);
-		} catch (Exception e) {
-			ZHUtil.throwAsUnchecked(e);
-			return null;
+			writeLock.lock();
+
+			f.getParentFile().mkdirs();
+
+			try (OutputStream os = new BufferedOutputStream(new FileOutputStream(f))) {
+				DEFAULT_OM.writeValue(os, o);
+			} catch (IOException e) {
+				ZHUtil.throwAsUnchecked(e);
+			}
+
+		} finally {
+			writeLock.unlock();
 		}
 	}
 
 	private String writeValueAsString(Object o) {
-		ObjectMapper om = new ObjectMapper();
 		String result = null;
 		try {
-			result = om.writeValueAsString(o);
+			result = DEFAULT_OM.writeValueAsString(o);
 		} catch (JsonProcessingException e) {
 			ZHUtil.throwAsUnchecked(e);
 		}
@@ -322,27 +524,15 @@ private Optional<String> readFromFile(File f) {
 				return Optional.empty();
 			}
 
-			StringBuilder sb = new StringBuilder();
-
 			try {
-
-				byte[] barr = new byte[1024 * 64];
-				int c;
-
-				FileInputStream fis = new FileInputStream(f);
-				while (-1 != (c = fis.read(barr))) {
-
-					sb.append(new String(barr, 0, c));
-				}
-				fis.close();
+				return Optional.of(new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8));
 
 			} catch (IOException e) {
 				log.logSevere("Error from file: " + f.getPath(), e);
 				ZHUtil.throwAsUnchecked(e);
+				return Optional.empty();
 			}
 
-			return Optional.of(sb.toString());
-
 		} finally {
 			readLock.unlock();
 		}
@@ -355,21 +545,10 @@ private void writeToFile(String contents, File f) {
 
 			f.getParentFile().mkdirs();
 
-			FileWriter fw = null;
-			try {
-				fw = new FileWriter(f);
-				fw.write(contents);
-				fw.close();
+			try (Writer w = new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8)) {
+				w.write(contents);
 			} catch (IOException e) {
 				ZHUtil.throwAsUnchecked(e);
-			} finally {
-				if (fw != null) {
-					try {
-						fw.close();
-					} catch (IOException e) {
-						/* ignore */
-					}
-				}
 			}
 
 		} finally {
@@ -477,6 +656,12 @@ public void uninitializeDatabaseOnContentsMismatch(List<String> orgs, List<Strin
 
 			log.logInfo("* Old database has been moved to " + oldDir.getPath());
 
+			// The events were moved with the rest of the database
+			synchronized (changeEventSeqLock) {
+				lastChangeEventSeq_synch_changeEventSeqLock = -1;
+				changeEventIndex_synch_changeEventSeqLock = null;
+			}
+
 			persistString(KEY_ZENHUB_CONTENTS_HASH, encoded);
 
 			initialized.set(false);
@@ -499,22 +684,20 @@ public void persistRepositoryChangeEvent(RepositoryChangeEventJson newEvent) {
 				throw new RuntimeException("Unable to create directory: " + directory);
 			}
 
-			// Prevent collisions when different events occur together within the same
-			// millisecond.
-			long currTime = newEvent.getTime();
-			File file;
-			while (true) {
+			long seq = getLastChangeEventSeq(directory) + 1;
+			newEvent.setSeq(seq);
 
-				file = new File(directory, "repo-" + currTime + ".json");
-				if (file.exists()) {
-					currTime++;
-				} else {
-					break;
-				}
+			// The sequence number makes the filename unique; the time is included so that
+			// events can be filtered by time without reading them.
+			File file = new File(directory, "event-" + seq + "-" + newEvent.getTime() + ".json");
+			writeValueToFile(newEvent, file);
 
-			}
+			persistLong(KEY_LAST_CHANGE_EVENT_SEQ, seq);
 
-			writeToFile(writeValueAsString(newEvent), file);
+			synchronized (changeEventSeqLock) {
+				lastChangeEventSeq_synch_changeEventSeqLock = seq;
+				getChangeEventIndex(directory).put(seq, new ZHChangeEventFile(file, seq, newEvent.getTime()));
+			}
 
 		} finally {
 			writeLock.unlock();
@@ -526,79 +709,246 @@ public void persistRepositoryChangeEvent(RepositoryChangeEventJson newEvent) {
 	public List<RepositoryChangeEventJson> getRecentRepositoryChangeEvents(long timestampEqualOrGreater) {
 		File directory = new File(outputDirectory, "events");
 
-		// Keep events in database for only 8 days
-		long expireTimestamp = System.currentTimeMillis() - TimeUnit.MILLISECONDS.convert(8, TimeUnit.DAYS);
+		long expireTimestamp = System.currentTimeMillis() - CHANGE_EVENT_EXPIRE_TIME_IN_MSECS;
 
-		List<File> filesToDelete = new ArrayList<>();
+		List<ZHChangeEventFile> filesToDelete = new ArrayList<>();
 
 		List<RepositoryChangeEventJson> result = new ArrayList<>();
 		try {
 			readLock.lock();
 
-			ObjectMapper om = new ObjectMapper();
+			for (ZHChangeEventFile f : listChangeEventFiles(directory)) {
+
+				if (f.time >= timestampEqualOrGreater) {
+
+					RepositoryChangeEventJson rcej = readChangeEvent(f);
+
+					// It is possible for the filename timestamp to be larger than the actual
+					// timestamp in the file, so we check that both are >= timestampEqualOrGreater.
+					if (rcej.getTime() >= timestampEqualOrGreater) {
+						result.add(rcej);
+					}
+				}
+
+				if (f.time < expireTimestamp) {
+					filesToDelete.add(f);
+				}
 
-			if (!directory.exists()) {
-				return Collections.emptyList();
 			}
 
-			List<File> files = Arrays.asList(directory.listFiles()).stream()
-					.filter(e -> e.getName().startsWith("repo-") && e.getName().endsWith(".json")).collect(Collectors.toList());
+		} finally {
+			readLock.unlock();
+		}
 
-			for (File f : files) {
-				String name = f.getName();
-				int index = name.indexOf("-");
-				int endIndex = name.indexOf(".json");
+		deleteExpiredChangeEvents(filesToDelete);
 
-				long timestamp = Long.parseLong(name.substring(index + 1, endIndex));
+		// Sort ascending by sequence number (events from before sequence numbers were
+		// introduced have a sequence number of 0), then by timestamp.
+		result.sort(Comparator.comparingLong(RepositoryChangeEventJson::getSeq)
+				.thenComparingLong(RepositoryChangeEventJson::getTime));
 
-				if (timestamp >= timestampEqualOrGreater) {
+		return result;
 
-					try {
-						RepositoryChangeEventJson rcej = om.readValue(readFromFile(f).get(), RepositoryChangeEventJson.class);
+	}
 
-						// It is possible for the filename timestamp to be larger than the actual
-						// timestamp in the file, so we check that both are >= timestampEqualOrGreater.
+	@Override
+	public ChangeFeedResponseJson getChangeEvents(long afterSeq, int limit) {
+		File directory = new File(outputDirectory, "events");
 
-						if (rcej.getTime() >= timestampEqualOrGreater) {
-							result.add(rcej);
-						}
+		long expireTimestamp = System.currentTimeMillis() - CHANGE_EVENT_EXPIRE_TIME_IN_MSECS;
+
+		List<ZHChangeEventFile> filesToDelete = new ArrayList<>();
+
+		ChangeFeedResponseJson result = new ChangeFeedResponseJson();
+		result.setNextCursor(afterSeq);
+
+		try {
+			readLock.lock();
+
+			// One more event than the limit, to determine whether there are more
+			List<ZHChangeEventFile> newer = new ArrayList<>();
+
+			synchronized (changeEventSeqLock) {
+				TreeMap<Long, ZHChangeEventFile> index = getChangeEventIndex(directory);
 
-					} catch (IOException ex) {
-						throw new RuntimeException(ex);
+				// Events are in ascending time order, so the expired events are at the start
+				for (ZHChangeEventFile f : index.values()) {
+					if (f.time >= expireTimestamp) {
+						break;
 					}
+					filesToDelete.add(f);
 				}
 
-				if (timestamp < expireTimestamp) {
-					filesToDelete.add(f);
+				for (ZHChangeEventFile f : index.tailMap(afterSeq, false).values()) {
+					if (newer.size() > limit) {
+						break;
+					}
+					newer.add(f);
 				}
+			}
+
+			for (ZHChangeEventFile f : newer.subList(0, Math.min(limit, newer.size()))) {
+				RepositoryChangeEventJson rcej = readChangeEvent(f);
+				result.getEvents().add(rcej);
+				result.setNextCursor(rcej.getSeq());
+			}
+
+			result.setHasMore(newer.size() > limit);
+
+			long lastSeq = getLastChangeEventSeq(directory);
+			result.setHeadCursor(lastSeq);
+
+			if (afterSeq > lastSeq) {
+				// The cursor is from a database that has since been replaced (sequence
+				// numbers restarted), so restart from the current position.
+				result.setResyncRequired(true);
+				result.setNextCursor(lastSeq);
 
+			} else if (afterSeq < getLong(KEY_EXPIRED_CHANGE_EVENT_SEQ).orElse(0l)) {
+				result.setResyncRequired(true);
 			}
 
 		} finally {
 			readLock.unlock();
 		}
 
-		// Delete expired files.
+		deleteExpiredChangeEvents(filesToDelete);
+
+		return result;
+	}
+
+	@Override
+	public long getLastChangeEventSeq() {
+		File directory = new File(outputDirectory, "events");
+
+		try {
+			readLock.lock();
+			return getLastChangeEventSeq(directory);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Return the sequence number of the most recently persisted event (or 0 if
+	 * none); on first call this is read from the database, or from the event
+	 * filenames if they are ahead of it.
+	 */
+	private long getLastChangeEventSeq(File directory) {
+		synchronized (changeEventSeqLock) {
+			if (lastChangeEventSeq_synch_changeEventSeqLock == -1) {
+				long lastSeq = getLong(KEY_LAST_CHANGE_EVENT_SEQ).orElse(0l);
+				TreeMap<Long, ZHChangeEventFile> index = getChangeEventIndex(directory);
+				if (!index.isEmpty()) {
+					lastSeq = Math.max(lastSeq, index.lastKey());
+				}
+				lastChangeEventSeq_synch_changeEventSeqLock = lastSeq;
+			}
+			return lastChangeEventSeq_synch_changeEventSeqLock;
+		}
+	}
+
+	/**
+	 * Return the index of the events that have a sequence number, reading it from
+	 * the events directory on first call. Must be called with the read or write
+	 * lock held, and synchronized on changeEventSeqLock.
+	 */
+	private TreeMap<Long, ZHChangeEventFile> getChangeEventIndex(File directory) {
+		if (changeEventIndex_synch_changeEventSeqLock == null) {
+			TreeMap<Long, ZHChangeEventFile> index = new TreeMap<>();
+			for (ZHChangeEventFile f : listChangeEventFiles(directory)) {
+				if (f.seq > 0) {
+					index.put(f.seq, f);
+				}
+			}
+			changeEventIndex_synch_changeEventSeqLock = index;
+		}
+		return changeEventIndex_synch_changeEventSeqLock;
+	}
+
+	/** Must be called with the read or write lock held. */
+	private List<ZHChangeEventFile> listChangeEventFiles(File directory) {
+
+		List<ZHChangeEventFile> result = new ArrayList<>();
+
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return result;
+		}
+
+		for (File f : files) {
+			String name = f.getName();
+			if (!name.endsWith(".json")) {
+				continue;
+			}
+
+			String[] components = name.substring(0, name.length() - ".json".length()).split("-");
+			try {
+				if (components.length == 3 && components[0].equals("event")) {
+					result.add(new ZHChangeEventFile(f, Long.parseLong(components[1]), Long.parseLong(components[2])));
+
+				} else if (components.length == 2 && components[0].equals("repo")) {
+					// Events persisted before sequence numbers were introduced
+					result.add(new ZHChangeEventFile(f, 0, Long.parseLong(components[1])));
+				}
+			} catch (NumberFormatException e) {
+				log.logError("Ignoring unrecognized event file: " + f.getPath());
+			}
+		}
+
+		return result;
+	}
+
+	private RepositoryChangeEventJson readChangeEvent(ZHChangeEventFile f) {
+		RepositoryChangeEventJson result = readValueFromFile(f.file, RepositoryChangeEventJson.class).orElse(null);
+		if (result == null) {
+			throw new RuntimeException("Unable to read event: " + f.file.getPath());
+		}
+		return result;
+	}
+
+	private void deleteExpiredChangeEvents(List<ZHChangeEventFile> filesToDelete) {
+		if (filesToDelete.isEmpty()) {
+			return;
+		}
+
 		try {
 			writeLock.lock();
 
-			filesToDelete.forEach(e -> {
-				if (e.exists() && !e.delete()) {
-					System.err.println("* Unable to delete: " + e.getPath());
+			long expiredSeq = getLong(KEY_EXPIRED_CHANGE_EVENT_SEQ).orElse(0l);
+
+			for (ZHChangeEventFile e : filesToDelete) {
+				if (e.file.exists() && !e.file.delete()) {
+					System.err.println("* Unable to delete: " + e.file.getPath());
+				} else {
+					expiredSeq = Math.max(expiredSeq, e.seq);
+
+					synchronized (changeEventSeqLock) {
+						if (changeEventIndex_synch_changeEventSeqLock != null && e.seq > 0) {
+							changeEventIndex_synch_changeEventSeqLock.remove(e.seq);
+						}
+					}
 				}
-			});
+			}
+
+			persistLong(KEY_EXPIRED_CHANGE_EVENT_SEQ, expiredSeq);
 
 		} finally {
 			writeLock.unlock();
 		}
+	}
 
-		// Sort ascending by timestamp;
-		Collections.sort(result, (a, b) -> {
-			return (int) (a.getTime() - b.getTime());
-		});
-
-		return result;
+	/** The sequence number and time of an event, parsed from its filename. */
+	private static class ZHChangeEventFile {
+		private final File file;
+		private final long seq;
+		private final long time;
 
+		public ZHChangeEventFile(File file, long seq, long time) {
+			this.file = file;
+			this.seq = seq;
+			this.time = time;
+		}
 	}
 
 }
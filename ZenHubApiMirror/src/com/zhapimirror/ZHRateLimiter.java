@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapimirror;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spaces out requests to the ZenHub API, so that no more than the given number
+ * of requests per minute are issued, across all the threads that share an
+ * instance of this class.
+ * 
+ * Callers should call acquire() immediately before issuing a request; acquire()
+ * will block until the next request slot is available.
+ * 
+ * getAvailablePermits() and getRequestsIssued() allow callers (such as the
+ * worker pool controller) to observe how much of the budget remains, before
+ * the ZenHub API starts rejecting requests.
+ * 
+ * This class is thread safe.
+ */
+public class ZHRateLimiter {
+
+	private final Object lock = new Object();
+
+	/** Time between requests, or 0 if requests are not limited. */
+	private final long intervalInNanos;
+
+	private final int requestsPerMinute;
+
+	private long nextSlotInNanos_synch_lock;
+
+	/** Number of times acquire() has been called */
+	private final AtomicLong requestsIssued = new AtomicLong();
+
+	/**
+	 * @param requestsPerMinute maximum number of requests per minute; a value of 0
+	 *                          or less disables rate limiting.
+	 */
+	public ZHRateLimiter(int requestsPerMinute) {
+		this.requestsPerMinute = Math.max(0, requestsPerMinute);
+		if (requestsPerMinute <= 0) {
+			intervalInNanos = 0;
+		} else {
+			intervalInNanos = TimeUnit.NANOSECONDS.convert(1, TimeUnit.MINUTES) / requestsPerMinute;
+		}
+		nextSlotInNanos_synch_lock = System.nanoTime();
+	}
+
+	/** Block until the caller is permitted to issue a request. */
+	public void acquire() {
+		requestsIssued.incrementAndGet();
+
+		if (intervalInNanos == 0) {
+			return;
+		}
+
+		long waitTimeInNanos;
+		synchronized (lock) {
+			long now = System.nanoTime();
+			long slot = Math.max(now, nextSlotInNanos_synch_lock);
+			nextSlotInNanos_synch_lock = slot + intervalInNanos;
+			waitTimeInNanos = slot - now;
+		}
+
+		if (waitTimeInNanos > 0) {
+			ZHUtil.sleep(TimeUnit.MILLISECONDS.convert(waitTimeInNanos, TimeUnit.NANOSECONDS));
+		}
+	}
+
+	/**
+	 * Return the number of request slots in the next minute that have not already
+	 * been claimed by a caller of acquire(). A value of 0 means that callers are
+	 * already queued a full minute ahead; a value near the per-minute budget means
+	 * the limiter is mostly idle. Returns Integer.MAX_VALUE if requests are not
+	 * limited.
+	 */
+	public int getAvailablePermits() {
+		if (intervalInNanos == 0) {
+			return Integer.MAX_VALUE;
+		}
+
+		long backlogInNanos;
+		synchronized (lock) {
+			backlogInNanos = nextSlotInNanos_synch_lock - System.nanoTime();
+		}
+
+		if (backlogInNanos <= 0) {
+			return requestsPerMinute;
+		}
+
+		long claimedSlots = (backlogInNanos + intervalInNanos - 1) / intervalInNanos;
+
+		return (int) Math.max(0, requestsPerMinute - claimedSlots);
+	}
+
+	/** Maximum number of requests per minute, or 0 if requests are not limited. */
+	public int getRequestsPerMinute() {
+		return requestsPerMinute;
+	}
+
+	/** Total number of requests that have been issued through this limiter. */
+	public long getRequestsIssued() {
+		return requestsIssued.get();
+	}
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapimirror;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.zhapimirror.ZHResourceFetchScheduler.FetchPolicy;
+import com.zhapimirror.ZHWorkQueue.ZHIssueContainer;
+import com.zhapimirror.ZHWorkQueue.ZHRepositoryContainer;
+
+/**
+ * When a client requests a resource that the mirror does not have (for
+ * example, an issue that was created since the last scan), or a resource that
+ * is older than the client tolerates (see ZHResourceMetadata), the resource is
+ * added to the priority list of the work queue, rather than waiting for the
+ * next scan to pick it up; the request may then wait a bounded time for the
+ * resource to be fetched.
+ * 
+ * A resource that is present but older than the client tolerates is fetched
+ * by itself on a read-through thread (the repository-level resources via
+ * ZHResourceFetchScheduler, with the FAST_SCAN policy), rather than queuing a
+ * full scan of the repository.
+ * 
+ * - Only resources of repositories that we are mirroring are requested (and
+ * the filter still applies).
+ * 
+ * - The same resource is requested at most once per cooldown period, so that
+ * clients that repeatedly request a resource that does not exist on ZenHub (or
+ * that always require a fresh copy) cannot consume the ZenHub rate limit.
+ * 
+ * This class is thread safe.
+ */
+public class ZHReadThrough {
+
+	private static final long REQUEST_COOLDOWN_IN_NANOS = TimeUnit.NANOSECONDS.convert(2, TimeUnit.MINUTES);
+
+	/** Expired entries are removed from the cooldown map once it reaches this size */
+	private static final int MAX_COOLDOWN_ENTRIES = 10000;
+
+	private static final long POLL_INTERVAL_IN_MSECS = 50;
+
+	private static final int REFRESH_THREADS = 2;
+
+	private final Object lock = new Object();
+
+	/** resource key -> System.nanoTime() of the last request for that resource */
+	private final Map<String, Long> lastRequestedInNanos_synch_lock = new HashMap<>();
+
+	private final ZHWorkQueue queue;
+
+	private final ZHRepositoryInventory inventory;
+
+	private final long waitInMsecs;
+
+	private final ExecutorService refreshExecutor;
+
+	private static final ZHLog log = ZHLog.getInstance();
+
+	ZHReadThrough(ZHWorkQueue queue, ZHRepositoryInventory inventory, long waitInMsecs) {
+		this.queue = queue;
+		this.inventory = inventory;
+		this.waitInMsecs = waitInMsecs;
+
+		AtomicLong threadNumber = new AtomicLong();
+		this.refreshExecutor = Executors.newFixedThreadPool(REFRESH_THREADS, r -> {
+			Thread t = new Thread(r);
+			t.setName(ZHReadThrough.class.getName() + "-" + threadNumber.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/** Request the issue data and issue events of the issue. */
+	public void requestIssue(long repoId, int issueNumber) {
+
+		ZHRepositoryContainer repo = inventory.getRepository(repoId).orElse(null);
+		if (repo == null || !isRequestAllowed(repoId + "/" + issueNumber)) {
+			return;
+		}
+
+		log.logInfo("Read-through request for issue: " + repo.getRepoName() + "/" + issueNumber);
+
+		queue.addPriorityIssue(new ZHIssueContainer(repo.getOwner(), repo.getRepoName(), repoId, issueNumber));
+	}
+
+	/**
+	 * Request the repository-level resources (board, epics list, dependencies) and
+	 * epics of the repository.
+	 */
+	public void requestRepository(long repoId) {
+
+		ZHRepositoryContainer repo = inventory.getRepository(repoId).orElse(null);
+		if (repo == null || !isRequestAllowed(Long.toString(repoId))) {
+			return;
+		}
+
+		log.logInfo("Read-through request for repository resources: " + repo.getRepoName());
+
+		queue.addPriorityRepository(repo);
+	}
+
+	/**
+	 * Refresh only the repository-level resources (board, epics list,
+	 * dependencies) of the repository; unlike requestRepository(...), the issues
+	 * and epics of the repository are not requested.
+	 */
+	public void refreshRepositoryResources(long repoId) {
+
+		ZHRepositoryContainer repo = getRepositoryToRefresh(repoId, repoId + "/resources");
+		if (repo == null) {
+			return;
+		}
+
+		log.logInfo("Read-through refresh of repository resources: " + repo.getRepoName());
+
+		submitRefresh(repo.getRepoName(), () -> queue.getResourceFetchScheduler().refreshRepository(repo.getOwner(),
+				repo.getRepoName(), repoId, FetchPolicy.FAST_SCAN, queue));
+	}
+
+	/** Refresh only the given epic of the repository. */
+	public void refreshEpic(long repoId, int issueNumber) {
+
+		ZHRepositoryContainer repo = getRepositoryToRefresh(repoId, repoId + "/" + issueNumber + "/epic");
+		if (repo == null) {
+			return;
+		}
+
+		log.logInfo("Read-through refresh of epic: " + repo.getRepoName() + "/" + issueNumber);
+
+		submitRefresh(repo.getRepoName() + "/" + issueNumber,
+				() -> ZHWorkerThread.refreshEpic(repo.getRepoName(), repoId, issueNumber, queue));
+	}
+
+	/** Stop the refresh threads; refreshes that are in progress are interrupted. */
+	public void shutdown() {
+		refreshExecutor.shutdownNow();
+		try {
+			refreshExecutor.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			ZHUtil.throwAsUnchecked(e);
+		}
+	}
+
+	/**
+	 * Wait up to the configured time for the lookup to return a value, by calling
+	 * it periodically; returns the last result.
+	 */
+	public <T> Optional<T> await(Supplier<Optional<T>> lookup) {
+
+		long expireTimeInNanos = System.nanoTime() + TimeUnit.NANOSECONDS.convert(waitInMsecs, TimeUnit.MILLISECONDS);
+
+		Optional<T> result = lookup.get();
+
+		while (!result.isPresent() && System.nanoTime() < expireTimeInNanos) {
+			try {
+				Thread.sleep(POLL_INTERVAL_IN_MSECS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			result = lookup.get();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Return the repository, if it is mirrored, passes the filter, and the
+	 * resource has not been requested within the cooldown period; otherwise null.
+	 */
+	private ZHRepositoryContainer getRepositoryToRefresh(long repoId, String key) {
+
+		ZHRepositoryContainer repo = inventory.getRepository(repoId).orElse(null);
+		if (repo == null) {
+			return null;
+		}
+
+		ZHFilter filter = queue.getFilter();
+		if (filter != null && !filter.processRepo(repo.getOwner(), repo.getRepoName())) {
+			return null;
+		}
+
+		return isRequestAllowed(key) ? repo : null;
+	}
+
+	private void submitRefresh(String debugStr, Runnable r) {
+		try {
+			refreshExecutor.execute(() -> {
+				try {
+					r.run();
+				} catch (Exception e) {
+					// The scans will pick up the resource later; the client receives the stored copy.
+					log.logError("Read-through refresh of " + debugStr + " failed: " + e.getClass().getName() + " - "
+							+ e.getMessage());
+				}
+			});
+		} catch (RuntimeException e) {
+			// The executor has been shut down
+			log.logError("Read-through refresh of " + debugStr + " was rejected: " + e.getMessage());
+		}
+	}
+
+	private boolean isRequestAllowed(String key) {
+		long now = System.nanoTime();
+
+		synchronized (lock) {
+			Long lastRequested = lastRequestedInNanos_synch_lock.get(key);
+			if (lastRequested != null && now - lastRequested < REQUEST_COOLDOWN_IN_NANOS) {
+				return false;
+			}
+
+			if (lastRequestedInNanos_synch_lock.size() >= MAX_COOLDOWN_ENTRIES) {
+				lastRequestedInNanos_synch_lock.values().removeIf(e -> now - e >= REQUEST_COOLDOWN_IN_NANOS);
+			}
+
+			lastRequestedInNanos_synch_lock.put(key, now);
+			return true;
+		}
+	}
+
+}
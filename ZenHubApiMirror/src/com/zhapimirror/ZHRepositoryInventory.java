@@ -0,0 +1,264 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapimirror;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zhapimirror.GHOwner.Type;
+import com.zhapimirror.ZHGitHubRestClient.ZHGitHubPagedResponse;
+import com.zhapimirror.ZHWorkQueue.ZHRepositoryContainer;
+
+/**
+ * The list of repositories (id, name, archived flag) of each org/user that we
+ * are mirroring, persisted to the database.
+ * 
+ * The list of an owner is only requested from GitHub once it is older than the
+ * TTL, and then as conditional requests (using the ETag of each page of the
+ * previous response, since repositories are listed oldest first, and so new
+ * repositories are added to the last page), so that an unchanged list costs a
+ * single request that counts against the GitHub rate limit (for the empty page
+ * after the last page), rather than one request per page of repositories.
+ * 
+ * If the list cannot be refreshed, the previous list is used.
+ * 
+ * This class is thread safe.
+ */
+public class ZHRepositoryInventory {
+
+	private static final String KEY_PREFIX = "repository-inventory-";
+
+	private final Object lock = new Object();
+
+	private final ZHGitHubRestClient restClient;
+
+	private final ZHDatabase db;
+
+	private final long ttlInMsecs;
+
+	private final List<GHOwner> owners;
+
+	private final List<ZHRepositoryContainer> individualRepos;
+
+	/** owner key -> the most recent repository list of that owner */
+	private final Map<String, ZHRepositoryInventoryJson> inventory_synch_lock = new HashMap<>();
+
+	/** All repositories (including archived) by id, as of the last call to getRepositories(...) */
+	private volatile Map<Long, ZHRepositoryContainer> repositoriesById = Collections.emptyMap();
+
+	/** Inventories persisted by older versions may contain fields that are no longer used */
+	private final ObjectMapper om = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES,
+			false);
+
+	private static final ZHLog log = ZHLog.getInstance();
+
+	public ZHRepositoryInventory(ZHGitHubRestClient restClient, ZHDatabase db, long ttlInMinutes, List<GHOwner> owners,
+			List<ZHRepositoryContainer> individualRepos) {
+		this.restClient = restClient;
+		this.db = db;
+		this.ttlInMsecs = TimeUnit.MILLISECONDS.convert(ttlInMinutes, TimeUnit.MINUTES);
+		this.owners = new ArrayList<>(owners);
+		this.individualRepos = new ArrayList<>(individualRepos);
+	}
+
+	/**
+	 * Return all the repositories that we are mirroring, refreshing the list of
+	 * any owner that is older than the TTL.
+	 * 
+	 * @param includeArchived whether to include archived repositories
+	 */
+	public List<ZHRepositoryContainer> getRepositories(boolean includeArchived) throws IOException {
+		List<ZHRepositoryContainer> result = new ArrayList<>();
+
+		Map<Long, ZHRepositoryContainer> byId = new HashMap<>();
+
+		synchronized (lock) {
+			for (GHOwner owner : owners) {
+				ZHRepositoryInventoryJson ownerInventory = getOwnerInventory(owner);
+
+				for (ZHRepositoryInventoryEntryJson e : ownerInventory.getRepositories()) {
+					ZHRepositoryContainer container = new ZHRepositoryContainer(owner, e.getName(), e.getId());
+					byId.put(e.getId(), container);
+
+					if (!includeArchived && e.isArchived()) {
+						continue;
+					}
+					result.add(container);
+				}
+			}
+		}
+
+		result.addAll(individualRepos);
+
+		individualRepos.forEach(e -> byId.put(e.getRepoId(), e));
+		repositoriesById = byId;
+
+		return result;
+	}
+
+	/**
+	 * Return the repository with the given id, if it is one of the repositories
+	 * that we are mirroring (including archived repositories). Unlike
+	 * getRepositories(...), this never refreshes the list from GitHub, so it may
+	 * be called on a request thread (it does not wait for a refresh in progress);
+	 * repositories are only found once getRepositories(...) has been called.
+	 */
+	public Optional<ZHRepositoryContainer> getRepository(long repoId) {
+		return Optional.ofNullable(repositoriesById.get(repoId));
+	}
+
+	/** Return the inventory of the owner, refreshing it if it is older than the TTL. */
+	private ZHRepositoryInventoryJson getOwnerInventory(GHOwner owner) throws IOException {
+
+		String key = KEY_PREFIX + owner.getType().name().toLowerCase() + "-" + owner.getName();
+
+		ZHRepositoryInventoryJson current = inventory_synch_lock.get(key);
+		if (current == null) {
+			current = db.getString(key).map(e -> readInventory(e)).orElse(null);
+		}
+
+		long now = System.currentTimeMillis();
+
+		if (current != null && now - current.getFetchedAt() < ttlInMsecs) {
+			inventory_synch_lock.put(key, current);
+			return current;
+		}
+
+		String path = owner.getType() == Type.ORG ? "/orgs/" + owner.getName() + "/repos?type=all"
+				: "/users/" + owner.getName() + "/repos";
+
+		ZHGitHubPagedResponse response;
+		try {
+			response = restClient.getAllPagesIfModified(path, current != null ? current.getPageEtags() : null);
+		} catch (IOException e) {
+			if (current == null) {
+				throw e;
+			}
+			log.logError("Unable to refresh the repository list of " + owner + ", using previous list: " + e.getMessage());
+			inventory_synch_lock.put(key, current);
+			return current;
+		}
+
+		ZHRepositoryInventoryJson updated = new ZHRepositoryInventoryJson();
+		updated.setFetchedAt(now);
+
+		updated.setPageEtags(response.getPageEtags());
+
+		if (response.isNotModified()) {
+			updated.setRepositories(current.getRepositories());
+
+		} else {
+
+			List<ZHRepositoryInventoryEntryJson> repositories = new ArrayList<>();
+			for (JsonNode node : response.getItems()) {
+				ZHRepositoryInventoryEntryJson entry = new ZHRepositoryInventoryEntryJson();
+				entry.setId(node.path("id").asLong());
+				entry.setName(node.path("name").asText());
+				entry.setArchived(node.path("archived").asBoolean(false));
+				repositories.add(entry);
+			}
+			updated.setRepositories(repositories);
+
+			log.logInfo("Repository list of " + owner + " refreshed: " + repositories.size() + " repositories.");
+		}
+
+		db.persistString(key, JsonUtil.toString(updated));
+		inventory_synch_lock.put(key, updated);
+
+		return updated;
+	}
+
+	private ZHRepositoryInventoryJson readInventory(String contents) {
+		try {
+			return om.readValue(contents, ZHRepositoryInventoryJson.class);
+		} catch (IOException e) {
+			log.logError("Unable to read repository inventory, it will be refreshed.", e);
+			return null;
+		}
+	}
+
+	/** The persisted repository list of a single owner. */
+	public static class ZHRepositoryInventoryJson {
+		private long fetchedAt;
+		private List<String> pageEtags = new ArrayList<>();
+		private List<ZHRepositoryInventoryEntryJson> repositories = new ArrayList<>();
+
+		public long getFetchedAt() {
+			return fetchedAt;
+		}
+
+		public void setFetchedAt(long fetchedAt) {
+			this.fetchedAt = fetchedAt;
+		}
+
+		public List<String> getPageEtags() {
+			return pageEtags;
+		}
+
+		public void setPageEtags(List<String> pageEtags) {
+			this.pageEtags = pageEtags;
+		}
+
+		public List<ZHRepositoryInventoryEntryJson> getRepositories() {
+			return repositories;
+		}
+
+		public void setRepositories(List<ZHRepositoryInventoryEntryJson> repositories) {
+			this.repositories = repositories;
+		}
+	}
+
+	/** A single repository of an owner. */
+	public static class ZHRepositoryInventoryEntryJson {
+		private long id;
+		private String name;
+		private boolean archived;
+
+		public long getId() {
+			return id;
+		}
+
+		public void setId(long id) {
+			this.id = id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public boolean isArchived() {
+			return archived;
+		}
+
+		public void setArchived(boolean archived) {
+			this.archived = archived;
+		}
+	}
+}
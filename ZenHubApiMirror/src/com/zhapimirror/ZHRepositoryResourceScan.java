@@ -16,28 +16,16 @@
 
 package com.zhapimirror;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.UUID;
-
-import org.kohsuke.github.GHOrganization;
-import org.kohsuke.github.GHRepository;
-import org.kohsuke.github.GHUser;
-import org.kohsuke.github.GitHub;
-
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.zhapi.ApiResponse;
-import com.zhapi.ZenHubClient;
-import com.zhapi.json.responses.DependenciesForARepoResponseJson;
-import com.zhapi.json.responses.GetBoardForRepositoryResponseJson;
-import com.zhapi.json.responses.GetEpicsResponseJson;
-import com.zhapi.services.BoardService;
-import com.zhapi.services.DependenciesService;
-import com.zhapi.services.EpicsService;
-import com.zhapi.shared.json.RepositoryChangeEventJson;
-import com.zhapimirror.GHOwner.Type;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.zhapimirror.ZHResourceFetchScheduler.FetchPolicy;
 import com.zhapimirror.ZHWorkQueue.ZHRepositoryContainer;
 
 /**
@@ -45,149 +33,112 @@
  * only updates some resources, not all (eg issues are not updated as this is
  * too expensive).
  * 
- * Issue scanning is handled as part of the nightly scan.
+ * Issue scanning is handled as part of the nightly scan; however, issues whose
+ * pipeline, estimate or position changed on the board are queued for refresh
+ * by this scan.
+ * 
+ * Only those repositories that are due, according to the
+ * ZHRepositoryScanSchedule, are scanned: repositories that change frequently
+ * are scanned more often than those that rarely change. Of the repositories
+ * that are due, those whose resources are most frequently read by clients (see
+ * ZHAccessHeat) are submitted first.
  * 
+ * Repositories are scanned in parallel on a fixed-size pool of threads (the
+ * ZenHub request budget is enforced by the shared ZHZenHubClientPool). A
+ * repository that fails to scan is retried later, according to its schedule,
+ * without delaying the scan of other repositories.
  */
 public class ZHRepositoryResourceScan {
 
-	private static final ZHLog log = ZHLog.getInstance();
-
-	public static void doScan(GHOwner owner, ZenHubClient zh, GitHub gitHubClient, ZHDatabase db) throws IOException {
-
-		log.logInfo("Beginning resource scan on " + owner);
+	private final ZHResourceFetchScheduler fetchScheduler;
 
-		// Gather all the repos in the org/user
-		List<GHRepository> repositories = new ArrayList<>();
-		{
-			if (owner.getType() == Type.ORG) {
+	private final ZHWorkQueue workQueue;
 
-				GHOrganization org = gitHubClient.getOrganization(owner.getOrgNameOrNull());
-
-				repositories.addAll(org.getRepositories().values());
-
-			} else {
-
-				GHUser user = gitHubClient.getUser(owner.getUserNameOrNull());
-				repositories.addAll(user.getRepositories().values());
-			}
-			Collections.shuffle(repositories);
-		}
+	private final ZHRepositoryScanSchedule schedule;
 
-		for (GHRepository repository : repositories) {
+	private final ZHAccessHeat accessHeat;
 
-			// On failure, retry up to 3 times
-			// We don't throw an exception after 3, because this scan will run anyways,
-			// after the next delay interval.
-			retry_for: for (int retries = 0; retries <= 3; retries++) {
-				try {
-					runOnARepository(repository, zh, db);
-					break retry_for;
-				} catch (Exception e) {
-					log.logError(e.getClass().getName() + " - " + e.getMessage() + ". Retrying in 60 seconds.");
-					ZHUtil.sleep(60 * 1000);
-				}
+	private final ExecutorService executor;
 
-			}
+	private static final ZHLog log = ZHLog.getInstance();
 
+	public ZHRepositoryResourceScan(ZHResourceFetchScheduler fetchScheduler, ZHWorkQueue workQueue,
+			ZHRepositoryScanSchedule schedule, ZHAccessHeat accessHeat, int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one resource scan thread is required.");
 		}
 
-		log.logInfo("Resource scan complete on " + owner);
+		this.fetchScheduler = fetchScheduler;
+		this.workQueue = workQueue;
+		this.schedule = schedule;
+		this.accessHeat = accessHeat;
+
+		AtomicLong threadNumber = new AtomicLong(1);
+		this.executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r);
+			t.setName(ZHRepositoryResourceScan.class.getName() + "-" + threadNumber.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		});
 	}
 
-	public static void doScan(List<ZHRepositoryContainer> reposParam, ZenHubClient zh, GitHub gitHubClient, ZHDatabase db)
-			throws IOException {
-
-		log.logInfo("Beginning resource scan on multiple repos");
+	/**
+	 * Submit a scan of each of the given repositories that is due; this method
+	 * does not wait for the scans to complete. Repositories that are still being
+	 * scanned from a previous call are skipped.
+	 */
+	public void doScan(List<ZHRepositoryContainer> reposParam) {
 
+		// Hottest first; repositories that are not read are in random order
 		List<ZHRepositoryContainer> repos = new ArrayList<>(reposParam);
 		Collections.shuffle(repos);
+		repos.sort(Comparator.comparingDouble((ZHRepositoryContainer e) -> accessHeat.getRepositoryHeat(e.getRepoId()))
+				.reversed());
 
-		repos.stream().map(e -> e.getRepo()).forEach(repository -> {
-			// On failure, retry up to 3 times.
-			// We don't throw an exception after 3, because this scan will run anyways,
-			// after the next delay interval.
-			retry_for: for (int retries = 0; retries <= 3; retries++) {
-				try {
-					runOnARepository(repository, zh, db);
-					break retry_for;
-				} catch (Exception e) {
-					log.logError(e.getClass().getName() + " - " + e.getMessage());
-					ZHUtil.sleep(60 * 1000);
-				}
-
-			}
-
-		});
-
-		log.logInfo("Resource scan complete on multiple repos.");
-
-	}
-
-	private static void runOnARepository(GHRepository repository, ZenHubClient zh, ZHDatabase db) throws JsonProcessingException {
-
-		// Have any of the repository resources changed on ZH since we last saw them; we
-		// answer this question by comparing our local database copy with what we get
-		// back from ZH.
-		boolean isRepositoryChangedFromDb = false;
-
-		// Boards
-		{
-			BoardService boardService = new BoardService(zh);
-			ApiResponse<GetBoardForRepositoryResponseJson> r = boardService.getZenHubBoardForRepo(repository.getId());
-
-			if (r != null && r.getResponse() != null) {
+		int submitted = 0;
 
-				GetBoardForRepositoryResponseJson gbfrr = r.getResponse();
+		for (ZHRepositoryContainer container : repos) {
 
-				isRepositoryChangedFromDb = ZHWorkerThread.isRepositoryChangedFromDb(isRepositoryChangedFromDb,
-						db.getZenHubBoardForRepo(repository.getId()).orElse(null), gbfrr);
-
-				db.persist(gbfrr, repository.getId());
+			if (!schedule.tryBeginScan(container.getRepoId())) {
+				continue;
 			}
-		}
-
-		// Dependencies
-		{
-			DependenciesService dependenciesService = new DependenciesService(zh);
-			ApiResponse<DependenciesForARepoResponseJson> r = dependenciesService
-					.getDependenciesForARepository(repository.getId());
-
-			if (r != null && r.getResponse() != null) {
-
-				DependenciesForARepoResponseJson dfarrj = r.getResponse();
 
-				isRepositoryChangedFromDb = ZHWorkerThread.isRepositoryChangedFromDb(isRepositoryChangedFromDb,
-						db.getDependenciesForARepository(repository.getId()).orElse(null), dfarrj);
-
-				db.persist(dfarrj, repository.getId());
+			try {
+				executor.execute(() -> scanRepository(container));
+				submitted++;
+			} catch (RuntimeException e) {
+				// The executor has been shut down
+				schedule.reportScanFailure(container.getRepoId(), container.getRepoName());
+				throw e;
 			}
-
 		}
 
-		// Epics
-		{
-			EpicsService epicsService = new EpicsService(zh);
-			ApiResponse<GetEpicsResponseJson> r = epicsService.getEpics(repository.getId());
-			if (r != null && r.getResponse() != null) {
-
-				GetEpicsResponseJson gerj = r.getResponse();
-
-				isRepositoryChangedFromDb = ZHWorkerThread.isRepositoryChangedFromDb(isRepositoryChangedFromDb,
-						db.getEpics(repository.getId()).orElse(null), gerj);
-
-				db.persist(gerj, repository.getId());
-			}
+		if (submitted > 0) {
+			log.logDebug("Resource scan submitted for " + submitted + " of " + repos.size() + " repositories.");
 		}
+	}
 
-		if (isRepositoryChangedFromDb) {
-			RepositoryChangeEventJson rcej = new RepositoryChangeEventJson();
-			rcej.setRepoId(repository.getId());
-			rcej.setTime(System.currentTimeMillis());
-			rcej.setUuid(UUID.randomUUID().toString());
-
-			log.logInfo("Repository resources changed: " + repository.getId());
-			db.persistRepositoryChangeEvent(rcej);
+	private void scanRepository(ZHRepositoryContainer container) {
+		try {
+			boolean changed = fetchScheduler.refreshRepository(container.getOwner(), container.getRepoName(),
+					container.getRepoId(), FetchPolicy.FAST_SCAN, workQueue);
+			schedule.reportScanResult(container.getRepoId(), container.getRepoName(), changed);
+
+		} catch (Exception e) {
+			// The scan will be retried after a delay; other repositories are unaffected.
+			log.logError("Resource scan of " + container.getRepoName() + " failed: " + e.getClass().getName() + " - "
+					+ e.getMessage());
+			schedule.reportScanFailure(container.getRepoId(), container.getRepoName());
 		}
+	}
 
+	/** Stop the scan threads; scans that are in progress are interrupted. */
+	public void shutdown() {
+		executor.shutdownNow();
+		try {
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			ZHUtil.throwAsUnchecked(e);
+		}
 	}
 }
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapimirror;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks how often the resources (board, dependencies, epics) of each
+ * repository should be rescanned, based on how often they have changed.
+ * 
+ * Each repository starts at the initial interval. When a scan finds that the
+ * repository changed, its interval drops to the minimum (the repository is
+ * 'hot'); each scan that finds no change doubles the interval, up to the
+ * maximum (the repository is 'cold').
+ * 
+ * A scan that fails is retried after a delay that doubles with each
+ * consecutive failure (up to the maximum interval), without affecting the
+ * interval of the repository.
+ * 
+ * This class is thread safe.
+ */
+public class ZHRepositoryScanSchedule {
+
+	private final Object lock = new Object();
+
+	private final long minIntervalInNanos;
+
+	private final long maxIntervalInNanos;
+
+	private final long initialIntervalInNanos;
+
+	private static final long FAILURE_RETRY_DELAY_IN_NANOS = TimeUnit.NANOSECONDS.convert(60, TimeUnit.SECONDS);
+
+	/** repo id -> scan state */
+	private final Map<Long, ZHRepositoryScanState> repos_synch_lock = new HashMap<>();
+
+	private static final ZHLog log = ZHLog.getInstance();
+
+	public ZHRepositoryScanSchedule(long minIntervalInSeconds, long maxIntervalInSeconds, long initialIntervalInSeconds) {
+		if (minIntervalInSeconds <= 0 || maxIntervalInSeconds < minIntervalInSeconds) {
+			throw new IllegalArgumentException(
+					"Invalid repository scan interval: min " + minIntervalInSeconds + ", max " + maxIntervalInSeconds);
+		}
+
+		this.minIntervalInNanos = TimeUnit.NANOSECONDS.convert(minIntervalInSeconds, TimeUnit.SECONDS);
+		this.maxIntervalInNanos = TimeUnit.NANOSECONDS.convert(maxIntervalInSeconds, TimeUnit.SECONDS);
+		this.initialIntervalInNanos = clamp(TimeUnit.NANOSECONDS.convert(initialIntervalInSeconds, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * If the repository is due to be scanned, and is not already being scanned,
+	 * mark it as being scanned and return true; the caller must then call either
+	 * reportScanResult(...) or reportScanFailure(...). Repositories we have not
+	 * seen before are always due.
+	 */
+	public boolean tryBeginScan(long repoId) {
+		synchronized (lock) {
+			ZHRepositoryScanState state = getOrCreateState(repoId);
+
+			if (state.inProgress || System.nanoTime() - state.nextScanInNanos < 0) {
+				return false;
+			}
+
+			state.inProgress = true;
+			return true;
+		}
+	}
+
+	/** Whether at least one known repository is due to be scanned (and is not already being scanned). */
+	public boolean isAnyScanDue() {
+		long now = System.nanoTime();
+		synchronized (lock) {
+			return repos_synch_lock.values().stream().anyMatch(e -> !e.inProgress && now - e.nextScanInNanos >= 0);
+		}
+	}
+
+	/** Update the repository's interval, after a scan of the repository has completed. */
+	public void reportScanResult(long repoId, String repoName, boolean changed) {
+		long newIntervalInNanos;
+
+		synchronized (lock) {
+			ZHRepositoryScanState state = getOrCreateState(repoId);
+			boolean firstScan = state.neverScanned;
+
+			state.inProgress = false;
+			state.neverScanned = false;
+			state.consecutiveFailures = 0;
+
+			long oldIntervalInNanos = state.intervalInNanos;
+
+			if (changed) {
+				state.intervalInNanos = minIntervalInNanos;
+			} else if (!firstScan) {
+				state.intervalInNanos = clamp(state.intervalInNanos * 2);
+			}
+
+			state.nextScanInNanos = System.nanoTime() + state.intervalInNanos;
+
+			if (oldIntervalInNanos == state.intervalInNanos) {
+				return;
+			}
+
+			newIntervalInNanos = state.intervalInNanos;
+		}
+
+		log.logDebug("Scan interval of " + repoName + " is now "
+				+ TimeUnit.SECONDS.convert(newIntervalInNanos, TimeUnit.NANOSECONDS) + " seconds.");
+	}
+
+	/** Schedule a retry of the repository, after a scan of the repository has failed. */
+	public void reportScanFailure(long repoId, String repoName) {
+		long retryDelayInNanos;
+
+		synchronized (lock) {
+			ZHRepositoryScanState state = getOrCreateState(repoId);
+
+			state.inProgress = false;
+			state.consecutiveFailures++;
+
+			retryDelayInNanos = FAILURE_RETRY_DELAY_IN_NANOS;
+			for (int x = 1; x < state.consecutiveFailures && retryDelayInNanos < maxIntervalInNanos; x++) {
+				retryDelayInNanos *= 2;
+			}
+			retryDelayInNanos = Math.min(retryDelayInNanos, Math.max(maxIntervalInNanos, FAILURE_RETRY_DELAY_IN_NANOS));
+
+			state.nextScanInNanos = System.nanoTime() + retryDelayInNanos;
+		}
+
+		log.logInfo("Resource scan of " + repoName + " will be retried in "
+				+ TimeUnit.SECONDS.convert(retryDelayInNanos, TimeUnit.NANOSECONDS) + " seconds.");
+	}
+
+	private ZHRepositoryScanState getOrCreateState(long repoId) {
+		ZHRepositoryScanState state = repos_synch_lock.get(repoId);
+		if (state == null) {
+			state = new ZHRepositoryScanState();
+			state.intervalInNanos = initialIntervalInNanos;
+			state.nextScanInNanos = System.nanoTime();
+			state.neverScanned = true;
+			repos_synch_lock.put(repoId, state);
+		}
+		return state;
+	}
+
+	/** The minimum time between scans of a single repository. */
+	public long getMinIntervalInNanos() {
+		return minIntervalInNanos;
+	}
+
+	private long clamp(long intervalInNanos) {
+		return Math.max(minIntervalInNanos, Math.min(maxIntervalInNanos, intervalInNanos));
+	}
+
+	/** Scan interval and next scan time of a single repository. */
+	private static class ZHRepositoryScanState {
+		long intervalInNanos;
+		long nextScanInNanos;
+		boolean inProgress;
+		boolean neverScanned;
+		int consecutiveFailures;
+	}
+}
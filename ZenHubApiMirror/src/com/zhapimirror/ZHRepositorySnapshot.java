@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapimirror;
+
+import java.util.Optional;
+
+import com.zhapi.shared.json.RepositorySnapshotJson;
+
+/**
+ * Reads all of the stored resources of a repository from the database, for
+ * clients that maintain a local replica of the mirror (which then tail the
+ * change feed from the sequence number of the snapshot).
+ */
+public class ZHRepositorySnapshot {
+
+	private ZHRepositorySnapshot() {
+	}
+
+	/**
+	 * Return a snapshot of the resources of the repository, or empty if the
+	 * database contains no resources for the repository.
+	 */
+	public static Optional<RepositorySnapshotJson> create(ZHDatabase db, long repoId) {
+
+		RepositorySnapshotJson result = new RepositorySnapshotJson();
+		result.setRepoId(repoId);
+
+		// The feed position must be read before any resource: a change that is
+		// persisted while the snapshot is being read will then be seen by the replica
+		// (possibly twice) when it tails the feed.
+		result.setSeq(db.getLastChangeEventSeq());
+
+		result.setBoard(db.getZenHubBoardForRepo(repoId).orElse(null));
+		result.setEpics(db.getEpics(repoId).orElse(null));
+		result.setDependencies(db.getDependenciesForARepository(repoId).orElse(null));
+
+		for (int issueNumber : db.getIssueNumbers(repoId)) {
+			db.getIssueData(repoId, issueNumber).ifPresent(e -> result.getIssueData().put(issueNumber, e));
+			db.getIssueEvents(repoId, issueNumber).ifPresent(e -> result.getIssueEvents().put(issueNumber, e));
+			db.getEpic(repoId, issueNumber).ifPresent(e -> result.getEpic().put(issueNumber, e));
+		}
+
+		if (result.getBoard() == null && result.getEpics() == null && result.getDependencies() == null
+				&& result.getIssueData().isEmpty() && result.getIssueEvents().isEmpty() && result.getEpic().isEmpty()) {
+			return Optional.empty();
+		}
+
+		return Optional.of(result);
+	}
+
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapimirror;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.zhapi.ApiResponse;
+import com.zhapi.json.responses.DependenciesForARepoResponseJson;
+import com.zhapi.json.responses.GetBoardForRepositoryResponseJson;
+import com.zhapi.json.responses.GetEpicsResponseJson;
+import com.zhapi.services.BoardService;
+import com.zhapi.services.DependenciesService;
+import com.zhapi.services.EpicsService;
+import com.zhapi.shared.json.RepositoryChangeEventJson;
+
+/**
+ * All requests for the repository-level ZenHub resources (epics list, board,
+ * dependencies) go through this class, whether they originate from the full
+ * scan (ZHWorkerThread) or from the fast resource scan
+ * (ZHRepositoryResourceScan).
+ * 
+ * For each resource of each repository, this class tracks when it was last
+ * fetched, and whether a fetch is currently in progress:
+ * 
+ * - A resource that was fetched more recently than the maximum age of the
+ * caller's FetchPolicy is not fetched again; the caller instead receives the
+ * result (changed or unchanged) of that recent fetch.
+ * 
+ * - If another thread is already fetching the resource, the caller waits for
+ * that fetch to complete, rather than issuing a duplicate request, and receives
+ * its result.
+ * 
+ * Each fetched resource is persisted and compared with the previous database
+ * copy; a change event is recorded for each resource that changed, and the
+ * freshness metadata of every fetched resource is updated (ZHResourceMetadata). Board
+ * changes are reconciled against the issue work queue, and board/epics list
+ * changes are reported to ZHEpicSync.
+ * 
+ * This class is thread safe.
+ */
+public class ZHResourceFetchScheduler {
+
+	/** The repository-level resources that are managed by this class. */
+	public static enum ResourceType {
+		EPICS, BOARD, DEPENDENCIES
+	}
+
+	/**
+	 * How fresh a resource must be for the caller to accept the existing database
+	 * copy, rather than fetching it again.
+	 */
+	public static enum FetchPolicy {
+
+		/**
+		 * Used by the fast resource scan (which is already paced by the
+		 * ZHRepositoryScanSchedule): only skip resources that were fetched moments ago.
+		 */
+		FAST_SCAN(TimeUnit.MILLISECONDS.convert(10, TimeUnit.SECONDS)),
+
+		/**
+		 * Used by the full scan: resources that the fast scan fetched within the last
+		 * few minutes are reused.
+		 */
+		FULL_SCAN(TimeUnit.MILLISECONDS.convert(5, TimeUnit.MINUTES));
+
+		private final long maxAgeInMsecs;
+
+		private FetchPolicy(long maxAgeInMsecs) {
+			this.maxAgeInMsecs = maxAgeInMsecs;
+		}
+
+		public long getMaxAgeInMsecs() {
+			return maxAgeInMsecs;
+		}
+	}
+
+	private final Object lock = new Object();
+
+	/** (repo id, resource type) key -> the last successful fetch */
+	private final Map<String, ZHFetchResult> lastFetched_synch_lock = new HashMap<>();
+
+	/** (repo id, resource type) key -> the fetch that is currently in progress */
+	private final Map<String, ZHInProgressFetch> inProgress_synch_lock = new HashMap<>();
+
+	private final ZHZenHubClientPool zhClients;
+
+	private final ZHDatabase db;
+
+	private static final ZHLog log = ZHLog.getInstance();
+
+	public ZHResourceFetchScheduler(ZHZenHubClientPool zhClients, ZHDatabase db) {
+		this.zhClients = zhClients;
+		this.db = db;
+	}
+
+	/**
+	 * Bring the epics list, board and dependencies of the repository up to date,
+	 * according to the given policy.
+	 * 
+	 * @return true if any of the resources had changed since we last saw them,
+	 *         including resources whose changes were observed by a recent or
+	 *         concurrent fetch that this call reused
+	 */
+	public boolean refreshRepository(GHOwner owner, String repoName, long repoId, FetchPolicy policy,
+			ZHWorkQueue workQueue) {
+
+		boolean changed = false;
+
+		changed |= refresh(owner, repoName, repoId, ResourceType.EPICS, policy, workQueue);
+		changed |= refresh(owner, repoName, repoId, ResourceType.BOARD, policy, workQueue);
+		changed |= refresh(owner, repoName, repoId, ResourceType.DEPENDENCIES, policy, workQueue);
+
+		if (changed) {
+			log.logInfo("Repository resources changed: " + repoId);
+		}
+
+		return changed;
+	}
+
+	/**
+	 * Fetch a single resource, unless it is fresh enough for the policy.
+	 * 
+	 * @return true if the resource had changed, as of the fetch that was issued by
+	 *         this call, or by the recent/concurrent fetch that this call reused
+	 */
+	private boolean refresh(GHOwner owner, String repoName, long repoId, ResourceType type, FetchPolicy policy,
+			ZHWorkQueue workQueue) {
+
+		String key = repoId + "-" + type.name();
+
+		long maxAgeInNanos = TimeUnit.NANOSECONDS.convert(policy.getMaxAgeInMsecs(), TimeUnit.MILLISECONDS);
+
+		ZHInProgressFetch ourFetch;
+
+		while (true) {
+			ZHInProgressFetch otherFetch;
+
+			synchronized (lock) {
+				ZHFetchResult lastFetched = lastFetched_synch_lock.get(key);
+				if (lastFetched != null && System.nanoTime() - lastFetched.fetchedInNanos < maxAgeInNanos) {
+					return lastFetched.changed;
+				}
+
+				otherFetch = inProgress_synch_lock.get(key);
+				if (otherFetch == null) {
+					ourFetch = new ZHInProgressFetch();
+					inProgress_synch_lock.put(key, ourFetch);
+					break;
+				}
+			}
+
+			// Another thread is fetching this resource: wait for it, and return its
+			// result; if the fetch failed, try again ourselves.
+			try {
+				otherFetch.latch.await();
+			} catch (InterruptedException e) {
+				ZHUtil.throwAsUnchecked(e);
+			}
+
+			ZHFetchResult otherResult = otherFetch.result;
+			if (otherResult != null) {
+				return otherResult.changed;
+			}
+		}
+
+		try {
+			boolean changed = fetch(owner, repoName, repoId, type, workQueue);
+
+			ZHFetchResult result = new ZHFetchResult(System.nanoTime(), changed);
+			ourFetch.result = result;
+
+			synchronized (lock) {
+				lastFetched_synch_lock.put(key, result);
+			}
+
+			return changed;
+
+		} finally {
+			synchronized (lock) {
+				inProgress_synch_lock.remove(key);
+			}
+			ourFetch.latch.countDown();
+		}
+	}
+
+	private boolean fetch(GHOwner owner, String repoName, long repoId, ResourceType type, ZHWorkQueue workQueue) {
+
+		switch (type) {
+		case EPICS: {
+			ApiResponse<GetEpicsResponseJson> r = zhClients.request(zh -> new EpicsService(zh).getEpics(repoId));
+			GetEpicsResponseJson epics = r != null ? r.getResponse() : null;
+			if (epics == null) {
+				log.logDebug("Received getEpics response: null, for " + repoName);
+				return false;
+			}
+
+			GetEpicsResponseJson oldEpics = db.getEpics(repoId).orElse(null);
+			db.persist(epics, repoId);
+
+			boolean changed = ZHChangeEvents.persistIfChanged(db, RepositoryChangeEventJson.RESOURCE_EPICS, repoId, null,
+					oldEpics, epics);
+			ZHResourceMetadata.reportFetched(db, RepositoryChangeEventJson.RESOURCE_EPICS, repoId, null, changed);
+			if (changed) {
+				workQueue.getEpicSync().reportEpicsListChanged(repoId, oldEpics, epics);
+			}
+			return changed;
+		}
+
+		case BOARD: {
+			ApiResponse<GetBoardForRepositoryResponseJson> r = zhClients
+					.request(zh -> new BoardService(zh).getZenHubBoardForRepo(repoId));
+			GetBoardForRepositoryResponseJson board = r != null ? r.getResponse() : null;
+			if (board == null) {
+				return false;
+			}
+
+			GetBoardForRepositoryResponseJson oldBoard = db.getZenHubBoardForRepo(repoId).orElse(null);
+
+			// Refresh the issue data/events (and epics) of only those issues that moved
+			// on the board; this must be done before the new board is persisted.
+			try {
+				Set<Integer> changedIssues = ZHBoardReconciler.queueChangedIssues(board, owner, repoName, repoId,
+						workQueue);
+				workQueue.getEpicSync().reportIssuesChanged(repoId, changedIssues);
+			} catch (JsonProcessingException e) {
+				ZHUtil.throwAsUnchecked(e);
+			}
+
+			db.persist(board, repoId);
+
+			boolean changed = ZHChangeEvents.persistIfChanged(db, RepositoryChangeEventJson.RESOURCE_BOARD, repoId, null,
+					oldBoard, board);
+			ZHResourceMetadata.reportFetched(db, RepositoryChangeEventJson.RESOURCE_BOARD, repoId, null, changed);
+			return changed;
+		}
+
+		case DEPENDENCIES: {
+			ApiResponse<DependenciesForARepoResponseJson> r = zhClients
+					.request(zh -> new DependenciesService(zh).getDependenciesForARepository(repoId));
+			DependenciesForARepoResponseJson dependencies = r != null ? r.getResponse() : null;
+			if (dependencies == null) {
+				return false;
+			}
+
+			DependenciesForARepoResponseJson oldDependencies = db.getDependenciesForARepository(repoId).orElse(null);
+			db.persist(dependencies, repoId);
+
+			boolean changed = ZHChangeEvents.persistIfChanged(db, RepositoryChangeEventJson.RESOURCE_DEPENDENCIES, repoId,
+					null, oldDependencies, dependencies);
+			ZHResourceMetadata.reportFetched(db, RepositoryChangeEventJson.RESOURCE_DEPENDENCIES, repoId, null, changed);
+			return changed;
+		}
+
+		default:
+			throw new IllegalArgumentException("Unrecognized resource type: " + type);
+		}
+	}
+
+	/** The outcome of a successful fetch of a single resource. */
+	private static class ZHFetchResult {
+		private final long fetchedInNanos;
+		private final boolean changed;
+
+		public ZHFetchResult(long fetchedInNanos, boolean changed) {
+			this.fetchedInNanos = fetchedInNanos;
+			this.changed = changed;
+		}
+	}
+
+	/**
+	 * A fetch that is in progress; the latch is released when the fetch completes,
+	 * at which point result is set if (and only if) the fetch succeeded.
+	 */
+	private static class ZHInProgressFetch {
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private volatile ZHFetchResult result;
+	}
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapimirror;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The freshness of each stored resource (board, epics list, epic,
+ * dependencies, issue data, issue events): when it was last fetched from
+ * ZenHub, and when its contents last changed. This is recorded after every
+ * fetch, whether or not the resource changed, and is returned to clients as
+ * the Age and Last-Modified headers of the resource.
+ * 
+ * Resources that were stored before this metadata was recorded have no
+ * metadata until they are next fetched.
+ */
+public class ZHResourceMetadata {
+
+	private ZHResourceMetadata() {
+	}
+
+	/**
+	 * Record that the resource was fetched from ZenHub and persisted.
+	 * 
+	 * @param issueNumber the issue number of an issue-level resource (epic, issue
+	 *                    data, issue events), or null for a repository-level
+	 *                    resource
+	 * @param changed     whether the contents of the resource differed from the
+	 *                    previously stored copy
+	 */
+	public static void reportFetched(ZHDatabase db, String resourceType, long repoId, Integer issueNumber,
+			boolean changed) {
+
+		long now = System.currentTimeMillis();
+
+		ZHResourceMetadataJson old = db.getResourceMetadata(resourceType, repoId, issueNumber).orElse(null);
+
+		ZHResourceMetadataJson metadata = new ZHResourceMetadataJson();
+		metadata.setFetchedAt(now);
+		metadata.setLastChangedAt(changed || old == null ? now : old.getLastChangedAt());
+
+		db.persist(metadata, resourceType, repoId, issueNumber);
+	}
+
+	/**
+	 * Whether the resource was fetched within the given time; resources without
+	 * metadata are never fresh.
+	 */
+	public static boolean isFresh(ZHDatabase db, String resourceType, long repoId, Integer issueNumber,
+			long maxAgeInMsecs) {
+
+		Optional<ZHResourceMetadataJson> metadata = db.getResourceMetadata(resourceType, repoId, issueNumber);
+
+		return metadata.isPresent() && getAgeInMsecs(metadata.get()) <= maxAgeInMsecs;
+	}
+
+	/** The time since the resource was last fetched, in seconds. */
+	public static long getAgeInSeconds(ZHResourceMetadataJson metadata) {
+		return TimeUnit.SECONDS.convert(getAgeInMsecs(metadata), TimeUnit.MILLISECONDS);
+	}
+
+	private static long getAgeInMsecs(ZHResourceMetadataJson metadata) {
+		// The clock may have been adjusted since the resource was fetched
+		return Math.max(0, System.currentTimeMillis() - metadata.getFetchedAt());
+	}
+
+	/** The persisted freshness of a single resource; times are in epoch msecs. */
+	public static class ZHResourceMetadataJson {
+		private long fetchedAt;
+		private long lastChangedAt;
+
+		public long getFetchedAt() {
+			return fetchedAt;
+		}
+
+		public void setFetchedAt(long fetchedAt) {
+			this.fetchedAt = fetchedAt;
+		}
+
+		public long getLastChangedAt() {
+			return lastChangedAt;
+		}
+
+		public void setLastChangedAt(long lastChangedAt) {
+			this.lastChangedAt = lastChangedAt;
+		}
+	}
+}
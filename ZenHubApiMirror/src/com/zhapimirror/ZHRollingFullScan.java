@@ -0,0 +1,190 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapimirror;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.zhapi.shared.json.RepositoryChangeEventJson;
+import com.zhapimirror.ZHWorkQueue.ZHRepositoryContainer;
+
+/**
+ * Rather than queueing every repository for a full scan at once (which
+ * saturates the rate limit for hours), the full scan is spread evenly over a
+ * rolling window: each time tick(...) is called, a share of the repositories
+ * (proportional to the time elapsed since the last tick) is added to the work
+ * queue, those least recently refreshed first.
+ * 
+ * In the steady state, each repository is thus fully refreshed once per
+ * window, and the full scan interleaves with the faster resource scans.
+ * 
+ * Repositories whose resources are frequently read by clients (see
+ * ZHAccessHeat) are refreshed more often, within the same budget: the time
+ * since the last refresh of a repository is weighted by a factor that grows
+ * with the logarithm of its heat, so hot repositories are queued ahead of cold
+ * repositories that were refreshed more recently, while cold repositories are
+ * delayed by a bounded amount.
+ * 
+ * The freshness target of each resource type is a maximum age:
+ * 
+ * - Repository-level resources (board, epics list, dependencies): the window,
+ * as each repository is refreshed once per window.
+ * 
+ * - Epics: the epic reconciliation interval (see ZHEpicSync).
+ * 
+ * - Issue data and issue events: the issue max age. The repository scan only
+ * requests issues that changed on GitHub or on the board, so when a
+ * repository is queued, its stored issues that would exceed the issue max age
+ * before the repository's next turn are queued as well.
+ * 
+ * The time of the last full refresh of each repository is stored in the
+ * database, so that the rotation survives a restart.
+ */
+public class ZHRollingFullScan {
+
+	private static final String KEY_PREFIX = "last-full-refresh-";
+
+	private final ZHDatabase db;
+
+	private final ZHWorkQueue queue;
+
+	private final ZHAccessHeat accessHeat;
+
+	private final long windowInMsecs;
+
+	private final long issueMaxAgeInMsecs;
+
+	/** Fractional number of repositories that we are owed, carried between ticks */
+	private double credit = 0;
+
+	private long lastTickInNanos = -1;
+
+	private static final ZHLog log = ZHLog.getInstance();
+
+	public ZHRollingFullScan(ZHDatabase db, ZHWorkQueue queue, ZHAccessHeat accessHeat, long windowInHours,
+			long issueMaxAgeInHours) {
+		if (windowInHours <= 0) {
+			throw new IllegalArgumentException("Invalid full scan window: " + windowInHours);
+		}
+		if (issueMaxAgeInHours <= 0) {
+			throw new IllegalArgumentException("Invalid issue max age: " + issueMaxAgeInHours);
+		}
+
+		this.db = db;
+		this.queue = queue;
+		this.accessHeat = accessHeat;
+		this.windowInMsecs = TimeUnit.MILLISECONDS.convert(windowInHours, TimeUnit.HOURS);
+		this.issueMaxAgeInMsecs = TimeUnit.MILLISECONDS.convert(issueMaxAgeInHours, TimeUnit.HOURS);
+	}
+
+	/**
+	 * Queue the next share of the given repositories for a full refresh. This is
+	 * called periodically by the scheduler thread (and is not thread safe).
+	 */
+	public void tick(List<ZHRepositoryContainer> repositories) {
+
+		long now = System.nanoTime();
+
+		if (lastTickInNanos == -1 || repositories.isEmpty()) {
+			lastTickInNanos = now;
+			return;
+		}
+
+		long elapsedInMsecs = TimeUnit.MILLISECONDS.convert(now - lastTickInNanos, TimeUnit.NANOSECONDS);
+		lastTickInNanos = now;
+
+		credit += (double) repositories.size() * elapsedInMsecs / windowInMsecs;
+
+		int toQueue = (int) Math.min(credit, repositories.size());
+		if (toQueue == 0) {
+			return;
+		}
+		credit -= toQueue;
+
+		long nowInMsecs = System.currentTimeMillis();
+
+		// Most overdue first, weighted by heat (never refreshed sorts as most overdue)
+		List<ZHRepositoryContainer> sorted = new ArrayList<>(repositories);
+		sorted.sort(Comparator.comparingDouble((ZHRepositoryContainer e) -> getWeightedAge(e.getRepoId(), nowInMsecs))
+				.reversed());
+
+		long oldest = getLastRefresh(db, sorted.get(0).getRepoId());
+
+		log.logDebug("Rolling full scan is queueing " + toQueue + " of " + repositories.size() + " repositories, first refresh: "
+				+ (oldest == 0 ? "never" : ((nowInMsecs - oldest) / (60 * 1000)) + " minutes ago"));
+
+		sorted.stream().limit(toQueue).forEach(e -> {
+			queue.addRepository(e.getOwner(), e.getRepoName(), e.getRepoId());
+			queueStaleIssues(e);
+		});
+	}
+
+	/**
+	 * Queue the stored issues of the repository whose issue data or issue events
+	 * would be older than the issue max age by the time the repository is next
+	 * queued (one window from now).
+	 */
+	private void queueStaleIssues(ZHRepositoryContainer repo) {
+
+		long repoId = repo.getRepoId();
+
+		long thresholdInMsecs = Math.max(0, issueMaxAgeInMsecs - windowInMsecs);
+
+		int queued = 0;
+
+		for (int issueNumber : db.getIssueNumbers(repoId)) {
+
+			if (!db.getIssueData(repoId, issueNumber).isPresent()) {
+				continue;
+			}
+
+			if (ZHResourceMetadata.isFresh(db, RepositoryChangeEventJson.RESOURCE_ISSUE_DATA, repoId, issueNumber,
+					thresholdInMsecs)
+					&& ZHResourceMetadata.isFresh(db, RepositoryChangeEventJson.RESOURCE_ISSUE_EVENTS, repoId,
+							issueNumber, thresholdInMsecs)) {
+				continue;
+			}
+
+			queue.addIssue(repo.getOwner(), repo.getRepoName(), repoId, issueNumber);
+			queued++;
+		}
+
+		if (queued > 0) {
+			log.logDebug("Rolling full scan queued " + queued + " issues of " + repo.getRepoName()
+					+ " that are near the issue max age.");
+		}
+	}
+
+	/** Called after a full refresh of the repository's resources has succeeded. */
+	public static void reportRepositoryRefreshed(ZHDatabase db, long repoId) {
+		db.persistLong(KEY_PREFIX + repoId, System.currentTimeMillis());
+	}
+
+	/** The time since the last full refresh of the repository, weighted by its heat. */
+	private double getWeightedAge(long repoId, long nowInMsecs) {
+		long ageInMsecs = Math.max(0, nowInMsecs - getLastRefresh(db, repoId));
+
+		return ageInMsecs * (1 + Math.log1p(accessHeat.getRepositoryHeat(repoId)));
+	}
+
+	private static long getLastRefresh(ZHDatabase db, long repoId) {
+		return db.getLong(KEY_PREFIX + repoId).orElse(0l);
+	}
+
+}
@@ -19,10 +19,8 @@
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
@@ -35,7 +33,6 @@
 import org.kohsuke.github.GitHubBuilder;
 import org.kohsuke.github.RateLimitHandler;
 
-import com.zhapi.ZenHubClient;
 import com.zhapimirror.ZHWorkQueue.ZHRepositoryContainer;
 
 /**
@@ -58,7 +55,7 @@ public class ZHServerInstance {
 
 	private final ZHDatabase db;
 
-	private final ZenHubClient zenhubClient;
+	private final ZHZenHubClientPool zenhubClients;
 
 	private final long timeBetweenEventScansInNanos = TimeUnit.NANOSECONDS.convert(4, TimeUnit.MINUTES);
 
@@ -66,10 +63,32 @@ public class ZHServerInstance {
 
 	private final ZHBackgroundSchedulerThread backgroundSchedulerThread;
 
+	private final ZHWorkerPool workerPool;
+
+	private final ZHRepositoryScanSchedule repositoryScanSchedule;
+
+	private final ZHRollingFullScan rollingFullScan;
+
+	private final ZHRepositoryResourceScan resourceScan;
+
+	private final ZHRepositoryInventory repositoryInventory;
+
+	/** Null if read-through is disabled */
+	private final ZHReadThrough readThrough;
+
+	private final ZHAccessHeat accessHeat;
+
 	private final ZHLog log = ZHLog.getInstance();
 
-	private ZHServerInstance(String username, String password, String serverName, String zenhubServerName, String zenhubApiKey,
-			List<String> orgNames, List<String> userRepos, List<String> individualRepos, File dbDir, ZHFilter filter) {
+	private ZHServerInstance(ZHServerInstanceBuilder instanceBuilder) {
+
+		String username = instanceBuilder.ghUsername;
+		String password = instanceBuilder.ghPassword;
+		String serverName = instanceBuilder.ghServerName;
+		List<String> orgNames = instanceBuilder.orgNames;
+		List<String> userRepos = instanceBuilder.userRepos;
+		List<String> individualRepos = instanceBuilder.individualRepos;
+		ZHFilter filter = instanceBuilder.filter;
 
 		if (filter == null) {
 			filter = new PermissiveFilter();
@@ -86,7 +105,7 @@ private ZHServerInstance(String username, String password, String serverName, St
 					"You cannot include an individual repo if you have also included the organization of that repo.");
 		}
 
-		this.db = new ZHInMemoryCacheDb(new ZHPersistJsonDb(dbDir));
+		this.db = new ZHInMemoryCacheDb(new ZHPersistJsonDb(instanceBuilder.dbDir));
 		this.db.uninitializeDatabaseOnContentsMismatch(orgNames, userRepos, individualRepos);
 
 		try {
@@ -111,9 +130,37 @@ private ZHServerInstance(String username, String password, String serverName, St
 			throw new RuntimeException(e);
 		}
 
-		zenhubClient = new ZenHubClient(zenhubServerName, zenhubApiKey);
+		zenhubClients = new ZHZenHubClientPool(instanceBuilder.zenhubServerName, instanceBuilder.zenhubApiKeys,
+				instanceBuilder.zenhubRequestsPerMinute);
+
+		if (zenhubClients.getNumberOfKeys() > 1) {
+			log.logInfo("Using " + zenhubClients.getNumberOfKeys() + " ZenHub API keys.");
+		}
+
+		ZHGitHubRestClient githubRestClient = new ZHGitHubRestClient(githubClient, username, password);
+
+		ZHIssueDiscovery issueDiscovery = new ZHIssueDiscovery(githubRestClient, db,
+				instanceBuilder.fullIssueListingIntervalInHours);
+
+		ZHResourceFetchScheduler resourceFetchScheduler = new ZHResourceFetchScheduler(zenhubClients, db);
+
+		ZHEpicSync epicSync = new ZHEpicSync(db, instanceBuilder.fullEpicReconciliationIntervalInHours);
+
+		accessHeat = new ZHAccessHeat(instanceBuilder.accessHeatHalfLifeInMinutes);
+
+		queue = new ZHWorkQueue(zenhubClients, githubClient, issueDiscovery, resourceFetchScheduler, epicSync,
+				accessHeat, db, filter);
+
+		repositoryScanSchedule = new ZHRepositoryScanSchedule(instanceBuilder.minRepositoryScanIntervalInSeconds,
+				instanceBuilder.maxRepositoryScanIntervalInSeconds,
+				TimeUnit.SECONDS.convert(timeBetweenEventScansInNanos, TimeUnit.NANOSECONDS));
+
+		rollingFullScan = new ZHRollingFullScan(db, queue, accessHeat, instanceBuilder.fullScanWindowInHours,
+				instanceBuilder.issueMaxAgeInHours);
+
+		resourceScan = new ZHRepositoryResourceScan(resourceFetchScheduler, queue, repositoryScanSchedule, accessHeat,
+				instanceBuilder.resourceScanThreads);
 
-		queue = new ZHWorkQueue(zenhubClient, githubClient, db, filter);
 		ghOrgList = new ArrayList<>();
 
 		ghUserReposList = new ArrayList<>();
@@ -181,7 +228,7 @@ private ZHServerInstance(String username, String password, String serverName, St
 									"Unable to find user repo or org, after request to GitHub API: " + fullRepoName);
 						}
 
-						ZHRepositoryContainer rc = new ZHRepositoryContainer(owner, repo, repoName, repo.getId());
+						ZHRepositoryContainer rc = new ZHRepositoryContainer(owner, repoName, repo.getId());
 						ghIndividualReposList.add(rc);
 					}
 
@@ -197,10 +244,24 @@ private ZHServerInstance(String username, String password, String serverName, St
 
 		} while (!success);
 
-		for (int x = 0; x < 2; x++) {
-			ZHWorkerThread wt = new ZHWorkerThread(queue, x + 1);
-			wt.start();
-		}
+		List<GHOwner> owners = new ArrayList<>();
+		ghOrgList.forEach(e -> owners.add(GHOwner.org(e.getLogin())));
+		ghUserReposList.forEach(e -> owners.add(GHOwner.user(e.getLogin())));
+
+		repositoryInventory = new ZHRepositoryInventory(githubRestClient, db, instanceBuilder.repositoryInventoryTtlInMinutes,
+				owners, ghIndividualReposList);
+
+		readThrough = instanceBuilder.readThrough
+				? new ZHReadThrough(queue, repositoryInventory, instanceBuilder.readThroughWaitInMsecs)
+				: null;
+
+		int maxWorkerThreads = instanceBuilder.maxWorkerThreads != null
+				? Math.max(instanceBuilder.workerThreads, instanceBuilder.maxWorkerThreads)
+				: instanceBuilder.workerThreads;
+
+		workerPool = new ZHWorkerPool(queue, zenhubClients, instanceBuilder.workerThreads, maxWorkerThreads,
+				instanceBuilder.autoScaleWorkerThreads, instanceBuilder.workerExecutionMode,
+				instanceBuilder.maxConcurrentFetches);
 
 		backgroundSchedulerThread = new ZHBackgroundSchedulerThread();
 		backgroundSchedulerThread.start();
@@ -211,6 +272,35 @@ public ZHDatabase getDb() {
 		return db;
 	}
 
+	/** Returns empty if read-through of missing resources is disabled. */
+	public Optional<ZHReadThrough> getReadThrough() {
+		return Optional.ofNullable(readThrough);
+	}
+
+	/** Client reads of resources are recorded here, see ZHAccessHeat. */
+	public ZHAccessHeat getAccessHeat() {
+		return accessHeat;
+	}
+
+	/**
+	 * Stop the background scheduler thread and the worker threads of this server
+	 * instance. Work that is in progress is allowed to complete (up to a timeout),
+	 * but no new work will be started.
+	 */
+	public void shutdown() {
+		log.logInfo("Shutting down server instance.");
+
+		backgroundSchedulerThread.shutdown();
+
+		resourceScan.shutdown();
+
+		if (readThrough != null) {
+			readThrough.shutdown();
+		}
+
+		workerPool.shutdown();
+	}
+
 	public static ZHServerInstanceBuilder builder() {
 		return new ZHServerInstanceBuilder();
 	}
@@ -218,116 +308,53 @@ public static ZHServerInstanceBuilder builder() {
 	/**
 	 * A single background thread is running at all times, for a single server
 	 * instance. This thread is responsible for retrieving an updated copy of the
-	 * lowest-bandwidth ZH resources every X seconds, and also doing a full resource
-	 * scan every day.
+	 * lowest-bandwidth ZH resources every X seconds, and also for the rolling full
+	 * scan, which refreshes all the resources of every repository once per full
+	 * scan window.
 	 */
 	private class ZHBackgroundSchedulerThread extends Thread {
 
-		private boolean fullScanInProgress = false;
+		private volatile boolean running = true;
 
 		public ZHBackgroundSchedulerThread() {
 			setName(ZHBackgroundSchedulerThread.class.getName());
 			setDaemon(true);
 		}
 
-		/** This is called every 60 seconds */
-		private void innerRun(Map<Long /* (year * 1000) + day_of_year */, Boolean> hasDailyScanRunToday,
-				AtomicLong nextEventScanInNanos) throws IOException {
+		/**
+		 * This is called every 60 seconds, or more frequently if the minimum repository
+		 * scan interval is less than that.
+		 */
+		private void innerRun(AtomicLong nextEventScanInNanos) throws IOException {
 
-			Calendar c = Calendar.getInstance();
-			int hour = c.get(Calendar.HOUR_OF_DAY);
-			int dayOfYear = c.get(Calendar.DAY_OF_YEAR);
-			int year = c.get(Calendar.YEAR);
+			zenhubClients.logKeyUsageMetricsIfDue();
 
-			boolean runFullScan = (hour == 3 || !getDb().isDatabaseInitialized());
+			// The repository inventory is only refreshed from GitHub once its TTL has
+			// expired.
+			List<ZHRepositoryContainer> allRepositories = repositoryInventory.getRepositories(true);
 
-			// Run a full scan if the database has not been refreshed in X hours
-			Long lastFullScan = db.getLong(ZHDatabase.LAST_FULL_SCAN).orElse(null);
-			if (lastFullScan != null && !fullScanInProgress) {
-				long elapsedTimeInHours = TimeUnit.HOURS.convert(System.currentTimeMillis() - lastFullScan,
-						TimeUnit.MILLISECONDS);
-				if (elapsedTimeInHours > 48) {
-					log.logInfo("* Database is " + elapsedTimeInHours + " hours old, so running full scan.");
-					runFullScan = true;
-				}
+			// Repositories are scanned when due according to their individual schedule;
+			// a scan pass is also started at least every X minutes, in order to pick up
+			// new repositories.
+			boolean listingDue = System.nanoTime() >= nextEventScanInNanos.get();
+			if (listingDue) {
+				nextEventScanInNanos.set(System.nanoTime() + timeBetweenEventScansInNanos);
 			}
 
-			if (runFullScan) {
-
-				// Run the full scan if the DB has not been initialized, or it is 3AM
-
-				if (!getDb().isDatabaseInitialized()) {
-					getDb().initializeDatabase();
-				}
-
-				long value = year * 1000 + dayOfYear;
-				if (!hasDailyScanRunToday.containsKey(value)) {
-					hasDailyScanRunToday.put(value, true);
-
-					ghOrgList.forEach(e -> {
-
-						GHOwner owner = GHOwner.org(e.getLogin());
-
-						try {
-							e.getRepositories().values().forEach(repo -> {
-								queue.addRepository(owner, repo, repo.getName(), repo.getId());
-							});
-						} catch (IOException e1) {
-							ZHUtil.throwAsUnchecked(e1);
-						}
-
-					});
-
-					ghUserReposList.forEach(e -> {
-						GHOwner owner = GHOwner.user(e.getLogin());
-
-						try {
-							e.getRepositories().values().forEach(repo -> {
-								queue.addRepository(owner, repo, repo.getName(), repo.getId());
-							});
-						} catch (IOException e1) {
-							ZHUtil.throwAsUnchecked(e1);
-						}
-
-					});
+			if (!getDb().isDatabaseInitialized()) {
+				// If the DB has not been initialized, then queue every repository now, rather
+				// than waiting for the rolling scan.
+				getDb().initializeDatabase();
 
-					ghIndividualReposList.forEach(e -> {
-						GHOwner owner = e.getOwner();
-						queue.addRepository(owner, e.getRepo(), e.getRepoName(), e.getRepoId());
-					});
-
-					this.fullScanInProgress = true;
-
-				}
-
-			} else if (hour >= 2 && hour <= 4) {
-				/* ignore */
-
-			} else if (queue.availableWork() <= 100) {
-
-				if (queue.availableWork() == 0 && this.fullScanInProgress) {
-					// A full scan is considered completed if started, and then
-					// the available work dropped to 0.
-					this.fullScanInProgress = false;
-					db.persistLong(ZHDatabase.LAST_FULL_SCAN, System.currentTimeMillis());
-				}
-
-				if (System.nanoTime() >= nextEventScanInNanos.get()) {
-					nextEventScanInNanos.set(System.nanoTime() + timeBetweenEventScansInNanos);
-					for (GHOrganization org : ghOrgList) {
-						ZHRepositoryResourceScan.doScan(GHOwner.org(org.getLogin()), zenhubClient, githubClient, db);
-					}
-
-					for (GHUser user : ghUserReposList) {
-						ZHRepositoryResourceScan.doScan(GHOwner.user(user.getLogin()), zenhubClient, githubClient, db);
-					}
-
-					if (ghIndividualReposList.size() > 0) {
-						ZHRepositoryResourceScan.doScan(ghIndividualReposList, zenhubClient, githubClient, db);
-					}
+				allRepositories.forEach(e -> queue.addRepository(e.getOwner(), e.getRepoName(), e.getRepoId()));
+			}
 
-				}
+			rollingFullScan.tick(allRepositories);
 
+			// Archived repositories are still covered by the rolling full scan, but are
+			// excluded from the fast resource scan.
+			if (queue.availableWork() <= 100 && (listingDue || repositoryScanSchedule.isAnyScanDue())) {
+				resourceScan.doScan(repositoryInventory.getRepositories(false));
 			}
 
 		}
@@ -337,24 +364,39 @@ public void run() {
 
 			AtomicLong nextEventScanInNanos = new AtomicLong(System.nanoTime());
 
-			// Whether the daily scan has run today
-			Map<Long /* year * 1000 + day_of_year */, Boolean> hasDailyScanRunToday = new HashMap<>();
-
-			while (true) {
+			while (running) {
 
 				try {
-					innerRun(hasDailyScanRunToday, nextEventScanInNanos);
+					innerRun(nextEventScanInNanos);
 				} catch (Exception e) {
+					if (!running) {
+						break;
+					}
 					// Log and ignore
 					log.logError("Error occurred in " + this.getClass().getName(), e);
 				}
 
-				ZHUtil.sleep(60 * 1000);
+				try {
+					Thread.sleep(Math.min(60 * 1000, TimeUnit.MILLISECONDS
+							.convert(repositoryScanSchedule.getMinIntervalInNanos(), TimeUnit.NANOSECONDS)));
+				} catch (InterruptedException e) {
+					/* ignore: shutdown() was called */
+				}
 
 			}
 
 		}
 
+		public void shutdown() {
+			running = false;
+			this.interrupt();
+			try {
+				this.join(10 * 1000);
+			} catch (InterruptedException e) {
+				ZHUtil.throwAsUnchecked(e);
+			}
+		}
+
 	}
 
 	/**
@@ -367,11 +409,28 @@ public static class ZHServerInstanceBuilder {
 		private String ghPassword;
 		private String ghServerName;
 		private String zenhubServerName;
-		private String zenhubApiKey;
+		private List<String> zenhubApiKeys = new ArrayList<>();
 		private List<String> orgNames = new ArrayList<>();
 		private List<String> userRepos = new ArrayList<>();
 		private List<String> individualRepos = new ArrayList<>();
 		private File dbDir;
+		private int workerThreads = 2;
+		private Integer maxWorkerThreads = null;
+		private boolean autoScaleWorkerThreads = false;
+		private ZHWorkerPool.ExecutionMode workerExecutionMode = ZHWorkerPool.ExecutionMode.THREADS;
+		private int maxConcurrentFetches = 64;
+		private int zenhubRequestsPerMinute = 100;
+		private long fullScanWindowInHours = 24;
+		private long issueMaxAgeInHours = 7 * 24;
+		private int resourceScanThreads = 4;
+		private long repositoryInventoryTtlInMinutes = 15;
+		private long minRepositoryScanIntervalInSeconds = 30;
+		private long maxRepositoryScanIntervalInSeconds = TimeUnit.SECONDS.convert(4, TimeUnit.HOURS);
+		private long fullIssueListingIntervalInHours = 7 * 24;
+		private long fullEpicReconciliationIntervalInHours = 24;
+		private boolean readThrough = false;
+		private long readThroughWaitInMsecs = 0;
+		private long accessHeatHalfLifeInMinutes = 60;
 
 		private ZHFilter filter;
 
@@ -406,7 +465,21 @@ public ZHServerInstanceBuilder zenhubServerName(String servername) {
 		}
 
 		public ZHServerInstanceBuilder zenhubApiKey(String zhapikey) {
-			this.zenhubApiKey = zhapikey;
+			if (zhapikey != null && !this.zenhubApiKeys.contains(zhapikey)) {
+				this.zenhubApiKeys.add(zhapikey);
+			}
+			return this;
+		}
+
+		/**
+		 * Multiple ZenHub API keys may be specified (for example, one per service
+		 * account); requests will be spread across all of the keys, each with its own
+		 * rate limit budget.
+		 */
+		public ZHServerInstanceBuilder zenhubApiKeys(List<String> zhapikeys) {
+			if (zhapikeys != null) {
+				zhapikeys.forEach(this::zenhubApiKey);
+			}
 			return this;
 		}
 
@@ -435,9 +508,160 @@ public ZHServerInstanceBuilder filter(ZHFilter filter) {
 			return this;
 		}
 
+		/** Number of worker threads to start with (and to maintain, if auto-scaling is disabled). */
+		public ZHServerInstanceBuilder workerThreads(int workerThreads) {
+			if (workerThreads < 1) {
+				throw new IllegalArgumentException("At least one worker thread is required.");
+			}
+			this.workerThreads = workerThreads;
+			return this;
+		}
+
+		/**
+		 * The upper bound on the number of worker threads, when auto-scaling is
+		 * enabled (default: the same as workerThreads).
+		 */
+		public ZHServerInstanceBuilder maxWorkerThreads(int maxWorkerThreads) {
+			this.maxWorkerThreads = maxWorkerThreads;
+			return this;
+		}
+
+		public ZHServerInstanceBuilder autoScaleWorkerThreads(boolean autoScaleWorkerThreads) {
+			this.autoScaleWorkerThreads = autoScaleWorkerThreads;
+			return this;
+		}
+
+		/**
+		 * Whether work is processed by worker threads (the default), or by one task
+		 * (virtual thread, where supported) per repository/issue fetch.
+		 */
+		public ZHServerInstanceBuilder workerExecutionMode(ZHWorkerPool.ExecutionMode mode) {
+			if (mode == null) {
+				mode = ZHWorkerPool.ExecutionMode.THREADS;
+			}
+			this.workerExecutionMode = mode;
+			return this;
+		}
+
+		/** The maximum number of in-flight fetches, in the task-per-fetch execution mode. */
+		public ZHServerInstanceBuilder maxConcurrentFetches(int maxConcurrentFetches) {
+			this.maxConcurrentFetches = maxConcurrentFetches;
+			return this;
+		}
+
+		/**
+		 * The maximum number of requests per minute that will be issued to the ZenHub
+		 * API using each API key, across all threads; 0 or less disables rate
+		 * limiting.
+		 */
+		public ZHServerInstanceBuilder zenhubRequestsPerMinute(int zenhubRequestsPerMinute) {
+			this.zenhubRequestsPerMinute = zenhubRequestsPerMinute;
+			return this;
+		}
+
+		/**
+		 * All the resources of every repository are refreshed once per window; the
+		 * refreshes are spread evenly across the window, rather than all at once.
+		 */
+		public ZHServerInstanceBuilder fullScanWindowInHours(long hours) {
+			this.fullScanWindowInHours = hours;
+			return this;
+		}
+
+		/**
+		 * The issue data and issue events of each stored issue are refreshed at least
+		 * once per max age, by the rolling full scan, even if the issue did not change
+		 * on GitHub or on the board.
+		 */
+		public ZHServerInstanceBuilder issueMaxAgeInHours(long hours) {
+			this.issueMaxAgeInHours = hours;
+			return this;
+		}
+
+		/**
+		 * The list of repositories of each org/user is requested from GitHub (as a
+		 * conditional request) at most once per TTL.
+		 */
+		public ZHServerInstanceBuilder repositoryInventoryTtlInMinutes(long minutes) {
+			this.repositoryInventoryTtlInMinutes = minutes;
+			return this;
+		}
+
+		/**
+		 * Number of threads used to scan repository resources (board, dependencies,
+		 * epics) in parallel.
+		 */
+		public ZHServerInstanceBuilder resourceScanThreads(int resourceScanThreads) {
+			this.resourceScanThreads = resourceScanThreads;
+			return this;
+		}
+
+		/**
+		 * The resources of repositories that change frequently are rescanned as often
+		 * as the minimum interval; the scan interval of a repository that has not
+		 * changed doubles after each scan, up to the maximum interval.
+		 */
+		public ZHServerInstanceBuilder minRepositoryScanIntervalInSeconds(long seconds) {
+			this.minRepositoryScanIntervalInSeconds = seconds;
+			return this;
+		}
+
+		/** See minRepositoryScanIntervalInSeconds(...) */
+		public ZHServerInstanceBuilder maxRepositoryScanIntervalInSeconds(long seconds) {
+			this.maxRepositoryScanIntervalInSeconds = seconds;
+			return this;
+		}
+
+		/**
+		 * Between full scans, only issues that were updated on GitHub since the
+		 * previous scan are listed; a complete listing of all the issues of a
+		 * repository is performed at this interval.
+		 */
+		public ZHServerInstanceBuilder fullIssueListingIntervalInHours(long hours) {
+			this.fullIssueListingIntervalInHours = hours;
+			return this;
+		}
+
+		/**
+		 * Between reconciliations, only the epics that may have changed (based on
+		 * changes to the epics list, the board, and issue data) are requested; every
+		 * epic of a repository is requested at this interval.
+		 */
+		public ZHServerInstanceBuilder fullEpicReconciliationIntervalInHours(long hours) {
+			this.fullEpicReconciliationIntervalInHours = hours;
+			return this;
+		}
+
+		/**
+		 * If enabled, a client request for a resource that the mirror does not have
+		 * causes it to be fetched with priority (see ZHReadThrough).
+		 */
+		public ZHServerInstanceBuilder readThrough(boolean readThrough) {
+			this.readThrough = readThrough;
+			return this;
+		}
+
+		/**
+		 * How long a read-through request waits for the missing resource to be
+		 * fetched, before returning 404 (default: 0, the request does not wait).
+		 */
+		public ZHServerInstanceBuilder readThroughWaitInMsecs(long msecs) {
+			this.readThroughWaitInMsecs = msecs;
+			return this;
+		}
+
+		/**
+		 * The half-life of the read frequency of each resource: the more frequently
+		 * the resources of a repository are read by clients, the more often it is
+		 * refreshed (see ZHAccessHeat).
+		 */
+		public ZHServerInstanceBuilder accessHeatHalfLifeInMinutes(long minutes) {
+			this.accessHeatHalfLifeInMinutes = minutes;
+			return this;
+		}
+
 		public ZHServerInstance build() {
-			return new ZHServerInstance(ghUsername, ghPassword, ghServerName, zenhubServerName, zenhubApiKey, orgNames, userRepos,
-					individualRepos, dbDir, filter);
+			return new ZHServerInstance(this);
 		}
 
 	}
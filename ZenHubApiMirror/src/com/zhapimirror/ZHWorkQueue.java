@@ -21,12 +21,10 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
-import org.kohsuke.github.GHIssue;
-import org.kohsuke.github.GHRepository;
 import org.kohsuke.github.GitHub;
 
-import com.zhapi.ZenHubClient;
 
 /**
  * Maintains a list of all of the repositories/issues that are currently waiting
@@ -35,6 +33,10 @@
  * The ZHWorkerThread thread may call an instance of this class, in order to:
  * add additional work, query if work is available, and poll for new work by
  * type.
+ * 
+ * Priority work (repositories/issues requested by a client that the mirror
+ * does not yet have, see ZHReadThrough) is kept in separate lists, which
+ * workers poll before the regular lists.
  */
 public class ZHWorkQueue {
 
@@ -43,44 +45,62 @@ public class ZHWorkQueue {
 	private final List<ZHRepositoryContainer> repositories_synch_lock = new ArrayList<>();
 	private final List<ZHIssueContainer> issues_synch_lock = new ArrayList<>();
 
+	private final List<ZHRepositoryContainer> priorityRepositories_synch_lock = new ArrayList<>();
+	private final List<ZHIssueContainer> priorityIssues_synch_lock = new ArrayList<>();
+
 	/** Whether a resource is in the work queue; the map value is not used. */
-	private final Map<String /* unique key for each resource */, Boolean> resourcesMap = new HashMap<>();
+	private final Map<String /* unique key for each resource */, Boolean> resourcesMap_synch_lock = new HashMap<>();
 
 	private final GitHub githubClient;
 
-	private final ZenHubClient zenhubClient;
+	private final ZHZenHubClientPool zenhubClients;
 
 	private final ZHDatabase database;
 
 	private final ZHFilter filter;
 
+	private final ZHIssueDiscovery issueDiscovery;
+
+	private final ZHResourceFetchScheduler resourceFetchScheduler;
+
+	private final ZHEpicSync epicSync;
+
+	private final ZHAccessHeat accessHeat;
+
 	private static final ZHLog log = ZHLog.getInstance();
 
-	ZHWorkQueue(ZenHubClient zenhubClient, GitHub githubClient, ZHDatabase database, ZHFilter filter) {
+	ZHWorkQueue(ZHZenHubClientPool zenhubClients, GitHub githubClient, ZHIssueDiscovery issueDiscovery,
+			ZHResourceFetchScheduler resourceFetchScheduler, ZHEpicSync epicSync, ZHAccessHeat accessHeat,
+			ZHDatabase database, ZHFilter filter) {
 		this.githubClient = githubClient;
-		this.zenhubClient = zenhubClient;
+		this.zenhubClients = zenhubClients;
+		this.issueDiscovery = issueDiscovery;
+		this.resourceFetchScheduler = resourceFetchScheduler;
+		this.epicSync = epicSync;
+		this.accessHeat = accessHeat;
 		this.database = database;
 		this.filter = filter;
 	}
 
-	void addRepository(GHOwner owner, GHRepository repo, String repoName, long repoId) {
+	void addRepository(GHOwner owner, String repoName, long repoId) {
 
 		if (filter != null && !filter.processRepo(owner, repoName)) {
 			return;
 		}
 
-		ZHRepositoryContainer r = new ZHRepositoryContainer(owner, repo, repoName, repoId);
+		ZHRepositoryContainer r = new ZHRepositoryContainer(owner, repoName, repoId);
 
 		String key = r.getKey();
 
-		// Prevent duplicates in the work queue
-		if (resourcesMap.containsKey(key)) {
-			return;
-		}
-		log.logDebug("Adding repository: " + repoName);
-
 		synchronized (lock) {
-			resourcesMap.put(key, true);
+			// Prevent duplicates in the work queue
+			if (resourcesMap_synch_lock.containsKey(key)) {
+				return;
+			}
+
+			log.logDebug("Adding repository: " + repoName);
+
+			resourcesMap_synch_lock.put(key, true);
 			repositories_synch_lock.add(r);
 			lock.notify();
 		}
@@ -90,39 +110,40 @@ void addRepositoryFromRetry(ZHRepositoryContainer container) {
 
 		String key = container.getKey();
 
-		// Prevent duplicates in the work queue
-		if (resourcesMap.containsKey(key)) {
-			return;
-		}
+		synchronized (lock) {
+			// Prevent duplicates in the work queue
+			if (resourcesMap_synch_lock.containsKey(key)) {
+				return;
+			}
 
-		log.logDebug("Adding repository (from retry): " + container.getRepoName());
+			log.logDebug("Adding repository (from retry): " + container.getRepoName());
 
-		synchronized (lock) {
-			resourcesMap.put(key, true);
+			resourcesMap_synch_lock.put(key, true);
 			repositories_synch_lock.add(container);
 			lock.notify();
 		}
 	}
 
-	void addIssue(GHOwner owner, GHRepository repo, GHIssue issue) {
+	void addIssue(GHOwner owner, String repoName, long repoId, int issueNumber) {
 
-		if (filter != null && !filter.processIssue(owner, repo.getName(), issue.getNumber())) {
+		if (filter != null && !filter.processIssue(owner, repoName, issueNumber)) {
 			return;
 		}
 
-		ZHIssueContainer c = new ZHIssueContainer(owner, repo, issue);
+		ZHIssueContainer c = new ZHIssueContainer(owner, repoName, repoId, issueNumber);
 
 		String key = c.getKey();
-		// Prevent duplicates in the work queue
-		if (resourcesMap.containsKey(key)) {
-			return;
-		}
-
-		log.logDebug("Adding issue: " + repo.getName() + " " + issue.getNumber());
 
 		synchronized (lock) {
+			// Prevent duplicates in the work queue
+			if (resourcesMap_synch_lock.containsKey(key)) {
+				return;
+			}
+
+			log.logDebug("Adding issue: " + repoName + " " + issueNumber);
+
 			issues_synch_lock.add(c);
-			resourcesMap.put(key, true);
+			resourcesMap_synch_lock.put(key, true);
 			lock.notify();
 		}
 
@@ -132,15 +153,64 @@ void addIssueFromRetry(ZHIssueContainer issue) {
 
 		String key = issue.getKey();
 
-		// Prevent duplicates in the work queue
-		if (resourcesMap.containsKey(key)) {
+		synchronized (lock) {
+			// Prevent duplicates in the work queue
+			if (resourcesMap_synch_lock.containsKey(key)) {
+				return;
+			}
+
+			log.logDebug("Adding issue (from retry): " + issue.getRepoName() + " " + issue.getIssueNumber());
+
+			issues_synch_lock.add(issue);
+			resourcesMap_synch_lock.put(key, true);
+			lock.notify();
+		}
+	}
+
+	/**
+	 * Add a repository to the priority list; if the repository is already in the
+	 * regular list, it is moved to the priority list.
+	 */
+	void addPriorityRepository(ZHRepositoryContainer r) {
+
+		if (filter != null && !filter.processRepo(r.getOwner(), r.getRepoName())) {
 			return;
 		}
-		log.logDebug("Adding issue (from retry): " + issue.getRepo().getName() + " " + issue.getIssue().getNumber());
 
 		synchronized (lock) {
-			issues_synch_lock.add(issue);
-			resourcesMap.put(key, true);
+			if (priorityRepositories_synch_lock.contains(r)) {
+				return;
+			}
+
+			log.logDebug("Adding priority repository: " + r.getRepoName());
+
+			repositories_synch_lock.remove(r);
+			priorityRepositories_synch_lock.add(r);
+			resourcesMap_synch_lock.put(r.getKey(), true);
+			lock.notify();
+		}
+	}
+
+	/**
+	 * Add an issue to the priority list; if the issue is already in the regular
+	 * list, it is moved to the priority list.
+	 */
+	void addPriorityIssue(ZHIssueContainer c) {
+
+		if (filter != null && !filter.processIssue(c.getOwner(), c.getRepoName(), c.getIssueNumber())) {
+			return;
+		}
+
+		synchronized (lock) {
+			if (priorityIssues_synch_lock.contains(c)) {
+				return;
+			}
+
+			log.logDebug("Adding priority issue: " + c.getRepoName() + " " + c.getIssueNumber());
+
+			issues_synch_lock.remove(c);
+			priorityIssues_synch_lock.add(c);
+			resourcesMap_synch_lock.put(c.getKey(), true);
 			lock.notify();
 		}
 	}
@@ -161,12 +231,39 @@ void waitForAvailableWork() {
 		}
 	}
 
+	/**
+	 * Wait up to the given number of milliseconds for work to become available;
+	 * returns true if work is available, or false on timeout. This allows worker
+	 * threads to periodically check whether they have been asked to stop.
+	 */
+	boolean waitForAvailableWork(long timeoutInMsecs) {
+		long expireTimeInNanos = System.nanoTime() + TimeUnit.NANOSECONDS.convert(timeoutInMsecs, TimeUnit.MILLISECONDS);
+
+		synchronized (lock) {
+			while (true) {
+				if (availableWork() > 0) {
+					return true;
+				}
+				if (System.nanoTime() >= expireTimeInNanos) {
+					return false;
+				}
+				try {
+					lock.wait(20);
+				} catch (InterruptedException e) {
+					ZHUtil.throwAsUnchecked(e);
+				}
+			}
+		}
+	}
+
 	long availableWork() {
 		long workAvailable = 0;
 
 		synchronized (lock) {
 			workAvailable += repositories_synch_lock.size();
 			workAvailable += issues_synch_lock.size();
+			workAvailable += priorityRepositories_synch_lock.size();
+			workAvailable += priorityIssues_synch_lock.size();
 		}
 
 		return workAvailable;
@@ -174,28 +271,52 @@ long availableWork() {
 	}
 
 	Optional<ZHRepositoryContainer> pollRepository() {
-		synchronized (repositories_synch_lock) {
+		synchronized (lock) {
 			if (repositories_synch_lock.isEmpty()) {
 				return Optional.empty();
 			}
 
 			ZHRepositoryContainer result = repositories_synch_lock.remove(0);
-			resourcesMap.remove(result.getKey());
+			resourcesMap_synch_lock.remove(result.getKey());
 			return Optional.of(result);
 
 		}
 	}
 
 	Optional<ZHIssueContainer> pollIssue() {
-		synchronized (issues_synch_lock) {
+		synchronized (lock) {
 			if (issues_synch_lock.isEmpty()) {
 				return Optional.empty();
 			}
 
 			ZHIssueContainer result = issues_synch_lock.remove(0);
-			resourcesMap.remove(result.getKey());
+			resourcesMap_synch_lock.remove(result.getKey());
+			return Optional.of(result);
+
+		}
+	}
+
+	Optional<ZHRepositoryContainer> pollPriorityRepository() {
+		synchronized (lock) {
+			if (priorityRepositories_synch_lock.isEmpty()) {
+				return Optional.empty();
+			}
+
+			ZHRepositoryContainer result = priorityRepositories_synch_lock.remove(0);
+			resourcesMap_synch_lock.remove(result.getKey());
 			return Optional.of(result);
+		}
+	}
+
+	Optional<ZHIssueContainer> pollPriorityIssue() {
+		synchronized (lock) {
+			if (priorityIssues_synch_lock.isEmpty()) {
+				return Optional.empty();
+			}
 
+			ZHIssueContainer result = priorityIssues_synch_lock.remove(0);
+			resourcesMap_synch_lock.remove(result.getKey());
+			return Optional.of(result);
 		}
 	}
 
@@ -203,37 +324,63 @@ GitHub getGithubClient() {
 		return githubClient;
 	}
 
-	ZenHubClient getZenhubClient() {
-		return zenhubClient;
+	ZHZenHubClientPool getZenhubClients() {
+		return zenhubClients;
 	}
 
 	ZHFilter getFilter() {
 		return filter;
 	}
 
+	ZHIssueDiscovery getIssueDiscovery() {
+		return issueDiscovery;
+	}
+
+	ZHResourceFetchScheduler getResourceFetchScheduler() {
+		return resourceFetchScheduler;
+	}
+
+	ZHEpicSync getEpicSync() {
+		return epicSync;
+	}
+
+	ZHAccessHeat getAccessHeat() {
+		return accessHeat;
+	}
+
 	/**
 	 * A piece of a work in the work queue, specifically an issue, plus additional
 	 * required fields.
 	 */
 	static class ZHIssueContainer {
 		private final GHOwner owner;
-		private final GHRepository repo;
-		private final GHIssue issue;
+		private final String repoName;
+		private final long repoId;
+		private final int issueNumber;
 		private final String hashKey;
 
-		public ZHIssueContainer(GHOwner owner, GHRepository repo, GHIssue issue) {
-			this.repo = repo;
-			this.issue = issue;
+		public ZHIssueContainer(GHOwner owner, String repoName, long repoId, int issueNumber) {
+			this.repoName = repoName;
+			this.repoId = repoId;
+			this.issueNumber = issueNumber;
 			this.owner = owner;
 			this.hashKey = calculateKey();
 		}
 
-		public GHRepository getRepo() {
-			return repo;
+		public GHOwner getOwner() {
+			return owner;
+		}
+
+		public String getRepoName() {
+			return repoName;
+		}
+
+		public long getRepoId() {
+			return repoId;
 		}
 
-		public GHIssue getIssue() {
-			return issue;
+		public int getIssueNumber() {
+			return issueNumber;
 		}
 
 		public String getKey() {
@@ -244,9 +391,9 @@ private String calculateKey() {
 			StringBuilder sb = new StringBuilder();
 			sb.append(owner.toString());
 			sb.append("-");
-			sb.append(repo.getName());
+			sb.append(repoName);
 			sb.append("-");
-			sb.append(issue);
+			sb.append(issueNumber);
 
 			return sb.toString();
 		}
@@ -258,7 +405,7 @@ public boolean equals(Object param) {
 			}
 			ZHIssueContainer other = (ZHIssueContainer) param;
 
-			return other.getIssue().getNumber() == this.getIssue().getNumber() && repo.getName().equals(other.repo.getName())
+			return other.getIssueNumber() == this.getIssueNumber() && repoName.equals(other.repoName)
 					&& other.owner.equals(this.owner);
 		}
 
@@ -271,16 +418,14 @@ public boolean equals(Object param) {
 	static class ZHRepositoryContainer {
 
 		private final GHOwner owner;
-		private final GHRepository repo;
 		private final String repoName;
 		private final long repoId;
 
 		private final String hashKey;
 
-		public ZHRepositoryContainer(GHOwner owner, GHRepository repo, String repoName, long repoId) {
+		public ZHRepositoryContainer(GHOwner owner, String repoName, long repoId) {
 			this.owner = owner;
 			this.repoName = repoName;
-			this.repo = repo;
 			this.repoId = repoId;
 			this.hashKey = calculateKey();
 		}
@@ -297,10 +442,6 @@ public long getRepoId() {
 			return repoId;
 		}
 
-		public GHRepository getRepo() {
-			return repo;
-		}
-
 		public String getKey() {
 			return hashKey;
 		}
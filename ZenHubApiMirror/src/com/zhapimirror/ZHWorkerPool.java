@@ -0,0 +1,463 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapimirror;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Maintains the set of ZHWorkerThreads that are processing work from the work
+ * queue, for a single server instance.
+ * 
+ * The number of worker threads starts at the configured size. If auto-scaling
+ * is enabled, a controller thread will periodically grow or shrink the pool
+ * (between 1 and the configured maximum) based on the observed API latency,
+ * the remaining ZenHub API rate limit headroom, and on whether the rate limit
+ * was hit during the last interval.
+ * 
+ * Alternatively, in the TASK_PER_FETCH execution mode, a single dispatcher
+ * thread polls the work queue and runs each repository/issue fetch as a
+ * separate task. On a JVM that supports virtual threads, each task runs on its
+ * own virtual thread; otherwise a cached pool of platform threads is used. The
+ * number of in-flight fetches is bounded by maxConcurrentFetches, but in
+ * practice is limited by the shared ZenHub rate limiter.
+ * 
+ * Call shutdown() to stop all the threads of the pool.
+ */
+public class ZHWorkerPool {
+
+	/** How work items from the work queue are executed. */
+	public static enum ExecutionMode {
+		/** A fixed (or auto-scaled) number of ZHWorkerThreads. */
+		THREADS,
+		/** One task (on a virtual thread, when available) per repository/issue fetch. */
+		TASK_PER_FETCH
+	}
+
+	private static final long CONTROLLER_INTERVAL_IN_MSECS = 60 * 1000;
+
+	/**
+	 * If less than this fraction of the ZenHub API request budget remains, the
+	 * pool is shrunk.
+	 */
+	private static final double MIN_HEADROOM = 0.10;
+
+	/**
+	 * If less than this fraction of the ZenHub API request budget remains, the
+	 * pool will not be grown.
+	 */
+	private static final double GROWTH_HEADROOM = 0.25;
+
+	private final Object lock = new Object();
+
+	private final List<ZHWorkerThread> threads_synch_lock = new ArrayList<>();
+
+	private int nextThreadId_synch_lock = 1;
+
+	private boolean shutdown_synch_lock = false;
+
+	private final ZHWorkQueue queue;
+
+	private final ZHZenHubClientPool zenhubClients;
+
+	private final int maxThreads;
+
+	private final ZHWorkerPoolControllerThread controllerThread;
+
+	private final ZHTaskDispatcherThread dispatcherThread;
+
+	/** Number of work items processed (successfully or not) by the pool */
+	private final AtomicLong itemsProcessed = new AtomicLong();
+
+	/** Total time spent processing the above work items */
+	private final AtomicLong itemsProcessedTimeInNanos = new AtomicLong();
+
+	/** Number of times a worker has hit the ZenHub API rate limit */
+	private final AtomicLong rateLimitHits = new AtomicLong();
+
+	private static final ZHLog log = ZHLog.getInstance();
+
+	ZHWorkerPool(ZHWorkQueue queue, ZHZenHubClientPool zenhubClients, int initialThreads, int maxThreads,
+			boolean autoScale, ExecutionMode mode, int maxConcurrentFetches) {
+		if (initialThreads < 1 || maxThreads < initialThreads) {
+			throw new IllegalArgumentException("Invalid worker pool size: " + initialThreads + " (max " + maxThreads + ")");
+		}
+
+		this.queue = queue;
+		this.zenhubClients = zenhubClients;
+		this.maxThreads = maxThreads;
+
+		if (mode == ExecutionMode.TASK_PER_FETCH) {
+			if (maxConcurrentFetches < 1) {
+				throw new IllegalArgumentException("Invalid maximum number of concurrent fetches: " + maxConcurrentFetches);
+			}
+
+			controllerThread = null;
+			dispatcherThread = new ZHTaskDispatcherThread(maxConcurrentFetches);
+			dispatcherThread.start();
+			return;
+		}
+
+		dispatcherThread = null;
+
+		setPoolSize(initialThreads);
+
+		if (autoScale && maxThreads > 1) {
+			controllerThread = new ZHWorkerPoolControllerThread();
+			controllerThread.start();
+		} else {
+			controllerThread = null;
+		}
+	}
+
+	/**
+	 * Start or stop worker threads until the pool contains the given number of
+	 * threads. Stopped threads will finish their current work item before exiting.
+	 */
+	void setPoolSize(int newSize) {
+		newSize = Math.max(1, Math.min(newSize, maxThreads));
+
+		synchronized (lock) {
+			if (shutdown_synch_lock || dispatcherThread != null) {
+				return;
+			}
+
+			while (threads_synch_lock.size() < newSize) {
+				ZHWorkerThread wt = new ZHWorkerThread(queue, nextThreadId_synch_lock++, this);
+				threads_synch_lock.add(wt);
+				wt.start();
+			}
+
+			while (threads_synch_lock.size() > newSize) {
+				ZHWorkerThread wt = threads_synch_lock.remove(threads_synch_lock.size() - 1);
+				wt.stopWorker();
+			}
+		}
+	}
+
+	int getPoolSize() {
+		synchronized (lock) {
+			return threads_synch_lock.size();
+		}
+	}
+
+	/** Stop all worker threads (and the controller), waiting briefly for them to exit. */
+	void shutdown() {
+		List<Thread> toJoin = new ArrayList<>();
+
+		synchronized (lock) {
+			if (shutdown_synch_lock) {
+				return;
+			}
+			shutdown_synch_lock = true;
+
+			if (controllerThread != null) {
+				controllerThread.interrupt();
+				toJoin.add(controllerThread);
+			}
+
+			if (dispatcherThread != null) {
+				dispatcherThread.shutdown();
+				toJoin.add(dispatcherThread);
+			}
+
+			threads_synch_lock.forEach(e -> {
+				e.stopWorker();
+				toJoin.add(e);
+			});
+			threads_synch_lock.clear();
+		}
+
+		for (Thread t : toJoin) {
+			try {
+				t.join(10 * 1000);
+			} catch (InterruptedException e) {
+				ZHUtil.throwAsUnchecked(e);
+			}
+		}
+
+		log.logInfo("Worker pool has shut down.");
+	}
+
+	/** Called by a worker thread after it has processed a work item. */
+	void reportWorkItemProcessed(long elapsedTimeInNanos) {
+		itemsProcessed.incrementAndGet();
+		itemsProcessedTimeInNanos.addAndGet(elapsedTimeInNanos);
+	}
+
+	/** Called by a worker thread when a ZenHub API request was rate limited. */
+	void reportRateLimitHit() {
+		rateLimitHits.incrementAndGet();
+	}
+
+	/**
+	 * Return the fraction (0.0 to 1.0) of the ZenHub API request budget that is
+	 * still available: the lower of the unclaimed rate limiter slots for the next
+	 * minute, and the budget left unused by the requests issued during the last
+	 * interval. Returns 1.0 if requests are not rate limited.
+	 */
+	private double getRateLimitHeadroom(long requestsInInterval) {
+		int permits = zenhubClients.getAvailablePermits();
+		if (permits == Integer.MAX_VALUE) {
+			return 1.0;
+		}
+
+		int budgetPerMinute = zenhubClients.getRequestsPerMinuteBudget();
+		if (budgetPerMinute <= 0) {
+			// All keys are cooling down
+			return 0.0;
+		}
+
+		double intervalInMinutes = CONTROLLER_INTERVAL_IN_MSECS / (60d * 1000d);
+
+		double unclaimed = Math.min(1.0, (double) permits / budgetPerMinute);
+		double unused = 1.0 - Math.min(1.0, requestsInInterval / (budgetPerMinute * intervalInMinutes));
+
+		return Math.min(unclaimed, unused);
+	}
+
+	/**
+	 * When auto-scaling is enabled, this thread will resize the pool every
+	 * interval:
+	 * 
+	 * - If the rate limit was hit during the interval, or the remaining request
+	 * budget is nearly exhausted, then more threads will not help us: shrink the
+	 * pool.
+	 * 
+	 * - If there is a backlog of work, there is headroom left in the request
+	 * budget, and adding the previous thread did not cause the per-item latency to
+	 * substantially increase, then grow the pool.
+	 * 
+	 * - If there is no work available, shrink the pool.
+	 */
+	private class ZHWorkerPoolControllerThread extends Thread {
+
+		public ZHWorkerPoolControllerThread() {
+			setName(ZHWorkerPoolControllerThread.class.getName());
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+
+			long lastItemsProcessed = 0;
+			long lastItemsTime = 0;
+			long lastRateLimitHits = 0;
+			long lastRequestsIssued = zenhubClients.getRequestsIssued();
+
+			// Average time per item from the previous interval, or -1 if unknown
+			long lastAverageLatencyInNanos = -1;
+
+			while (!isInterrupted()) {
+
+				try {
+					Thread.sleep(CONTROLLER_INTERVAL_IN_MSECS);
+				} catch (InterruptedException e) {
+					return;
+				}
+
+				try {
+					long items = itemsProcessed.get() - lastItemsProcessed;
+					long itemsTime = itemsProcessedTimeInNanos.get() - lastItemsTime;
+					long hits = rateLimitHits.get() - lastRateLimitHits;
+					long requests = zenhubClients.getRequestsIssued() - lastRequestsIssued;
+
+					lastItemsProcessed += items;
+					lastItemsTime += itemsTime;
+					lastRateLimitHits += hits;
+					lastRequestsIssued += requests;
+
+					double headroom = getRateLimitHeadroom(requests);
+
+					long averageLatencyInNanos = items > 0 ? itemsTime / items : -1;
+
+					int currSize = getPoolSize();
+					int newSize = currSize;
+
+					if (hits > 0 || headroom < MIN_HEADROOM) {
+						newSize = currSize - 1;
+
+					} else if (queue.availableWork() > currSize) {
+
+						boolean latencyIncreased = averageLatencyInNanos != -1 && lastAverageLatencyInNanos != -1
+								&& averageLatencyInNanos > lastAverageLatencyInNanos * 2;
+
+						if (latencyIncreased) {
+							newSize = currSize - 1;
+						} else if (headroom >= GROWTH_HEADROOM) {
+							newSize = currSize + 1;
+						}
+
+					} else if (queue.availableWork() == 0) {
+						newSize = currSize - 1;
+					}
+
+					if (averageLatencyInNanos != -1) {
+						lastAverageLatencyInNanos = averageLatencyInNanos;
+					}
+
+					newSize = Math.max(1, Math.min(newSize, maxThreads));
+
+					if (newSize != currSize) {
+						log.logInfo("Resizing worker pool from " + currSize + " to " + newSize + " threads (rate limit hits: "
+								+ hits + ", rate limit headroom: " + Math.round(headroom * 100) + "%, avg latency: "
+								+ TimeUnit.MILLISECONDS.convert(Math.max(0, averageLatencyInNanos), TimeUnit.NANOSECONDS)
+								+ " msecs, available work: " + queue.availableWork() + ")");
+						setPoolSize(newSize);
+					}
+
+				} catch (Exception e) {
+					// Log and ignore
+					log.logError("Error occurred in " + this.getClass().getName(), e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * In the TASK_PER_FETCH execution mode, this thread polls the work queue, and
+	 * submits each repository/issue as a separate task to the task executor.
+	 */
+	private class ZHTaskDispatcherThread extends Thread {
+
+		private final ExecutorService executor;
+
+		/** Bounds the number of tasks that are submitted but not yet complete */
+		private final Semaphore inFlight;
+
+		private volatile boolean running = true;
+
+		public ZHTaskDispatcherThread(int maxConcurrentFetches) {
+			setName(ZHTaskDispatcherThread.class.getName());
+			setDaemon(true);
+
+			this.inFlight = new Semaphore(maxConcurrentFetches);
+			this.executor = newTaskExecutor();
+		}
+
+		@Override
+		public void run() {
+
+			long nextTaskId = 1;
+
+			while (running) {
+				try {
+
+					if (!queue.waitForAvailableWork(1000)) {
+						continue;
+					}
+
+					inFlight.acquire();
+
+					String taskName = "Task #" + (nextTaskId++);
+
+					ZHWorkQueue.ZHIssueContainer priorityIssue = queue.pollPriorityIssue().orElse(null);
+					if (priorityIssue != null) {
+						submit(() -> ZHWorkerThread.processIssueWorkItem(priorityIssue, true, queue, ZHWorkerPool.this,
+								taskName));
+						continue;
+					}
+
+					ZHWorkQueue.ZHRepositoryContainer priorityRepo = queue.pollPriorityRepository().orElse(null);
+					if (priorityRepo != null) {
+						submit(() -> ZHWorkerThread.processRepositoryWorkItem(priorityRepo, true, queue, ZHWorkerPool.this,
+								taskName));
+						continue;
+					}
+
+					ZHWorkQueue.ZHRepositoryContainer repo = queue.pollRepository().orElse(null);
+					if (repo != null) {
+						submit(() -> ZHWorkerThread.processRepositoryWorkItem(repo, false, queue, ZHWorkerPool.this,
+								taskName));
+						continue;
+					}
+
+					ZHWorkQueue.ZHIssueContainer issue = queue.pollIssue().orElse(null);
+					if (issue != null) {
+						submit(() -> ZHWorkerThread.processIssueWorkItem(issue, false, queue, ZHWorkerPool.this, taskName));
+						continue;
+					}
+
+					// Another thread took the work before we could poll it.
+					inFlight.release();
+
+				} catch (Exception e) {
+					if (running) {
+						log.logError("Error occurred in " + this.getClass().getName(), e);
+					}
+				}
+			}
+
+			executor.shutdownNow();
+		}
+
+		private void submit(Runnable r) {
+			try {
+				executor.execute(() -> {
+					try {
+						r.run();
+					} finally {
+						inFlight.release();
+					}
+				});
+			} catch (RuntimeException e) {
+				inFlight.release();
+				throw e;
+			}
+		}
+
+		public void shutdown() {
+			running = false;
+			this.interrupt();
+		}
+	}
+
+	/**
+	 * Return an executor that runs each task on a new virtual thread, if supported
+	 * by the JVM (Java 21+); otherwise, return an executor backed by a cached pool
+	 * of daemon platform threads. Reflection is used so that this class may still
+	 * be compiled and run on older JVMs.
+	 */
+	private static ExecutorService newTaskExecutor() {
+		try {
+			Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			log.logInfo("Worker tasks will run on virtual threads.");
+			return (ExecutorService) m.invoke(null);
+		} catch (NoSuchMethodException e) {
+			/* Virtual threads are not supported by this JVM, so fall through. */
+		} catch (ReflectiveOperationException e) {
+			log.logError("Unable to create virtual thread executor, using platform threads.", e);
+		}
+
+		log.logInfo("Worker tasks will run on platform threads.");
+
+		AtomicLong threadNumber = new AtomicLong(1);
+
+		return Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r);
+			t.setName(ZHWorkerPool.class.getName() + "-task-" + threadNumber.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+}
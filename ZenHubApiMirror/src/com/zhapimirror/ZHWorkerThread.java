@@ -17,34 +17,22 @@
 package com.zhapimirror;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
-
-import org.kohsuke.github.GHIssue;
-import org.kohsuke.github.GHIssueState;
-import org.kohsuke.github.GHOrganization;
-import org.kohsuke.github.GHRepository;
-import org.kohsuke.github.GHUser;
-import org.kohsuke.github.GitHub;
-
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Set;
+import java.util.TreeSet;
+
 import com.zhapi.ApiResponse;
-import com.zhapi.ZenHubApiException;
-import com.zhapi.ZenHubClient;
 import com.zhapi.json.IssueEventJson;
-import com.zhapi.json.responses.DependenciesForARepoResponseJson;
-import com.zhapi.json.responses.GetBoardForRepositoryResponseJson;
 import com.zhapi.json.responses.GetEpicResponseJson;
 import com.zhapi.json.responses.GetEpicsResponseJson;
 import com.zhapi.json.responses.GetIssueDataResponseJson;
-import com.zhapi.services.BoardService;
-import com.zhapi.services.DependenciesService;
 import com.zhapi.services.EpicsService;
 import com.zhapi.services.IssuesService;
 import com.zhapi.shared.json.RepositoryChangeEventJson;
 import com.zhapimirror.GHOwner.Type;
+import com.zhapimirror.ZHEpicSync.ZHEpicSyncResult;
+import com.zhapimirror.ZHResourceFetchScheduler.FetchPolicy;
 import com.zhapimirror.ZHWorkQueue.ZHIssueContainer;
 import com.zhapimirror.ZHWorkQueue.ZHRepositoryContainer;
 
@@ -58,280 +46,322 @@
  */
 public class ZHWorkerThread extends Thread {
 
+	/** The maximum number of hot issues (see ZHAccessHeat) requested by a full refresh of a repository */
+	private static final int MAX_HOT_ISSUES_PER_REFRESH = 20;
+
 	private final ZHWorkQueue workQueue;
 
-	private boolean acceptingNewWork = true;
+	private final ZHWorkerPool pool;
+
+	private volatile boolean acceptingNewWork = true;
 
 	private final int threadId;
 
 	private static final ZHLog log = ZHLog.getInstance();
 
-	private static final boolean WORKER_THREAD_DEBUG = false;
-
-	public ZHWorkerThread(ZHWorkQueue workQueue, int threadId) {
-		setName(ZHWorkerThread.class.getName());
+	public ZHWorkerThread(ZHWorkQueue workQueue, int threadId, ZHWorkerPool pool) {
+		setName(ZHWorkerThread.class.getName() + "-" + threadId);
 
 		this.threadId = threadId;
 		this.workQueue = workQueue;
+		this.pool = pool;
+
+	}
 
+	/**
+	 * Ask the thread to stop; the thread will finish processing its current work
+	 * item (if any), and then exit.
+	 */
+	void stopWorker() {
+		acceptingNewWork = false;
+		this.interrupt();
 	}
 
 	@Override
 	public void run() {
 
-		final ZHDatabase db = workQueue.getDb();
+		String workerName = "Thread #" + threadId;
 
 		while (acceptingNewWork) {
 			try {
 
-				workQueue.waitForAvailableWork();
+				if (!workQueue.waitForAvailableWork(1000)) {
+					continue;
+				}
+
+				ZHIssueContainer priorityIssue = workQueue.pollPriorityIssue().orElse(null);
+				if (priorityIssue != null) {
+					processIssueWorkItem(priorityIssue, true, workQueue, pool, workerName);
+					continue;
+				}
+
+				ZHRepositoryContainer priorityRepo = workQueue.pollPriorityRepository().orElse(null);
+				if (priorityRepo != null) {
+					processRepositoryWorkItem(priorityRepo, true, workQueue, pool, workerName);
+					continue;
+				}
 
 				ZHRepositoryContainer repo = workQueue.pollRepository().orElse(null);
 				if (repo != null) {
-					try {
-						processRepository(repo, db);
-					} catch (Exception e) {
-						if (e instanceof ZenHubApiException && e.getMessage().contains("403 for URL")) {
-							log.logError("ZH Rate Limit Hit: " + e.getClass().getName() + ": " + e.getMessage());
-						} else {
-							e.printStackTrace();
-						}
-						log.logDebug("Thread #" + threadId + " sleeping after rate limit error. Current work in queue: "
-								+ workQueue.availableWork());
-						ZHUtil.sleep(60 * 1000);
-
-						workQueue.addRepositoryFromRetry(repo);
-					}
+					processRepositoryWorkItem(repo, false, workQueue, pool, workerName);
 					continue;
 				}
 
 				ZHIssueContainer issue = workQueue.pollIssue().orElse(null);
 				if (issue != null) {
-					try {
-						processIssue(issue, db);
-					} catch (Exception e) {
-						if (e instanceof ZenHubApiException && e.getMessage().contains("403 for URL")) {
-							log.logError("ZH Rate Limit Hit: " + e.getClass().getName() + ": " + e.getMessage());
-						} else {
-							e.printStackTrace();
-						}
-						log.logDebug("Thread #" + threadId + " sleeping after rate limit error. Current work in queue: "
-								+ workQueue.availableWork());
-						ZHUtil.sleep(60 * 1000);
-
-						workQueue.addIssueFromRetry(issue);
-					}
+					processIssueWorkItem(issue, false, workQueue, pool, workerName);
 					continue;
 				}
 
 			} catch (Exception e) {
-				e.printStackTrace();
+				if (acceptingNewWork) {
+					e.printStackTrace();
+				}
 			}
 		}
+
+		log.logDebug(workerName + " has stopped.");
 	}
 
-	private void processIssue(ZHIssueContainer issue, ZHDatabase db) {
-		ZenHubClient zh = workQueue.getZenhubClient();
+	/**
+	 * Process a repository that was polled from the work queue; on failure, wait
+	 * and then return the repository to the work queue. This is called both by
+	 * worker threads, and by the task-per-fetch execution mode of ZHWorkerPool.
+	 * 
+	 * Priority work that fails for a reason other than the rate limit is not
+	 * retried: it was requested by a client, and may not exist.
+	 */
+	static void processRepositoryWorkItem(ZHRepositoryContainer repo, boolean priority, ZHWorkQueue workQueue,
+			ZHWorkerPool pool, String workerName) {
+		long startTimeInNanos = System.nanoTime();
+		try {
+			// Priority work was requested by a client that wants a fresh copy, so
+			// resources are only skipped if they were fetched moments ago.
+			processRepository(repo, priority ? FetchPolicy.FAST_SCAN : FetchPolicy.FULL_SCAN, workQueue);
+		} catch (Exception e) {
+			if (priority && !ZHZenHubClientPool.isRateLimitException(e)) {
+				log.logError("Unable to process priority repository " + repo.getRepoName() + ": " + e.getMessage());
+				pool.reportWorkItemProcessed(System.nanoTime() - startTimeInNanos);
+				return;
+			}
+
+			handleProcessingException(e, workQueue, pool, workerName);
+
+			workQueue.addRepositoryFromRetry(repo);
+		}
+		pool.reportWorkItemProcessed(System.nanoTime() - startTimeInNanos);
+	}
+
+	/** Same as processRepositoryWorkItem(...), but for issues. */
+	static void processIssueWorkItem(ZHIssueContainer issue, boolean priority, ZHWorkQueue workQueue, ZHWorkerPool pool,
+			String workerName) {
+		long startTimeInNanos = System.nanoTime();
+		try {
+			processIssue(issue, workQueue);
+		} catch (Exception e) {
+			if (priority && !ZHZenHubClientPool.isRateLimitException(e)) {
+				log.logError("Unable to process priority issue " + issue.getRepoName() + "/" + issue.getIssueNumber() + ": "
+						+ e.getMessage());
+				pool.reportWorkItemProcessed(System.nanoTime() - startTimeInNanos);
+				return;
+			}
+
+			handleProcessingException(e, workQueue, pool, workerName);
+
+			workQueue.addIssueFromRetry(issue);
+		}
+		pool.reportWorkItemProcessed(System.nanoTime() - startTimeInNanos);
+	}
+
+	private static void handleProcessingException(Exception e, ZHWorkQueue workQueue, ZHWorkerPool pool,
+			String workerName) {
+		if (ZHZenHubClientPool.isRateLimitException(e)) {
+			log.logError("ZH Rate Limit Hit: " + e.getClass().getName() + ": " + e.getMessage());
+			pool.reportRateLimitHit();
+		} else {
+			e.printStackTrace();
+		}
 
-		long repoId = issue.getRepo().getId();
-		int issueNumber = issue.getIssue().getNumber();
+		log.logDebug(workerName + " sleeping after rate limit error. Current work in queue: " + workQueue.availableWork());
+		try {
+			Thread.sleep(60 * 1000);
+		} catch (InterruptedException ie) {
+			/* ignore: the worker has been asked to stop */
+		}
+	}
 
-		log.logDebug("Processing issue: " + issue.getRepo().getName() + "/" + issueNumber);
+	private static void processIssue(ZHIssueContainer issue, ZHWorkQueue workQueue) {
+		ZHDatabase db = workQueue.getDb();
+		ZHZenHubClientPool zhClients = workQueue.getZenhubClients();
+
+		long repoId = issue.getRepoId();
+		int issueNumber = issue.getIssueNumber();
+
+		log.logDebug("Processing issue: " + issue.getRepoName() + "/" + issueNumber);
 
 		// Issues
 		{
-			IssuesService issuesService = new IssuesService(zh);
-			ApiResponse<GetIssueDataResponseJson> r = issuesService.getIssueData(repoId, issueNumber);
+			ApiResponse<GetIssueDataResponseJson> r = zhClients
+					.request(zh -> new IssuesService(zh).getIssueData(repoId, issueNumber));
 			GetIssueDataResponseJson issueData = r.getResponse();
 			if (issueData != null) {
+				GetIssueDataResponseJson oldIssueData = db.getIssueData(repoId, issueNumber).orElse(null);
 				db.persist(issueData, repoId, issueNumber);
+
+				boolean changed = ZHChangeEvents.persistIfChanged(db, RepositoryChangeEventJson.RESOURCE_ISSUE_DATA, repoId,
+						issueNumber, oldIssueData, issueData);
+				ZHResourceMetadata.reportFetched(db, RepositoryChangeEventJson.RESOURCE_ISSUE_DATA, repoId, issueNumber,
+						changed);
+				if (changed) {
+					workQueue.getEpicSync().reportIssuesChanged(repoId, Collections.singletonList(issueNumber));
+				}
 			}
 
-			ApiResponse<List<IssueEventJson>> r2 = issuesService.getIssueEvents(repoId, issueNumber);
+			ApiResponse<List<IssueEventJson>> r2 = zhClients
+					.request(zh -> new IssuesService(zh).getIssueEvents(repoId, issueNumber));
 			List<IssueEventJson> list = r2.getResponse();
 			if (list != null) {
+				List<IssueEventJson> oldList = db.getIssueEvents(repoId, issueNumber).orElse(null);
 				db.persist(list, repoId, issueNumber);
+
+				// Events are only ever added (newest first), so compare only the count and
+				// the newest event, rather than the entire list.
+				boolean changed = oldList == null || oldList.size() != list.size()
+						|| (!list.isEmpty() && !ZHJsonDiff.isEqual(oldList.get(0), list.get(0)));
+				if (changed) {
+					int newEvents = list.size() - (oldList != null ? oldList.size() : 0);
+					ZHChangeEvents.persist(db, RepositoryChangeEventJson.RESOURCE_ISSUE_EVENTS, repoId, issueNumber,
+							oldList == null ? "created" : newEvents > 0 ? newEvents + " new event(s)" : "events changed");
+				}
+				ZHResourceMetadata.reportFetched(db, RepositoryChangeEventJson.RESOURCE_ISSUE_EVENTS, repoId, issueNumber,
+						changed);
 			}
 		}
 
 	}
 
-	private void processRepository(ZHRepositoryContainer repository, ZHDatabase db) throws IOException {
-		GitHub gh = workQueue.getGithubClient();
+	private static void processRepository(ZHRepositoryContainer repository, FetchPolicy policy, ZHWorkQueue workQueue)
+			throws IOException {
+		ZHDatabase db = workQueue.getDb();
 
 		GHOwner owner = repository.getOwner();
 
-		GHRepository repo;
-
 		String repoName = repository.getRepoName();
 
-		String debugStr;
-
-		if (owner.getType() == Type.ORG) {
-			GHOrganization org = gh.getOrganization(owner.getOrgNameOrNull());
-			repo = org.getRepository(repoName);
+		// The repository id is known from the repository inventory, so no GitHub
+		// request is required to look up the repository.
+		long repoId = repository.getRepoId();
 
-			debugStr = org.getLogin() + "/" + repoName;
+		String debugStr = owner.getName() + "/" + repoName;
 
-			log.logDebug("Processing repo from org: " + debugStr);
-		} else {
-			GHUser user = gh.getUser(owner.getUserNameOrNull());
-			repo = user.getRepository(repoName);
-
-			debugStr = user.getLogin() + "/" + repoName;
-			log.logDebug("Processing repo from user: " + debugStr);
-		}
+		log.logDebug("Processing repo from " + (owner.getType() == Type.ORG ? "org" : "user") + ": " + debugStr);
 
-		long repoId = repo.getId();
-		ZenHubClient zh = workQueue.getZenhubClient();
+		ZHZenHubClientPool zhClients = workQueue.getZenhubClients();
 
 		ZHFilter filter = workQueue.getFilter();
 
-		// Have any of the repository resources changed on ZH since we last saw them; we
-		// answer this question by comparing our local database copy with what we get
-		// back from ZH.
-		boolean isRepositoryChangedFromDb = false;
-
-		// First we process the repository level ZenHub resources
-
-		// Epics
-		{
-			EpicsService epicsService = new EpicsService(zh);
-			ApiResponse<GetEpicsResponseJson> r = epicsService.getEpics(repoId);
-			GetEpicsResponseJson epics = r.getResponse();
-
-			isRepositoryChangedFromDb = isRepositoryChangedFromDb(isRepositoryChangedFromDb, db.getEpics(repoId).orElse(null),
-					epics);
-
-			if (epics != null) {
-
-				log.logDebug("Received getEpics response for " + debugStr);
-				db.persist(epics, repoId);
+		// First we process the repository level ZenHub resources (epics list, board,
+		// dependencies); these are skipped if they were just fetched by the resource
+		// scan.
+		workQueue.getResourceFetchScheduler().refreshRepository(owner, repoName, repoId, policy, workQueue);
 
-				if (epics.getEpic_issues() != null) {
+		// Epics: only those epics that may have changed are requested (see ZHEpicSync)
+		GetEpicsResponseJson epics = db.getEpics(repoId).orElse(null);
+		if (epics != null && epics.getEpic_issues() != null) {
 
-					epics.getEpic_issues().stream().map(e -> e.getIssue_number()).forEach(issueNumber -> {
+			ZHEpicSyncResult epicsToRefresh = workQueue.getEpicSync().getEpicsToRefresh(repoId, epics);
 
-						if (!filter.processIssue(owner, repoName, issueNumber)) {
-							log.logDebug("Filtering out " + debugStr + "/" + issueNumber);
-							return;
-						}
+			log.logDebug("Requesting " + epicsToRefresh.getEpicNumbers().size() + " of " + epics.getEpic_issues().size()
+					+ " epics for " + debugStr + (epicsToRefresh.isFullReconciliation() ? " (full reconciliation)" : ""));
 
-						retryOnRateLimit(() -> {
-							ApiResponse<GetEpicResponseJson> r2 = epicsService.getEpic(repoId, issueNumber);
-							GetEpicResponseJson epic = r2.getResponse();
-							if (epic != null) {
-								log.logDebug("Get epic for " + debugStr + "/" + issueNumber + " persisted.");
-								db.persist(epic, repoId, issueNumber);
-							} else {
-								log.logDebug("Get epic for " + debugStr + "/" + issueNumber + " was null.");
-							}
-						}, "epic->issues->" + issueNumber);
+			// The epics are no longer pending; any that we fail to request are marked
+			// pending again.
+			Set<Integer> notRefreshed = new TreeSet<>(epicsToRefresh.getEpicNumbers());
 
-					});
-				} else {
-					log.logDebug("The received getEpics response had null issues, " + debugStr);
-				}
+			try {
+				epicsToRefresh.getEpicNumbers().forEach(issueNumber -> {
 
-			} else {
-				log.logDebug("Received getEpics response: null, for " + debugStr);
-			}
-		}
+					if (!filter.processIssue(owner, repoName, issueNumber)) {
+						log.logDebug("Filtering out " + debugStr + "/" + issueNumber);
+						notRefreshed.remove(issueNumber);
+						return;
+					}
 
-		// Board
-		{
-			BoardService boardService = new BoardService(zh);
-			ApiResponse<GetBoardForRepositoryResponseJson> r = boardService.getZenHubBoardForRepo(repoId);
-			GetBoardForRepositoryResponseJson board = r.getResponse();
+					retryOnRateLimit(() -> refreshEpic(debugStr, repoId, issueNumber, workQueue),
+							"epic->issues->" + issueNumber);
 
-			isRepositoryChangedFromDb = isRepositoryChangedFromDb(isRepositoryChangedFromDb,
-					db.getZenHubBoardForRepo(repoId).orElse(null), board);
+					notRefreshed.remove(issueNumber);
+				});
 
-			if (board != null) {
-				db.persist(board, repoId);
+			} finally {
+				workQueue.getEpicSync().reportEpicsNotRefreshed(repoId, notRefreshed);
 			}
 
-		}
-
-		// Dependencies
-		{
-			DependenciesService dependenciesService = new DependenciesService(zh);
-			ApiResponse<DependenciesForARepoResponseJson> r = dependenciesService.getDependenciesForARepository(repoId);
-			DependenciesForARepoResponseJson dependencies = r.getResponse();
-
-			isRepositoryChangedFromDb = isRepositoryChangedFromDb(isRepositoryChangedFromDb,
-					db.getDependenciesForARepository(repoId).orElse(null), dependencies);
-
-			if (dependencies != null) {
-				db.persist(dependencies, repoId);
-			}
+			workQueue.getEpicSync().reportEpicsRefreshed(repoId, epicsToRefresh);
 
+		} else {
+			log.logDebug("No epics list available for " + debugStr);
 		}
 
-		if (isRepositoryChangedFromDb) {
-			RepositoryChangeEventJson rcej = new RepositoryChangeEventJson();
-			rcej.setRepoId(repoId);
-			rcej.setTime(System.currentTimeMillis());
-			rcej.setUuid(UUID.randomUUID().toString());
+		// Issues whose pipeline/estimate/position changed on the board have already
+		// been queued by the board fetch.
+		boolean boardAvailable = db.getZenHubBoardForRepo(repoId).isPresent();
 
-			log.logInfo("Repository resources changed: " + repoId);
-			db.persistRepositoryChangeEvent(rcej);
-		}
-
-		// Now, process the issues that are in the repository.
-		for (GHIssue e : repo.listIssues(GHIssueState.ALL)) {
+		// Now, process the issues that are in the repository: only the issues that
+		// were updated on GitHub since the last scan are returned (with a periodic
+		// full listing). Pull requests are excluded.
+		List<Integer> issueNumbers = workQueue.getIssueDiscovery().discoverIssues(owner.getName(), repoName, repoId);
+		for (int issueNumber : issueNumbers) {
 
-			if (filter != null && !filter.processIssue(owner, repoName, e.getNumber())) {
+			if (filter != null && !filter.processIssue(owner, repoName, issueNumber)) {
 				continue;
 			}
 
-			// Skip pull requests
-			if (e.isPullRequest()) {
+			// Changes to the ZenHub data of an issue (pipeline, estimate, position) are
+			// reflected in the board, and those issues were queued above. So we only
+			// need to request issues that we have not seen before (or all issues, if
+			// the board was unavailable).
+			if (boardAvailable && db.getIssueData(repoId, issueNumber).isPresent()) {
 				continue;
 			}
 
-			workQueue.addIssue(owner, repo, e);
-		}
-
-	}
-
-	/**
-	 * Have any of the repository resources changed on ZH since we last saw them; we
-	 * answer this question by comparing our local database copy with what we get
-	 * back from ZH.
-	 */
-	@SuppressWarnings("unused")
-	public static boolean isRepositoryChangedFromDb(boolean isChanged, Object oldDbVersion, Object newVersion)
-			throws JsonProcessingException {
-
-		if (oldDbVersion instanceof Optional) {
-			throw new IllegalArgumentException();
-		}
-
-		if (isChanged) {
-			return isChanged;
+			workQueue.addIssue(owner, repoName, repoId, issueNumber);
 		}
 
-		if (oldDbVersion == null) {
-			oldDbVersion = "{}";
-		}
-		if (newVersion == null) {
-			newVersion = "{}";
+		// Issues are otherwise only requested when they change on the board, so also
+		// request the issues that clients read most frequently, unless they were
+		// just fetched.
+		for (int issueNumber : workQueue.getAccessHeat().getHotIssues(repoId, MAX_HOT_ISSUES_PER_REFRESH)) {
+			if (!ZHResourceMetadata.isFresh(db, RepositoryChangeEventJson.RESOURCE_ISSUE_DATA, repoId, issueNumber,
+					FetchPolicy.FULL_SCAN.getMaxAgeInMsecs())) {
+				workQueue.addIssue(owner, repoName, repoId, issueNumber);
+			}
 		}
 
-		boolean result = !JsonUtil.isEqualBySortedAlphanumerics(oldDbVersion, newVersion, new ObjectMapper());
-
-		if (WORKER_THREAD_DEBUG && result) {
+		ZHRollingFullScan.reportRepositoryRefreshed(db, repoId);
 
-			ObjectMapper om = new ObjectMapper();
-			System.out.println("---------------------------------------------------");
-			System.out.println(om.writeValueAsString(oldDbVersion));
-			System.out.println("------------");
-			System.out.println(om.writeValueAsString(newVersion));
+	}
 
+	/**
+	 * Request a single epic, and persist it. This is called by the full scan of a
+	 * repository, and by read-through (ZHReadThrough).
+	 */
+	static void refreshEpic(String debugStr, long repoId, int issueNumber, ZHWorkQueue workQueue) {
+		ZHDatabase db = workQueue.getDb();
+
+		ApiResponse<GetEpicResponseJson> r = workQueue.getZenhubClients()
+				.request(zh -> new EpicsService(zh).getEpic(repoId, issueNumber));
+		GetEpicResponseJson epic = r.getResponse();
+		if (epic != null) {
+			log.logDebug("Get epic for " + debugStr + "/" + issueNumber + " persisted.");
+			GetEpicResponseJson oldEpic = db.getEpic(repoId, issueNumber).orElse(null);
+			db.persist(epic, repoId, issueNumber);
+			boolean changed = ZHChangeEvents.persistIfChanged(db, RepositoryChangeEventJson.RESOURCE_EPIC, repoId,
+					issueNumber, oldEpic, epic);
+			ZHResourceMetadata.reportFetched(db, RepositoryChangeEventJson.RESOURCE_EPIC, repoId, issueNumber, changed);
+		} else {
+			log.logDebug("Get epic for " + debugStr + "/" + issueNumber + " was null.");
 		}
-
-		return result;
 	}
 
 	private static void retryOnRateLimit(Runnable r, String debugMsg) {
@@ -345,7 +375,7 @@ private static void retryOnRateLimit(Runnable r, String debugMsg) {
 				}
 				return;
 			} catch (Exception e) {
-				if (e instanceof ZenHubApiException && e.getMessage().contains("403 for URL")) {
+				if (ZHZenHubClientPool.isRateLimitException(e)) {
 					failedAtLeastOnce = true;
 					lastException = e;
 					// Ignore
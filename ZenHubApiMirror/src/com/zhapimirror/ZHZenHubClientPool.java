@@ -0,0 +1,223 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapimirror;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.zhapi.ZenHubApiException;
+import com.zhapi.ZenHubClient;
+
+/**
+ * Spreads requests to the ZenHub API across one ZenHubClient per configured API
+ * key, with each key having its own rate limit budget.
+ * 
+ * When a request is rate limited (HTTP 403) on one key, that key is set aside
+ * for a cool-down period, and the request is retried on the next available key.
+ * If all keys are cooling down, the rate limit exception is thrown to the
+ * caller (which will then wait and retry, as before).
+ * 
+ * All requests to the ZenHub API should be issued via request(...).
+ * 
+ * This class is thread safe.
+ */
+public class ZHZenHubClientPool {
+
+	private static final long KEY_COOL_DOWN_IN_NANOS = TimeUnit.NANOSECONDS.convert(60, TimeUnit.SECONDS);
+
+	private static final long METRICS_LOG_INTERVAL_IN_NANOS = TimeUnit.NANOSECONDS.convert(15, TimeUnit.MINUTES);
+
+	private final List<ZHZenHubKeyEntry> entries;
+
+	private final AtomicInteger nextEntry = new AtomicInteger();
+
+	private final AtomicLong nextMetricsLogInNanos = new AtomicLong(System.nanoTime() + METRICS_LOG_INTERVAL_IN_NANOS);
+
+	private static final ZHLog log = ZHLog.getInstance();
+
+	public ZHZenHubClientPool(String zenhubServerName, List<String> apiKeys, int requestsPerMinutePerKey) {
+		if (apiKeys == null || apiKeys.isEmpty()) {
+			throw new IllegalArgumentException("At least one ZenHub API key is required.");
+		}
+
+		List<ZHZenHubKeyEntry> newEntries = new ArrayList<>();
+		for (int x = 0; x < apiKeys.size(); x++) {
+			newEntries.add(new ZHZenHubKeyEntry("key #" + (x + 1), new ZenHubClient(zenhubServerName, apiKeys.get(x)),
+					new ZHRateLimiter(requestsPerMinutePerKey)));
+		}
+
+		this.entries = Collections.unmodifiableList(newEntries);
+	}
+
+	/**
+	 * Issue a request to the ZenHub API using the next available key, failing over
+	 * to another key if the request is rate limited.
+	 */
+	public <T> T request(Function<ZenHubClient, T> fn) {
+
+		ZenHubApiException lastException = null;
+
+		for (int attempt = 0; attempt < entries.size(); attempt++) {
+
+			ZHZenHubKeyEntry entry = selectEntry();
+
+			entry.rateLimiter.acquire();
+			entry.requests.incrementAndGet();
+
+			try {
+				return fn.apply(entry.client);
+			} catch (ZenHubApiException e) {
+				if (!isRateLimitException(e)) {
+					throw e;
+				}
+
+				entry.rateLimitErrors.incrementAndGet();
+				entry.coolDownUntilInNanos = System.nanoTime() + KEY_COOL_DOWN_IN_NANOS;
+				lastException = e;
+
+				if (entries.size() > 1) {
+					log.logInfo("ZenHub rate limit hit on " + entry.name + ", failing over to another key.");
+				}
+			}
+		}
+
+		throw lastException;
+	}
+
+	/**
+	 * Round robin across the keys that are not cooling down; if all keys are
+	 * cooling down, return the key that will be available soonest.
+	 */
+	private ZHZenHubKeyEntry selectEntry() {
+		long now = System.nanoTime();
+
+		int start = Math.abs(nextEntry.getAndIncrement() % entries.size());
+
+		ZHZenHubKeyEntry soonest = null;
+
+		for (int x = 0; x < entries.size(); x++) {
+			ZHZenHubKeyEntry entry = entries.get((start + x) % entries.size());
+
+			if (entry.coolDownUntilInNanos - now <= 0) {
+				return entry;
+			}
+
+			if (soonest == null || entry.coolDownUntilInNanos - soonest.coolDownUntilInNanos < 0) {
+				soonest = entry;
+			}
+		}
+
+		return soonest;
+	}
+
+	/**
+	 * Return the sum of the available permits (see
+	 * ZHRateLimiter.getAvailablePermits()) of the keys that are not cooling down,
+	 * or Integer.MAX_VALUE if requests are not rate limited.
+	 */
+	public int getAvailablePermits() {
+		long now = System.nanoTime();
+
+		long result = 0;
+		for (ZHZenHubKeyEntry entry : entries) {
+			if (entry.coolDownUntilInNanos - now > 0) {
+				continue;
+			}
+			result += entry.rateLimiter.getAvailablePermits();
+		}
+
+		return (int) Math.min(Integer.MAX_VALUE, result);
+	}
+
+	/**
+	 * Return the combined per-minute request budget of the keys that are not
+	 * cooling down, or 0 if requests are not rate limited.
+	 */
+	public int getRequestsPerMinuteBudget() {
+		long now = System.nanoTime();
+
+		return entries.stream().filter(e -> e.coolDownUntilInNanos - now <= 0)
+				.mapToInt(e -> e.rateLimiter.getRequestsPerMinute()).sum();
+	}
+
+	/** Total number of requests that have been issued across all keys. */
+	public long getRequestsIssued() {
+		return entries.stream().mapToLong(e -> e.rateLimiter.getRequestsIssued()).sum();
+	}
+
+	public int getNumberOfKeys() {
+		return entries.size();
+	}
+
+	/** A human-readable line per key, with the number of requests and rate limit errors. */
+	public List<String> getKeyUsageMetrics() {
+		List<String> result = new ArrayList<>();
+
+		long now = System.nanoTime();
+
+		entries.forEach(e -> {
+			boolean coolingDown = e.coolDownUntilInNanos - now > 0;
+
+			result.add(e.name + ": requests: " + e.requests.get() + ", rate limit errors: " + e.rateLimitErrors.get()
+					+ (coolingDown ? " (cooling down)" : ""));
+		});
+
+		return result;
+	}
+
+	/** Log the per-key metrics, if they have not been logged recently. */
+	public void logKeyUsageMetricsIfDue() {
+		long next = nextMetricsLogInNanos.get();
+		if (System.nanoTime() - next < 0) {
+			return;
+		}
+
+		if (!nextMetricsLogInNanos.compareAndSet(next, System.nanoTime() + METRICS_LOG_INTERVAL_IN_NANOS)) {
+			return;
+		}
+
+		getKeyUsageMetrics().forEach(e -> log.logInfo("ZenHub API usage - " + e));
+	}
+
+	public static boolean isRateLimitException(Exception e) {
+		return e instanceof ZenHubApiException && e.getMessage() != null && e.getMessage().contains("403 for URL");
+	}
+
+	/** A single ZenHub API key, and its corresponding client, budget, and metrics. */
+	private static class ZHZenHubKeyEntry {
+		private final String name;
+		private final ZenHubClient client;
+		private final ZHRateLimiter rateLimiter;
+
+		private final AtomicLong requests = new AtomicLong();
+		private final AtomicLong rateLimitErrors = new AtomicLong();
+
+		private volatile long coolDownUntilInNanos;
+
+		public ZHZenHubKeyEntry(String name, ZenHubClient client, ZHRateLimiter rateLimiter) {
+			this.name = name;
+			this.client = client;
+			this.rateLimiter = rateLimiter;
+			this.coolDownUntilInNanos = System.nanoTime();
+		}
+	}
+}
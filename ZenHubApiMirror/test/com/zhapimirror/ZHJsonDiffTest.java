@@ -0,0 +1,207 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapimirror;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zhapi.json.BoardPipelineEntryJson;
+import com.zhapi.json.BoardPipelineIssueEntryJson;
+import com.zhapi.json.responses.GetBoardForRepositoryResponseJson;
+import com.zhapimirror.ZHJsonDiff.ZHJsonDiffEntry;
+
+public class ZHJsonDiffTest {
+
+	private static final ObjectMapper om = new ObjectMapper();
+
+	@Test
+	public void testEqualRegardlessOfFieldOrder() throws IOException {
+		JsonNode one = om.readTree("{\"a\": 1, \"b\": {\"c\": [1, 2], \"d\": \"x\"}}");
+		JsonNode two = om.readTree("{\"b\": {\"d\": \"x\", \"c\": [1, 2]}, \"a\": 1}");
+
+		assertTrue(ZHJsonDiff.isEqual(one, two));
+		assertTrue(ZHJsonDiff.diff(one, two).isEmpty());
+	}
+
+	@Test
+	public void testSwappedValues() throws IOException {
+		// The same characters, in a different arrangement: the sorted-alphanumerics
+		// comparison considered these equal.
+		JsonNode one = om.readTree("{\"a\": 1, \"b\": 2}");
+		JsonNode two = om.readTree("{\"a\": 2, \"b\": 1}");
+
+		assertFalse(ZHJsonDiff.isEqual(one, two));
+
+		List<ZHJsonDiffEntry> diff = ZHJsonDiff.diff(one, two);
+		assertEquals(2, diff.size());
+		assertEquals("a", diff.get(0).getPath());
+		assertEquals(1, diff.get(0).getOldValue().asInt());
+		assertEquals(2, diff.get(0).getNewValue().asInt());
+		assertEquals("b", diff.get(1).getPath());
+	}
+
+	@Test
+	public void testSwappedBoardIssues() {
+		GetBoardForRepositoryResponseJson one = createBoard(3, 10);
+		GetBoardForRepositoryResponseJson two = createBoard(3, 10);
+
+		// Swap the positions of two issues in the second pipeline
+		List<BoardPipelineIssueEntryJson> issues = two.getPipelines().get(1).getIssues();
+		issues.get(2).setPosition(3);
+		issues.get(3).setPosition(2);
+
+		assertTrue(ZHJsonDiff.isEqual(one, createBoard(3, 10)));
+		assertFalse(ZHJsonDiff.isEqual(one, two));
+
+		List<String> paths = ZHJsonDiff.diff(one, two).stream().map(e -> e.getPath()).collect(Collectors.toList());
+		assertEquals(2, paths.size());
+		assertEquals("pipelines[1].issues[2].position", paths.get(0));
+		assertEquals("pipelines[1].issues[3].position", paths.get(1));
+	}
+
+	@Test
+	public void testArrayLengthChanges() throws IOException {
+		JsonNode shorter = om.readTree("{\"a\": [1, 2]}");
+		JsonNode longer = om.readTree("{\"a\": [1, 2, 3]}");
+
+		List<ZHJsonDiffEntry> added = ZHJsonDiff.diff(shorter, longer);
+		assertEquals(1, added.size());
+		assertEquals("a[2]", added.get(0).getPath());
+		assertTrue(added.get(0).isAdded());
+		assertEquals(3, added.get(0).getNewValue().asInt());
+
+		List<ZHJsonDiffEntry> removed = ZHJsonDiff.diff(longer, shorter);
+		assertEquals(1, removed.size());
+		assertEquals("a[2]", removed.get(0).getPath());
+		assertTrue(removed.get(0).isRemoved());
+
+		// An element removed from the front shifts the rest, which are compared by index
+		JsonNode shifted = om.readTree("{\"a\": [2, 3]}");
+		assertEquals(3, ZHJsonDiff.diff(longer, shifted).size());
+	}
+
+	@Test
+	public void testNullVersusMissing() throws IOException {
+		JsonNode explicitNull = om.readTree("{\"a\": 1, \"b\": null}");
+		JsonNode missing = om.readTree("{\"a\": 1}");
+
+		List<ZHJsonDiffEntry> diff = ZHJsonDiff.diff(explicitNull, missing);
+		assertEquals(1, diff.size());
+		assertEquals("b", diff.get(0).getPath());
+		assertTrue(diff.get(0).getOldValue().isNull());
+		assertTrue(diff.get(0).isRemoved());
+
+		diff = ZHJsonDiff.diff(missing, explicitNull);
+		assertEquals(1, diff.size());
+		assertTrue(diff.get(0).isAdded());
+		assertTrue(diff.get(0).getNewValue().isNull());
+	}
+
+	@Test
+	public void testNullObjects() throws IOException {
+		JsonNode node = om.readTree("{\"a\": 1}");
+
+		assertTrue(ZHJsonDiff.isEqual(null, null));
+
+		List<ZHJsonDiffEntry> created = ZHJsonDiff.diff(null, node);
+		assertEquals(1, created.size());
+		assertEquals("", created.get(0).getPath());
+		assertTrue(created.get(0).isAdded());
+		assertEquals("(root) added", created.get(0).toString());
+
+		List<ZHJsonDiffEntry> deleted = ZHJsonDiff.diff(node, null);
+		assertEquals(1, deleted.size());
+		assertTrue(deleted.get(0).isRemoved());
+		assertNull(deleted.get(0).getNewValue());
+	}
+
+	@Test
+	public void testTypeChange() throws IOException {
+		List<ZHJsonDiffEntry> diff = ZHJsonDiff.diff(om.readTree("{\"a\": [1]}"), om.readTree("{\"a\": {\"b\": 1}}"));
+
+		assertEquals(1, diff.size());
+		assertEquals("a", diff.get(0).getPath());
+		assertTrue(diff.get(0).getOldValue().isArray());
+		assertTrue(diff.get(0).getNewValue().isObject());
+	}
+
+	@Test
+	public void testEarlyExit() {
+		GetBoardForRepositoryResponseJson one = createBoard(4, 50);
+		GetBoardForRepositoryResponseJson two = createBoard(4, 50);
+		two.getPipelines().forEach(p -> p.getIssues().forEach(i -> i.setPosition(i.getPosition() + 1)));
+
+		assertEquals(200, ZHJsonDiff.diff(one, two, Integer.MAX_VALUE).size());
+
+		// The walk stops once the cap is reached, at the first differences in path order
+		List<ZHJsonDiffEntry> capped = ZHJsonDiff.diff(one, two, 3);
+		assertEquals(3, capped.size());
+		assertEquals("pipelines[0].issues[0].position", capped.get(0).getPath());
+		assertEquals("pipelines[0].issues[2].position", capped.get(2).getPath());
+
+		// isEqual only needs the first difference
+		assertEquals(1, ZHJsonDiff.diff(one, two, 1).size());
+		assertFalse(ZHJsonDiff.isEqual(one, two));
+	}
+
+	@Test
+	public void testSummary() throws IOException {
+		List<ZHJsonDiffEntry> diff = ZHJsonDiff.diff(om.readTree("{\"a\": 1, \"b\": \"x\"}"),
+				om.readTree("{\"a\": 2, \"c\": true}"));
+
+		assertEquals("a: 1 -> 2, b removed, c added", ZHJsonDiff.toSummary(diff, 10));
+		assertEquals("a: 1 -> 2, b removed, c added", ZHJsonDiff.toSummary(diff, 3));
+
+		// The diff is capped, so the number of remaining differences is not known
+		assertEquals("a: 1 -> 2, b removed, and more", ZHJsonDiff.toSummary(diff, 2));
+	}
+
+	static GetBoardForRepositoryResponseJson createBoard(int pipelines, int issuesPerPipeline) {
+		GetBoardForRepositoryResponseJson board = new GetBoardForRepositoryResponseJson();
+		board.setPipelines(new ArrayList<>());
+
+		int issueNumber = 1;
+		for (int x = 0; x < pipelines; x++) {
+			BoardPipelineEntryJson pipeline = new BoardPipelineEntryJson();
+			pipeline.setId("pipeline-" + x);
+			pipeline.setName("Pipeline " + x);
+			pipeline.setIssues(new ArrayList<>());
+
+			for (int y = 0; y < issuesPerPipeline; y++) {
+				BoardPipelineIssueEntryJson issue = new BoardPipelineIssueEntryJson();
+				issue.setIssue_number(issueNumber++);
+				issue.setPosition(y);
+				pipeline.getIssues().add(issue);
+			}
+
+			board.getPipelines().add(pipeline);
+		}
+
+		return board;
+	}
+}
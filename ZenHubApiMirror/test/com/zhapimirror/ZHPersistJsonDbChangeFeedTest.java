@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapimirror;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.zhapi.shared.json.ChangeFeedResponseJson;
+import com.zhapi.shared.json.RepositoryChangeEventJson;
+
+public class ZHPersistJsonDbChangeFeedTest {
+
+	private File directory;
+
+	private ZHPersistJsonDb db;
+
+	@Before
+	public void before() throws IOException {
+		directory = Files.createTempDirectory("zh-change-feed").toFile();
+		db = new ZHPersistJsonDb(directory);
+	}
+
+	@After
+	public void after() throws IOException {
+		try (Stream<Path> paths = Files.walk(directory.toPath())) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	@Test
+	public void testSequenceNumbersAreAssignedInOrder() {
+		assertEquals(0, db.getLastChangeEventSeq());
+
+		for (int x = 0; x < 3; x++) {
+			RepositoryChangeEventJson event = newEvent(System.currentTimeMillis());
+			db.persistRepositoryChangeEvent(event);
+			assertEquals(x + 1, event.getSeq());
+		}
+
+		assertEquals(3, db.getLastChangeEventSeq());
+
+		ChangeFeedResponseJson feed = db.getChangeEvents(0, 10);
+		assertEquals(3, feed.getEvents().size());
+		assertEquals("1,2,3", feed.getEvents().stream().map(e -> "" + e.getSeq()).collect(Collectors.joining(",")));
+		assertEquals(3, feed.getNextCursor());
+		assertEquals(3, feed.getHeadCursor());
+		assertFalse(feed.isHasMore());
+		assertFalse(feed.isResyncRequired());
+
+		// A new database instance on the same directory continues the sequence
+		ZHPersistJsonDb reopened = new ZHPersistJsonDb(directory);
+		assertEquals(3, reopened.getLastChangeEventSeq());
+
+		RepositoryChangeEventJson event = newEvent(System.currentTimeMillis());
+		reopened.persistRepositoryChangeEvent(event);
+		assertEquals(4, event.getSeq());
+	}
+
+	@Test
+	public void testHasMorePaging() {
+		for (int x = 0; x < 5; x++) {
+			db.persistRepositoryChangeEvent(newEvent(System.currentTimeMillis()));
+		}
+
+		ChangeFeedResponseJson page = db.getChangeEvents(0, 2);
+		assertEquals(2, page.getEvents().size());
+		assertEquals(2, page.getNextCursor());
+		assertEquals(5, page.getHeadCursor());
+		assertTrue(page.isHasMore());
+
+		page = db.getChangeEvents(page.getNextCursor(), 2);
+		assertEquals(2, page.getEvents().size());
+		assertEquals(4, page.getNextCursor());
+		assertTrue(page.isHasMore());
+
+		// Exactly 'limit' events remain: hasMore is false
+		page = db.getChangeEvents(page.getNextCursor(), 1);
+		assertEquals(1, page.getEvents().size());
+		assertEquals(5, page.getNextCursor());
+		assertFalse(page.isHasMore());
+
+		// At the head of the feed, the cursor does not move
+		page = db.getChangeEvents(page.getNextCursor(), 2);
+		assertEquals(0, page.getEvents().size());
+		assertEquals(5, page.getNextCursor());
+		assertFalse(page.isHasMore());
+		assertFalse(page.isResyncRequired());
+	}
+
+	@Test
+	public void testExpiredEventsRequireResync() {
+		long expiredTime = System.currentTimeMillis() - TimeUnit.MILLISECONDS.convert(9, TimeUnit.DAYS);
+
+		db.persistRepositoryChangeEvent(newEvent(expiredTime));
+		db.persistRepositoryChangeEvent(newEvent(System.currentTimeMillis()));
+
+		// Reading the head of the feed must not expire events, or flag a resync
+		assertEquals(2, db.getLastChangeEventSeq());
+
+		ChangeFeedResponseJson feed = db.getChangeEvents(0, 10);
+		assertFalse(feed.isResyncRequired());
+		assertEquals(2, feed.getEvents().size());
+
+		// The read above expired the first event, so a reader that has not seen it has
+		// missed an event.
+		feed = db.getChangeEvents(0, 10);
+		assertTrue(feed.isResyncRequired());
+		assertEquals(1, feed.getEvents().size());
+		assertEquals(2, feed.getEvents().get(0).getSeq());
+
+		// A reader that had already seen the expired event has not missed anything
+		feed = db.getChangeEvents(1, 10);
+		assertFalse(feed.isResyncRequired());
+		assertEquals(1, feed.getEvents().size());
+	}
+
+	@Test
+	public void testCursorFromReplacedDatabaseRequiresResync() {
+		db.persistRepositoryChangeEvent(newEvent(System.currentTimeMillis()));
+
+		ChangeFeedResponseJson feed = db.getChangeEvents(100, 10);
+		assertTrue(feed.isResyncRequired());
+		assertEquals(1, feed.getNextCursor());
+		assertEquals(0, feed.getEvents().size());
+	}
+
+	private static RepositoryChangeEventJson newEvent(long time) {
+		RepositoryChangeEventJson result = new RepositoryChangeEventJson();
+		result.setTime(time);
+		result.setRepoId(1);
+		result.setUuid(UUID.randomUUID().toString());
+		result.setResourceType(RepositoryChangeEventJson.RESOURCE_BOARD);
+		return result;
+	}
+
+}
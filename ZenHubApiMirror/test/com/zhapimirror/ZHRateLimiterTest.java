@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapimirror;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ZHRateLimiterTest {
+
+	@Test
+	public void testUnlimitedHasMaxPermits() {
+		ZHRateLimiter limiter = new ZHRateLimiter(0);
+
+		limiter.acquire();
+		limiter.acquire();
+
+		assertEquals(Integer.MAX_VALUE, limiter.getAvailablePermits());
+		assertEquals(0, limiter.getRequestsPerMinute());
+		assertEquals(2, limiter.getRequestsIssued());
+	}
+
+	@Test
+	public void testIdleLimiterHasFullBudget() {
+		ZHRateLimiter limiter = new ZHRateLimiter(60);
+
+		assertEquals(60, limiter.getAvailablePermits());
+	}
+
+	@Test
+	public void testAcquireClaimsSlots() {
+		// 6000 requests per minute is one slot every 10 msecs
+		ZHRateLimiter limiter = new ZHRateLimiter(6000);
+
+		for (int x = 0; x < 20; x++) {
+			limiter.acquire();
+		}
+
+		assertEquals(20, limiter.getRequestsIssued());
+
+		// The next slot has been claimed by the last caller, so at least one slot is
+		// unavailable; no more than the issued requests can be outstanding.
+		int permits = limiter.getAvailablePermits();
+		assertTrue("" + permits, permits < 6000);
+		assertTrue("" + permits, permits >= 6000 - 20);
+	}
+
+}
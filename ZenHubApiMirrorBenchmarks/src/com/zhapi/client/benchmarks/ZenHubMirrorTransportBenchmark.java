@@ -0,0 +1,173 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapi.client.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpServer;
+import com.zhapi.client.ZenHubMirrorTransport;
+import com.zhapi.client.ZenHubMirrorTransportResponse;
+import com.zhapi.client.ZenHubMirrorUrlConnectionTransport;
+
+/**
+ * Measures the request throughput of ZenHubMirrorUrlConnectionTransport, which
+ * reuses keep-alive connections, against a transport that opens a new
+ * connection for each request (as the client did before the transport was
+ * introduced), with concurrent callers.
+ * 
+ * Requests are sent to a local HTTP server that returns a board-sized JSON
+ * body, so the results show the cost of the connection handling rather than
+ * of the network. The keep-alive cache of the forked JVM is sized for the
+ * number of benchmark threads (-Dhttp.maxConnections). The local server writes
+ * the headers and the body of a response separately, so Nagle's algorithm is
+ * disabled on it (-Dsun.net.httpserver.nodelay); otherwise, each request on a
+ * reused connection would stall on a delayed ACK.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Dhttp.maxConnections=16", "-Dsun.net.httpserver.nodelay=true" })
+@Threads(8)
+public class ZenHubMirrorTransportBenchmark {
+
+	@Param({ "keep-alive", "new-connection" })
+	public String transportType;
+
+	@Param({ "20000" })
+	public int bodySize;
+
+	private HttpServer server;
+
+	private ExecutorService serverExecutor;
+
+	private ZenHubMirrorTransport transport;
+
+	private String url;
+
+	@Setup
+	public void setup() throws IOException {
+		byte[] body = createBody(bodySize);
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(body);
+			}
+		});
+		serverExecutor = Executors.newFixedThreadPool(16);
+		server.setExecutor(serverExecutor);
+		server.start();
+
+		url = "http://127.0.0.1:" + server.getAddress().getPort() + "/board/1";
+
+		transport = transportType.equals("keep-alive") ? new ZenHubMirrorUrlConnectionTransport()
+				: new NewConnectionTransport();
+	}
+
+	@TearDown
+	public void tearDown() {
+		transport.close();
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+
+	@Benchmark
+	public long get() throws IOException {
+		long count = 0;
+		try (ZenHubMirrorTransportResponse response = transport.get(url, "key")) {
+			InputStream is = response.getBody();
+			byte[] barr = new byte[8 * 1024];
+			int c;
+			while ((c = is.read(barr)) != -1) {
+				count += c;
+			}
+		}
+		return count;
+	}
+
+	private static byte[] createBody(int size) {
+		StringBuilder sb = new StringBuilder("{\"pipelines\":[");
+		for (int x = 0; sb.length() < size - 64; x++) {
+			if (x > 0) {
+				sb.append(",");
+			}
+			sb.append("{\"issue_number\":" + x + ",\"estimate\":{\"value\":3},\"position\":" + x + ",\"is_epic\":false}");
+		}
+		sb.append("]}");
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/** Opens a new connection for each request, and closes it once the response has been read. */
+	private static class NewConnectionTransport implements ZenHubMirrorTransport {
+
+		@Override
+		public ZenHubMirrorTransportResponse get(String url, String authorization) throws IOException {
+			HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+			connection.setRequestProperty("Authorization", authorization);
+			connection.setRequestProperty("Connection", "close");
+
+			int code = connection.getResponseCode();
+			InputStream body = connection.getInputStream();
+
+			return new ZenHubMirrorTransportResponse() {
+
+				@Override
+				public int getStatusCode() {
+					return code;
+				}
+
+				@Override
+				public InputStream getBody() {
+					return body;
+				}
+
+				@Override
+				public void close() throws IOException {
+					body.close();
+					connection.disconnect();
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapimirror.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zhapi.json.BoardPipelineEntryJson;
+import com.zhapi.json.BoardPipelineIssueEntryJson;
+import com.zhapi.json.EstimateJson;
+import com.zhapi.json.IssueJson;
+import com.zhapi.json.PipelineJson;
+import com.zhapi.json.responses.GetBoardForRepositoryResponseJson;
+import com.zhapi.json.responses.GetEpicResponseJson;
+import com.zhapimirror.JsonUtil;
+import com.zhapimirror.ZHJsonDiff;
+import com.zhapimirror.ZHJsonDiff.ZHJsonDiffEntry;
+
+/**
+ * Compares the cost of detecting changes to board and epic payloads with
+ * ZHJsonDiff, against the sorted-alphanumerics comparison that it replaced.
+ * 
+ * The boards are sized like those of a large repository: 'pipelines' pipelines
+ * of 'issuesPerPipeline' issues each, with estimates. The 'changed' payloads
+ * differ from the originals only in the position of the last issue of the
+ * last pipeline, which is the worst case for the structural walk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZHJsonDiffBenchmark {
+
+	@Param({ "8" })
+	public int pipelines;
+
+	@Param({ "25", "250" })
+	public int issuesPerPipeline;
+
+	private final ObjectMapper om = new ObjectMapper();
+
+	private GetBoardForRepositoryResponseJson board;
+	private GetBoardForRepositoryResponseJson boardCopy;
+	private GetBoardForRepositoryResponseJson boardChanged;
+
+	private GetEpicResponseJson epic;
+	private GetEpicResponseJson epicCopy;
+	private GetEpicResponseJson epicChanged;
+
+	@Setup
+	public void setup() {
+		board = createBoard(pipelines, issuesPerPipeline);
+		boardCopy = createBoard(pipelines, issuesPerPipeline);
+		boardChanged = createBoard(pipelines, issuesPerPipeline);
+
+		List<BoardPipelineIssueEntryJson> lastPipeline = boardChanged.getPipelines().get(pipelines - 1).getIssues();
+		lastPipeline.get(lastPipeline.size() - 1).setPosition(-1);
+
+		// An epic with as many child issues as a pipeline
+		epic = createEpic(issuesPerPipeline);
+		epicCopy = createEpic(issuesPerPipeline);
+		epicChanged = createEpic(issuesPerPipeline);
+		epicChanged.getIssues().get(issuesPerPipeline - 1).setIssue_number(-1);
+	}
+
+	@Benchmark
+	public boolean boardUnchangedIsEqual() {
+		return ZHJsonDiff.isEqual(board, boardCopy);
+	}
+
+	@Benchmark
+	public boolean boardChangedIsEqual() {
+		return ZHJsonDiff.isEqual(board, boardChanged);
+	}
+
+	@Benchmark
+	public List<ZHJsonDiffEntry> boardChangedDiff() {
+		return ZHJsonDiff.diff(board, boardChanged);
+	}
+
+	@Benchmark
+	@SuppressWarnings("deprecation")
+	public boolean boardUnchangedSortedAlphanumerics() throws JsonProcessingException {
+		return JsonUtil.isEqualBySortedAlphanumerics(board, boardCopy, om);
+	}
+
+	@Benchmark
+	public boolean epicUnchangedIsEqual() {
+		return ZHJsonDiff.isEqual(epic, epicCopy);
+	}
+
+	@Benchmark
+	public boolean epicChangedIsEqual() {
+		return ZHJsonDiff.isEqual(epic, epicChanged);
+	}
+
+	@Benchmark
+	@SuppressWarnings("deprecation")
+	public boolean epicUnchangedSortedAlphanumerics() throws JsonProcessingException {
+		return JsonUtil.isEqualBySortedAlphanumerics(epic, epicCopy, om);
+	}
+
+	private static GetBoardForRepositoryResponseJson createBoard(int pipelines, int issuesPerPipeline) {
+		GetBoardForRepositoryResponseJson board = new GetBoardForRepositoryResponseJson();
+		board.setPipelines(new ArrayList<>());
+
+		int issueNumber = 1000;
+		for (int x = 0; x < pipelines; x++) {
+			BoardPipelineEntryJson pipeline = new BoardPipelineEntryJson();
+			pipeline.setId("5c8a9b7e3f1d2a0001" + String.format("%06d", x));
+			pipeline.setName("Pipeline " + x);
+			pipeline.setIssues(new ArrayList<>());
+
+			for (int y = 0; y < issuesPerPipeline; y++) {
+				BoardPipelineIssueEntryJson issue = new BoardPipelineIssueEntryJson();
+				issue.setIssue_number(issueNumber++);
+				issue.setPosition(y);
+				issue.setIs_epic(y % 20 == 0);
+				if (y % 3 != 0) {
+					issue.setEstimate(createEstimate(y % 8 + 1));
+				}
+				pipeline.getIssues().add(issue);
+			}
+
+			board.getPipelines().add(pipeline);
+		}
+
+		return board;
+	}
+
+	private static GetEpicResponseJson createEpic(int issues) {
+		GetEpicResponseJson epic = new GetEpicResponseJson();
+
+		PipelineJson pipeline = new PipelineJson();
+		pipeline.setName("In Progress");
+		pipeline.setPipeline_id("5c8a9b7e3f1d2a0001000002");
+		pipeline.setWorkspace_id("5c8a9b7e3f1d2a0001000000");
+		epic.setPipeline(pipeline);
+
+		epic.setEstimate(createEstimate(13));
+		epic.setTotal_epic_estimates(createEstimate(issues * 3));
+
+		epic.setIssues(new ArrayList<>());
+		for (int x = 0; x < issues; x++) {
+			IssueJson issue = new IssueJson();
+			issue.setIssue_number(2000 + x);
+			issue.setRepo_id(103694377);
+			epic.getIssues().add(issue);
+		}
+
+		return epic;
+	}
+
+	private static EstimateJson createEstimate(int value) {
+		EstimateJson estimate = new EstimateJson();
+		estimate.setValue(value);
+		return estimate;
+	}
+}
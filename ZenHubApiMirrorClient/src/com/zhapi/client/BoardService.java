@@ -16,6 +16,8 @@
 
 package com.zhapi.client;
 
+import java.util.concurrent.CompletableFuture;
+
 import com.zhapi.ApiResponse;
 import com.zhapi.json.responses.GetBoardForRepositoryResponseJson;
 
@@ -44,4 +46,11 @@ public ApiResponse<GetBoardForRepositoryResponseJson> getZenHubBoardForRepo(long
 
 	}
 
+	public CompletableFuture<ApiResponse<GetBoardForRepositoryResponseJson>> getZenHubBoardForRepoAsync(long repoId) {
+
+		String url = "/board/" + repoId;
+
+		return zenhubClient.getAsync(url, GetBoardForRepositoryResponseJson.class);
+	}
+
 }
@@ -16,6 +16,8 @@
 
 package com.zhapi.client;
 
+import java.util.concurrent.CompletableFuture;
+
 import com.zhapi.ApiResponse;
 import com.zhapi.json.responses.DependenciesForARepoResponseJson;
 
@@ -42,4 +44,12 @@ public ApiResponse<DependenciesForARepoResponseJson> getDependenciesForAReposito
 				api.getRateLimitStatus(), api.getResponseBody());
 
 	}
+
+	public CompletableFuture<ApiResponse<DependenciesForARepoResponseJson>> getDependenciesForARepositoryAsync(
+			long repoId) {
+
+		String url = "/dependencies/" + repoId;
+
+		return zenhubClient.getAsync(url, DependenciesForARepoResponseJson.class);
+	}
 }
@@ -16,6 +16,8 @@
 
 package com.zhapi.client;
 
+import java.util.concurrent.CompletableFuture;
+
 import com.zhapi.ApiResponse;
 import com.zhapi.json.responses.GetEpicResponseJson;
 import com.zhapi.json.responses.GetEpicsResponseJson;
@@ -43,6 +45,13 @@ public ApiResponse<GetEpicsResponseJson> getEpics(long repoId) {
 
 	}
 
+	public CompletableFuture<ApiResponse<GetEpicsResponseJson>> getEpicsAsync(long repoId) {
+
+		String url = "/epics/" + repoId;
+
+		return zenhubClient.getAsync(url, GetEpicsResponseJson.class);
+	}
+
 	public ApiResponse<GetEpicResponseJson> getEpic(long repo_id, int epic_id) {
 		String url = "/epic/" + repo_id + "/" + epic_id;
 
@@ -52,4 +61,10 @@ public ApiResponse<GetEpicResponseJson> getEpic(long repo_id, int epic_id) {
 				response.getRateLimitStatus(), response.getResponseBody());
 
 	}
+
+	public CompletableFuture<ApiResponse<GetEpicResponseJson>> getEpicAsync(long repo_id, int epic_id) {
+		String url = "/epic/" + repo_id + "/" + epic_id;
+
+		return zenhubClient.getAsync(url, GetEpicResponseJson.class);
+	}
 }
@@ -19,6 +19,7 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import com.zhapi.ApiResponse;
 import com.zhapi.json.IssueEventJson;
@@ -47,11 +48,29 @@ public ApiResponse<GetIssueDataResponseJson> getIssueData(long repoId, int issue
 
 	}
 
+	public CompletableFuture<ApiResponse<GetIssueDataResponseJson>> getIssueDataAsync(long repoId, int issueNumber) {
+
+		String url = "/issueData/" + repoId + "/" + issueNumber;
+
+		return zenhubClient.getAsync(url, GetIssueDataResponseJson.class);
+	}
+
 	public ApiResponse<List<IssueEventJson>> getIssueEvents(long repoId, int issueNumber) {
 
 		String url = "/issueEvents/" + repoId + "/" + issueNumber;
 
-		ApiResponse<IssueEventJson[]> response = zenhubClient.get(url, IssueEventJson[].class);
+		return toList(zenhubClient.get(url, IssueEventJson[].class));
+
+	}
+
+	public CompletableFuture<ApiResponse<List<IssueEventJson>>> getIssueEventsAsync(long repoId, int issueNumber) {
+
+		String url = "/issueEvents/" + repoId + "/" + issueNumber;
+
+		return zenhubClient.getAsync(url, IssueEventJson[].class).thenApply(IssuesService::toList);
+	}
+
+	private static ApiResponse<List<IssueEventJson>> toList(ApiResponse<IssueEventJson[]> response) {
 
 		IssueEventJson[] arrayResult = (IssueEventJson[]) response.getResponse();
 
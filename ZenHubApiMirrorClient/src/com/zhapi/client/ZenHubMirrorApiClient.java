@@ -16,143 +16,537 @@
 
 package com.zhapi.client;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
-
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
-
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.zhapi.ApiResponse;
-import com.zhapi.ZHUtil;
 import com.zhapi.ZenHubApiException;
 
 /**
- * This class stores the server API URL, and the preshared key required for
+ * This class stores the server API URL(s), and the preshared key required for
  * auth. To use this library, instantiate an instance of this class then pass
  * that to one of the (resource)Service classes.
+ * 
+ * If multiple mirror instances are configured, each request is sent to the
+ * healthy instance with the fewest outstanding requests; instances that fail
+ * (or are slow) repeatedly are ejected for a time. Optionally, a request that
+ * has not completed within the 95th percentile latency of its instance is
+ * hedged: a second copy is sent to another instance, the first response is
+ * used, and the slower request is aborted.
+ * 
+ * Requests are sent using a ZenHubMirrorTransport; by default, a
+ * ZenHubMirrorUrlConnectionTransport, which reuses keep-alive connections.
+ * Instances of this class are thread safe, and should be shared.
+ * 
+ * Each (resource)Service has both blocking methods, and asynchronous variants
+ * (ending in 'Async') which return a CompletableFuture; the number of
+ * asynchronous requests in flight at once is bounded (see the builder).
+ * 
+ * Optionally, responses may be cached (see ZenHubMirrorClientCache), in which
+ * case repeated requests for a resource that has not changed on the mirror are
+ * served from memory.
+ * 
+ * Optionally, a local replica of entire repositories may be maintained (see
+ * ZenHubMirrorReplica), in which case requests for the resources of those
+ * repositories are served from memory without contacting the mirror.
+ * 
+ * The timing of each request sent to the mirror may be observed by
+ * registering a ZenHubMirrorClientListener (such as ZenHubMirrorClientMetrics).
  */
 public class ZenHubMirrorApiClient {
 
 	private final String presharedKey;
-	private final String apiUrl; // Will not end with a slash, will begin with http(s)://
+	private final ZenHubMirrorLoadBalancer loadBalancer;
 
-	private static final String HEADER_AUTHORIZATION = "Authorization";
+	private final boolean hedgedRequests;
 
-	public ZenHubMirrorApiClient(String apiUrl, String presharedKey) {
-		if (!apiUrl.startsWith("http://") && !apiUrl.startsWith("https://")) {
-			throw new IllegalArgumentException("API URL must begin with HTTP(S) prefix");
-		}
+	private final long slowRequestThresholdInNanos;
+
+	private final List<ZenHubMirrorClientListener> listeners;
+
+	private final ZenHubMirrorTransport transport;
+
+	/**
+	 * ObjectMapper is thread safe once configured, so a single instance is shared;
+	 * the response stream is left open after parsing, so that the transport can
+	 * read it to the end (allowing the connection to be reused).
+	 */
+	private static final ObjectMapper DEFAULT_OM = new ObjectMapper().disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+	/** The hedge delay, until enough requests have completed to compute the percentile */
+	private static final long DEFAULT_HEDGE_DELAY_IN_MSECS = 100;
+
+	private static final Logger log = Logger.getLogger(ZenHubMirrorApiClient.class.getName());
 
-		apiUrl = ensureDoesNotEndWithSlash(apiUrl);
+	/** Limits the number of asynchronous requests that are in flight at once */
+	private final Semaphore inFlightPermits;
 
-		this.apiUrl = apiUrl;
-		this.presharedKey = presharedKey;
+	private final ExecutorService asyncExecutor;
+
+	/** Sends the copies of hedged requests once their hedge delay has elapsed */
+	private final ScheduledExecutorService hedgeScheduler;
+
+	/** Null if caching is disabled */
+	private final ZenHubMirrorClientCache cache;
+
+	/** Null if caching is disabled */
+	private final ZenHubMirrorCacheInvalidator cacheInvalidator;
+
+	/** Null if no repositories are replicated */
+	private final ZenHubMirrorReplica replica;
+
+	public ZenHubMirrorApiClient(String apiUrl, String presharedKey) {
+		this(apiUrl, presharedKey, new ZenHubMirrorUrlConnectionTransport());
 	}
 
-	public <T> ApiResponse<T> get(String apiUrl, Class<T> clazz) {
+	public ZenHubMirrorApiClient(String apiUrl, String presharedKey, ZenHubMirrorTransport transport) {
+		this(builder().apiUrl(apiUrl).presharedKey(presharedKey).transport(transport));
+	}
 
-		ApiResponse<String> body = getRequest(apiUrl);
+	private ZenHubMirrorApiClient(ZenHubMirrorApiClientBuilder builder) {
+		if (builder.apiUrls.isEmpty()) {
+			throw new IllegalArgumentException("At least one API URL is required");
+		}
 
-//		System.out.println(body.getResponse());
-//		log.out(body.getResponse());
+		List<ZenHubMirrorEndpoint> endpoints = new ArrayList<>();
+		for (String apiUrl : builder.apiUrls) {
+			if (apiUrl == null || (!apiUrl.startsWith("http://") && !apiUrl.startsWith("https://"))) {
+				throw new IllegalArgumentException("API URL must begin with HTTP(S) prefix");
+			}
 
-		ObjectMapper om = new ObjectMapper();
-		try {
-			T parsed = om.readValue(body.getResponse(), clazz);
-			return new ApiResponse<T>(parsed, null, body.getResponse());
-		} catch (Exception e) {
-			throw ZenHubApiException.createFromThrowable(e);
+			endpoints.add(new ZenHubMirrorEndpoint(ensureDoesNotEndWithSlash(apiUrl), builder.maxConsecutiveFailures,
+					builder.ejectionTimeInMsecs));
+		}
+
+		if (builder.maxInFlightRequests <= 0) {
+			throw new IllegalArgumentException("Invalid maximum number of in-flight requests: " + builder.maxInFlightRequests);
 		}
 
+		this.loadBalancer = new ZenHubMirrorLoadBalancer(endpoints);
+		this.hedgedRequests = builder.hedgedRequests;
+		this.listeners = Collections.unmodifiableList(new ArrayList<>(builder.listeners));
+		this.slowRequestThresholdInNanos = TimeUnit.NANOSECONDS.convert(builder.slowRequestThresholdInMsecs,
+				TimeUnit.MILLISECONDS);
+		this.presharedKey = builder.presharedKey;
+		this.transport = builder.transport != null ? builder.transport : new ZenHubMirrorUrlConnectionTransport();
+		this.inFlightPermits = new Semaphore(builder.maxInFlightRequests);
+
+		// The transport is blocking, so each in-flight request occupies a thread; each
+		// task (an asynchronous request, or the copy of a hedged request) holds an
+		// in-flight permit, and the number of threads is bounded by the permits.
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(builder.maxInFlightRequests, builder.maxInFlightRequests,
+				60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+					Thread t = new Thread(r, ZenHubMirrorApiClient.class.getName() + "-async");
+					t.setDaemon(true);
+					return t;
+				});
+		executor.allowCoreThreadTimeOut(true);
+		this.asyncExecutor = executor;
+
+		ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread t = new Thread(r, ZenHubMirrorApiClient.class.getName() + "-hedge");
+			t.setDaemon(true);
+			return t;
+		});
+		scheduler.setRemoveOnCancelPolicy(true);
+		this.hedgeScheduler = scheduler;
+
+		if (builder.cacheSize > 0) {
+			this.cache = new ZenHubMirrorClientCache(builder.cacheSize);
+			this.cacheInvalidator = new ZenHubMirrorCacheInvalidator(new ZenHubMirrorEventsService(this), cache,
+					builder.cacheInvalidationPollIntervalInMsecs);
+			this.cacheInvalidator.start();
+		} else {
+			this.cache = null;
+			this.cacheInvalidator = null;
+		}
+
+		if (!builder.replicatedRepositories.isEmpty()) {
+			this.replica = new ZenHubMirrorReplica(this, builder.replicatedRepositories,
+					builder.replicaPollIntervalInMsecs);
+			this.replica.start();
+		} else {
+			this.replica = null;
+		}
 	}
 
-	private ApiResponse<String> getRequest(String requestUrlParam) {
+	public static ZenHubMirrorApiClientBuilder builder() {
+		return new ZenHubMirrorApiClientBuilder();
+	}
 
-		requestUrlParam = ensureDoesNotBeginsWithSlash(requestUrlParam);
+	/**
+	 * Issue the request on a background thread. If the maximum number of
+	 * asynchronous requests are already in flight, the calling thread blocks until
+	 * one of them completes (so callers that issue requests in a loop are
+	 * naturally throttled). For this reason, avoid issuing new asynchronous
+	 * requests from the completion callback of another asynchronous request,
+	 * which may deadlock once all permits are in use; use the *Async methods of
+	 * CompletableFuture with a separate executor instead.
+	 */
+	public <T> CompletableFuture<ApiResponse<T>> getAsync(String apiUrl, Class<T> clazz) {
+
+		ApiResponse<T> replicated = getFromReplica(ensureDoesNotBeginsWithSlash(apiUrl), clazz);
+		if (replicated != null) {
+			return CompletableFuture.completedFuture(replicated);
+		}
+
+		try {
+			inFlightPermits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			CompletableFuture<ApiResponse<T>> result = new CompletableFuture<>();
+			result.completeExceptionally(ZenHubApiException.createFromThrowable(e));
+			return result;
+		}
 
-		HttpURLConnection httpRequest;
 		try {
-			httpRequest = createConnection(this.apiUrl + "/" + requestUrlParam, "GET", presharedKey);
-			final int code = httpRequest.getResponseCode();
+			return CompletableFuture.supplyAsync(() -> {
+				try {
+					return get(apiUrl, clazz);
+				} finally {
+					inFlightPermits.release();
+				}
+			}, asyncExecutor);
 
-			InputStream is = httpRequest.getInputStream();
+		} catch (RuntimeException e) {
+			// The executor rejected the task (eg the client was closed)
+			inFlightPermits.release();
+			throw e;
+		}
+	}
 
-			String body = getBody(is);
+	/**
+	 * Issue a GET request for the resource at the given path. If the cache or
+	 * replica is enabled, the responses they return are shared between callers,
+	 * and so must not be modified.
+	 */
+	public <T> ApiResponse<T> get(String apiUrl, Class<T> clazz) {
 
-			if (code != 200) {
-				throw new ZenHubApiException("Request failed - HTTP Code: " + code + "  body: " + body);
+		String path = ensureDoesNotBeginsWithSlash(apiUrl);
+
+		ApiResponse<T> replicated = getFromReplica(path, clazz);
+		if (replicated != null) {
+			return replicated;
+		}
+
+		long cacheGeneration = 0;
+		if (cache != null) {
+			ApiResponse<T> cached = cache.get(path);
+			if (cached != null) {
+				return cached;
 			}
+			cacheGeneration = cache.getGeneration();
+		}
 
-			return new ApiResponse<String>(body, null, body);
+		EndpointResponse<T> result = getRequest(path, clazz, false, isFeedRequest(path));
 
-		} catch (IOException e) {
-			throw ZenHubApiException.createFromThrowable(e);
+		// The cache is invalidated by the change feed of the primary endpoint, so only
+		// responses from the primary are cached: a response from another endpoint may
+		// predate a change that was already invalidated, and would then remain in the
+		// cache until the resource next changes.
+		if (cache != null && result.endpoint == loadBalancer.getPrimary()) {
+			cache.put(path, result.response, cacheGeneration);
 		}
 
+		return result.response;
+
 	}
 
-	private static HttpURLConnection createConnection(String uri, String method, String authorization)
-			throws IOException {
+	/**
+	 * Issue a GET request for the resource at the given path, bypassing the cache
+	 * and replica; returns empty if the mirror does not have the resource (HTTP
+	 * 404). The request is sent to the primary endpoint, as it is used by the
+	 * replica, which tails the change feed of that endpoint.
+	 */
+	<T> Optional<T> getIfPresent(String apiUrl, Class<T> clazz) {
+		return Optional
+				.ofNullable(getRequest(ensureDoesNotBeginsWithSlash(apiUrl), clazz, true, true).response.getResponse());
+	}
 
-		URL url = new URL(uri);
-		HttpURLConnection httpConnection = (HttpURLConnection) url.openConnection();
-		if (httpConnection instanceof HttpsURLConnection) {
-			HttpsURLConnection connection = (HttpsURLConnection) httpConnection;
-			connection.setSSLSocketFactory(generateSslContext().getSocketFactory());
-			connection.setHostnameVerifier((a, b) -> true);
-			connection.setRequestMethod(method);
+	private <T> ApiResponse<T> getFromReplica(String path, Class<T> clazz) {
+		if (replica == null) {
+			return null;
 		}
 
-		if (authorization != null) {
-			httpConnection.setRequestProperty(HEADER_AUTHORIZATION, authorization);
+		T resource = replica.get(path, clazz);
+
+		return resource != null ? new ApiResponse<T>(resource, null, null) : null;
+	}
+
+	/** Return the local replica, or empty if no repositories are replicated. */
+	public Optional<ZenHubMirrorReplica> getReplica() {
+		return Optional.ofNullable(replica);
+	}
+
+	/** Return the client-side cache, or empty if caching is disabled. */
+	public Optional<ZenHubMirrorClientCache> getCache() {
+		return Optional.ofNullable(cache);
+	}
+
+	/**
+	 * Change feed cursors (and the snapshots that they are read with) are specific
+	 * to a single mirror instance, so these requests are always sent to the
+	 * primary endpoint.
+	 */
+	private static boolean isFeedRequest(String path) {
+		return path.startsWith("changes?") || path.startsWith("snapshot/");
+	}
+
+	/**
+	 * @param notFoundAsNull if true, an HTTP 404 response returns a null response
+	 *                       object, rather than throwing an exception
+	 * @param primaryOnly    send the request to the primary endpoint, without
+	 *                       hedging
+	 */
+	private <T> EndpointResponse<T> getRequest(String requestUrlParam, Class<T> clazz, boolean notFoundAsNull,
+			boolean primaryOnly) {
+
+		ZenHubMirrorEndpoint endpoint = primaryOnly ? loadBalancer.getPrimary() : loadBalancer.select(null);
+
+		if (primaryOnly || !hedgedRequests || loadBalancer.size() < 2) {
+			return new EndpointResponse<>(endpoint, getRequest(endpoint, requestUrlParam, clazz, notFoundAsNull));
 		}
 
-		return httpConnection;
+		return getHedgedRequest(endpoint, requestUrlParam, clazz, notFoundAsNull);
 	}
 
-	private static String getBody(InputStream is) {
-		StringBuilder sb = new StringBuilder();
-		int c;
-		byte[] barr = new byte[1024 * 64];
+	/**
+	 * Send the request to the endpoint, on the calling thread; if it has not
+	 * completed within the hedge delay (the 95th percentile latency of the
+	 * endpoint), send a copy to another endpoint, and return whichever response
+	 * succeeds first. The slower request is aborted, if the transport supports it.
+	 * 
+	 * The copy runs on the asynchronous executor, and holds an in-flight permit
+	 * while it does; if no permit is available, the request is not hedged.
+	 */
+	private <T> EndpointResponse<T> getHedgedRequest(ZenHubMirrorEndpoint endpoint, String requestUrlParam,
+			Class<T> clazz, boolean notFoundAsNull) {
+
+		long hedgeDelayInNanos = endpoint.getLatencyPercentileInNanos(95);
+		if (hedgeDelayInNanos < 0) {
+			hedgeDelayInNanos = TimeUnit.NANOSECONDS.convert(DEFAULT_HEDGE_DELAY_IN_MSECS, TimeUnit.MILLISECONDS);
+		}
+
+		HedgedRequest<T> hedged = new HedgedRequest<>();
+
+		ScheduledFuture<?> hedgeTimer = hedgeScheduler.schedule(
+				() -> sendHedge(hedged, endpoint, requestUrlParam, clazz, notFoundAsNull), hedgeDelayInNanos,
+				TimeUnit.NANOSECONDS);
+
 		try {
-			while (-1 != (c = is.read(barr))) {
-				sb.append(new String(barr, 0, c));
-			}
-		} catch (IOException e) {
-			throw ZenHubApiException.createFromThrowable(e);
+			ApiResponse<T> response = getRequest(endpoint, requestUrlParam, clazz, notFoundAsNull, hedged.originalAbort);
+			hedged.succeeded(new EndpointResponse<>(endpoint, response), hedged.hedgeAbort);
+
+		} catch (RuntimeException e) {
+			hedged.failed(e);
+
+		} finally {
+			hedgeTimer.cancel(false);
+		}
+
+		try {
+			return hedged.result.get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw unwrap(e);
 		}
-		return sb.toString();
 	}
 
-	private static SSLContext generateSslContext() {
-		SSLContext sslContext = null;
+	/** Called by the hedge scheduler once the hedge delay of the request has elapsed. */
+	private <T> void sendHedge(HedgedRequest<T> hedged, ZenHubMirrorEndpoint endpoint, String requestUrlParam,
+			Class<T> clazz, boolean notFoundAsNull) {
+
+		if (!inFlightPermits.tryAcquire()) {
+			return;
+		}
+
+		if (!hedged.tryBeginHedge()) {
+			inFlightPermits.release();
+			return;
+		}
+
+		ZenHubMirrorEndpoint hedgeEndpoint = loadBalancer.select(endpoint);
+
 		try {
-			sslContext = SSLContext.getInstance("TLS");
-			sslContext.init(null, new TrustManager[] { new X509TrustManager() {
-				public void checkClientTrusted(X509Certificate[] arg0, String arg1) throws CertificateException {
-				}
+			asyncExecutor.execute(() -> {
+				try {
+					ApiResponse<T> response = getRequest(hedgeEndpoint, requestUrlParam, clazz, notFoundAsNull,
+							hedged.hedgeAbort);
+					hedged.succeeded(new EndpointResponse<>(hedgeEndpoint, response), hedged.originalAbort);
+
+				} catch (RuntimeException e) {
+					hedged.failed(e);
 
-				public void checkServerTrusted(X509Certificate[] arg0, String arg1) throws CertificateException {
+				} finally {
+					inFlightPermits.release();
 				}
+			});
+
+		} catch (RuntimeException e) {
+			// The executor rejected the task (eg the client was closed)
+			inFlightPermits.release();
+			hedged.failed(null);
+		}
+	}
 
-				public X509Certificate[] getAcceptedIssuers() {
+	private static RuntimeException unwrap(Exception e) {
+		if (e instanceof InterruptedException) {
+			Thread.currentThread().interrupt();
+			return ZenHubApiException.createFromThrowable(e);
+		}
 
-					return new X509Certificate[0];
-				}
+		Throwable cause = e.getCause();
+		while (cause instanceof CompletionException && cause.getCause() != null) {
+			cause = cause.getCause();
+		}
+
+		if (cause instanceof RuntimeException) {
+			return (RuntimeException) cause;
+		}
+
+		return ZenHubApiException.createFromThrowable(cause != null ? cause : e);
+	}
+
+	/**
+	 * The response is parsed directly from the InputStream with Jackson's
+	 * streaming parser (which detects the UTF-8 encoding), so the body is never
+	 * held in memory as text; as a result, ApiResponse.getResponseBody() is null.
+	 * 
+	 * The outcome is reported to the endpoint: connection failures, server errors
+	 * (5xx) and requests slower than the slow request threshold count towards
+	 * ejecting it.
+	 */
+	private <T> ApiResponse<T> getRequest(ZenHubMirrorEndpoint endpoint, String requestUrlParam, Class<T> clazz,
+			boolean notFoundAsNull) {
+		return getRequest(endpoint, requestUrlParam, clazz, notFoundAsNull, null);
+	}
+
+	/**
+	 * @param abort if non-null, the request may be aborted with it (in which case
+	 *              the failure does not count towards ejecting the endpoint)
+	 */
+	private <T> ApiResponse<T> getRequest(ZenHubMirrorEndpoint endpoint, String requestUrlParam, Class<T> clazz,
+			boolean notFoundAsNull, AbortHandle abort) {
+
+		requestUrlParam = ensureDoesNotBeginsWithSlash(requestUrlParam);
+
+		long startTimeInNanos = System.nanoTime();
+		long timeToFirstByteInNanos = -1;
+		long deserializationInNanos = -1;
+		int code = -1;
+		boolean ioFailure = true;
+		CountingInputStream body = null;
+
+		endpoint.requestStarted();
+
+		try (ZenHubMirrorTransportResponse response = transport.get(endpoint.getUrl() + "/" + requestUrlParam,
+				presharedKey, abort != null ? abort : a -> {
+				})) {
+
+			// The transport returns once the status line has been received
+			timeToFirstByteInNanos = System.nanoTime() - startTimeInNanos;
+
+			code = response.getStatusCode();
+			body = new CountingInputStream(response.getBody());
+
+			if (code == 404 && notFoundAsNull) {
+				ioFailure = false;
+				return new ApiResponse<T>(null, null, null);
+			}
+
+			if (code != 200) {
+				String errorBody = getBody(body);
+				ioFailure = false;
+				throw new ZenHubApiException("Request failed - HTTP Code: " + code + "  body: " + errorBody);
+			}
+
+			long deserializationStartInNanos = System.nanoTime();
+
+			T parsed = DEFAULT_OM.readValue(body, clazz);
+
+			deserializationInNanos = System.nanoTime() - deserializationStartInNanos;
+			ioFailure = false;
+
+			return new ApiResponse<T>(parsed, null, null);
 
-			} }, new java.security.SecureRandom());
-		} catch (Exception e) {
-			ZHUtil.throwAsUnchecked(e);
+		} catch (IOException e) {
+			throw ZenHubApiException.createFromThrowable(e);
+
+		} finally {
+			long latencyInNanos = System.nanoTime() - startTimeInNanos;
+
+			boolean aborted = abort != null && abort.isAborted();
+
+			endpoint.requestCompleted(latencyInNanos, (ioFailure && !aborted) || code >= 500
+					|| latencyInNanos > slowRequestThresholdInNanos);
+
+			if (!listeners.isEmpty()) {
+				notifyListeners(new ZenHubMirrorRequestEvent(endpoint.getUrl(), requestUrlParam, code, ioFailure,
+						body != null ? body.getCount() : 0, timeToFirstByteInNanos, deserializationInNanos,
+						latencyInNanos));
+			}
 		}
 
-		return sslContext;
+	}
+
+	private void notifyListeners(ZenHubMirrorRequestEvent event) {
+		for (ZenHubMirrorClientListener listener : listeners) {
+			try {
+				listener.requestCompleted(event);
+			} catch (Exception e) {
+				log.log(Level.WARNING, "Exception thrown by client listener.", e);
+			}
+		}
+	}
+
+	/** Read the (error) body as UTF-8 text. */
+	private static String getBody(InputStream is) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		int c;
+		byte[] barr = new byte[1024 * 64];
+		while (-1 != (c = is.read(barr))) {
+			baos.write(barr, 0, c);
+		}
+		return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Release any resources (eg pooled connections) held by the transport; no new
+	 * asynchronous requests are accepted.
+	 */
+	public void close() {
+		if (replica != null) {
+			replica.stop();
+		}
+		if (cacheInvalidator != null) {
+			cacheInvalidator.stopInvalidator();
+		}
+		asyncExecutor.shutdown();
+		hedgeScheduler.shutdownNow();
+		transport.close();
 	}
 
 	private static String ensureDoesNotBeginsWithSlash(String input) {
@@ -180,4 +574,289 @@ private static String ensureDoesNotEndWithSlash(String input) {
 
 	}
 
+	/** A response, and the endpoint that returned it. */
+	private static class EndpointResponse<T> {
+
+		private final ZenHubMirrorEndpoint endpoint;
+
+		private final ApiResponse<T> response;
+
+		EndpointResponse(ZenHubMirrorEndpoint endpoint, ApiResponse<T> response) {
+			this.endpoint = endpoint;
+			this.response = response;
+		}
+	}
+
+	/**
+	 * The state of a hedged request: the result is the first response to succeed,
+	 * or a failure once both the original and the hedge (if it was sent) have
+	 * failed.
+	 */
+	private static class HedgedRequest<T> {
+
+		private final Object lock = new Object();
+
+		private final CompletableFuture<EndpointResponse<T>> result = new CompletableFuture<>();
+
+		private final AbortHandle originalAbort = new AbortHandle();
+
+		private final AbortHandle hedgeAbort = new AbortHandle();
+
+		/** The number of requests (the original, and the hedge) that have not completed */
+		private int outstanding_synch_lock = 1;
+
+		private RuntimeException lastFailure_synch_lock = null;
+
+		/** Returns false if the hedge is not needed, as the original has completed. */
+		boolean tryBeginHedge() {
+			synchronized (lock) {
+				if (outstanding_synch_lock == 0 || result.isDone()) {
+					return false;
+				}
+				outstanding_synch_lock++;
+				return true;
+			}
+		}
+
+		/** If this is the first response, abort the other request. */
+		void succeeded(EndpointResponse<T> response, AbortHandle other) {
+			synchronized (lock) {
+				outstanding_synch_lock--;
+			}
+			if (result.complete(response)) {
+				other.abort();
+			}
+		}
+
+		/** @param e the failure, or null if the hedge could not be sent */
+		void failed(RuntimeException e) {
+			synchronized (lock) {
+				outstanding_synch_lock--;
+				if (e != null) {
+					lastFailure_synch_lock = e;
+				}
+				if (outstanding_synch_lock == 0 && lastFailure_synch_lock != null) {
+					result.completeExceptionally(lastFailure_synch_lock);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Passed to the transport, which registers the action that aborts the
+	 * request; if abort() was already called, the action runs immediately.
+	 */
+	private static class AbortHandle implements Consumer<Runnable> {
+
+		private final Object lock = new Object();
+
+		private Runnable action_synch_lock = null;
+
+		private boolean aborted_synch_lock = false;
+
+		@Override
+		public void accept(Runnable action) {
+			synchronized (lock) {
+				if (!aborted_synch_lock) {
+					action_synch_lock = action;
+					return;
+				}
+			}
+			action.run();
+		}
+
+		void abort() {
+			Runnable action;
+			synchronized (lock) {
+				aborted_synch_lock = true;
+				action = action_synch_lock;
+			}
+			if (action != null) {
+				action.run();
+			}
+		}
+
+		boolean isAborted() {
+			synchronized (lock) {
+				return aborted_synch_lock;
+			}
+		}
+	}
+
+	/** Counts the bytes read from the response body. */
+	private static class CountingInputStream extends FilterInputStream {
+
+		private long count = 0;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int result = super.read();
+			if (result != -1) {
+				count++;
+			}
+			return result;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int result = super.read(b, off, len);
+			if (result > 0) {
+				count += result;
+			}
+			return result;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long result = super.skip(n);
+			count += result;
+			return result;
+		}
+
+		@Override
+		public void close() {
+			// The response is closed (and drained) by its owner
+		}
+
+		long getCount() {
+			return count;
+		}
+	}
+
+	/** Used to construct an instance of ZenHubMirrorApiClient. */
+	public static class ZenHubMirrorApiClientBuilder {
+
+		private final List<String> apiUrls = new ArrayList<>();
+		private String presharedKey;
+		private ZenHubMirrorTransport transport;
+		private int maxInFlightRequests = 64;
+		private int cacheSize = 0;
+		private long cacheInvalidationPollIntervalInMsecs = 5 * 1000;
+		private final List<Long> replicatedRepositories = new ArrayList<>();
+		private long replicaPollIntervalInMsecs = 1000;
+		private boolean hedgedRequests = false;
+		private int maxConsecutiveFailures = 3;
+		private final List<ZenHubMirrorClientListener> listeners = new ArrayList<>();
+		private long ejectionTimeInMsecs = 30 * 1000;
+		private long slowRequestThresholdInMsecs = 10 * 1000;
+
+		private ZenHubMirrorApiClientBuilder() {
+		}
+
+		/** The URL of the mirror service, beginning with http:// or https:// */
+		public ZenHubMirrorApiClientBuilder apiUrl(String apiUrl) {
+			return apiUrls(Collections.singletonList(apiUrl));
+		}
+
+		/**
+		 * The URLs of multiple instances of the mirror service (mirroring the same
+		 * repositories), beginning with http:// or https://; requests are balanced
+		 * between them. The first URL is the primary: change feed requests (and so
+		 * the cache invalidator and replica) always use it, and only its responses
+		 * are cached.
+		 */
+		public ZenHubMirrorApiClientBuilder apiUrls(List<String> apiUrls) {
+			this.apiUrls.clear();
+			this.apiUrls.addAll(apiUrls);
+			return this;
+		}
+
+		public ZenHubMirrorApiClientBuilder presharedKey(String presharedKey) {
+			this.presharedKey = presharedKey;
+			return this;
+		}
+
+		/** Defaults to a ZenHubMirrorUrlConnectionTransport. */
+		public ZenHubMirrorApiClientBuilder transport(ZenHubMirrorTransport transport) {
+			this.transport = transport;
+			return this;
+		}
+
+		/** The maximum number of asynchronous requests that may be in flight at once (default: 64). */
+		public ZenHubMirrorApiClientBuilder maxInFlightRequests(int maxInFlightRequests) {
+			this.maxInFlightRequests = maxInFlightRequests;
+			return this;
+		}
+
+		/**
+		 * The maximum number of resources to cache in memory; the cache is kept up to
+		 * date by tailing the change feed of the mirror. 0 disables the cache (the
+		 * default).
+		 */
+		public ZenHubMirrorApiClientBuilder cacheSize(int cacheSize) {
+			this.cacheSize = cacheSize;
+			return this;
+		}
+
+		/** How often the change feed is polled to invalidate cache entries (default: 5 seconds). */
+		public ZenHubMirrorApiClientBuilder cacheInvalidationPollIntervalInMsecs(long msecs) {
+			this.cacheInvalidationPollIntervalInMsecs = msecs;
+			return this;
+		}
+
+		/**
+		 * Maintain a local replica of all the resources of the given repositories,
+		 * which is bootstrapped from a snapshot and then kept up to date by tailing the
+		 * change feed of the mirror (see ZenHubMirrorReplica).
+		 */
+		public ZenHubMirrorApiClientBuilder replicatedRepositories(Collection<Long> repoIds) {
+			this.replicatedRepositories.addAll(repoIds);
+			return this;
+		}
+
+		/** How often the change feed is polled to update the replica (default: 1 second). */
+		public ZenHubMirrorApiClientBuilder replicaPollIntervalInMsecs(long msecs) {
+			this.replicaPollIntervalInMsecs = msecs;
+			return this;
+		}
+
+		/**
+		 * Whether requests that have not completed within the 95th percentile latency
+		 * of their endpoint are hedged, by sending a copy to another endpoint (default:
+		 * false). Only applies if there are multiple endpoints.
+		 */
+		public ZenHubMirrorApiClientBuilder hedgedRequests(boolean hedgedRequests) {
+			this.hedgedRequests = hedgedRequests;
+			return this;
+		}
+
+		/** The number of consecutive failed (or slow) requests after which an endpoint is ejected (default: 3). */
+		public ZenHubMirrorApiClientBuilder maxConsecutiveFailures(int maxConsecutiveFailures) {
+			this.maxConsecutiveFailures = maxConsecutiveFailures;
+			return this;
+		}
+
+		/**
+		 * How long an endpoint is initially ejected for; this doubles on each
+		 * consecutive ejection, up to 16 times (default: 30 seconds).
+		 */
+		public ZenHubMirrorApiClientBuilder ejectionTimeInMsecs(long msecs) {
+			this.ejectionTimeInMsecs = msecs;
+			return this;
+		}
+
+		/** Requests that take longer than this count as failures of the endpoint (default: 10 seconds). */
+		public ZenHubMirrorApiClientBuilder slowRequestThresholdInMsecs(long msecs) {
+			this.slowRequestThresholdInMsecs = msecs;
+			return this;
+		}
+
+		/**
+		 * Add a listener that receives the timing of each request sent to a mirror
+		 * endpoint (for example, a ZenHubMirrorClientMetrics).
+		 */
+		public ZenHubMirrorApiClientBuilder listener(ZenHubMirrorClientListener listener) {
+			this.listeners.add(listener);
+			return this;
+		}
+
+		public ZenHubMirrorApiClient build() {
+			return new ZenHubMirrorApiClient(this);
+		}
+	}
+
 }
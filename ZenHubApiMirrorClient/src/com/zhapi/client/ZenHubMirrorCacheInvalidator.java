@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapi.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A background thread that tails the change feed of the mirror, and
+ * invalidates the corresponding entries of a ZenHubMirrorClientCache.
+ * 
+ * The feed is read from its current position at startup (older events cannot
+ * affect a cache that starts empty). If the feed cannot be read, or reports
+ * that events were missed, the entire cache is invalidated, since changes
+ * during that time are unknown.
+ */
+class ZenHubMirrorCacheInvalidator extends Thread {
+
+	private final ZenHubMirrorEventsService eventsService;
+
+	private final ZenHubMirrorClientCache cache;
+
+	private final long pollIntervalInMsecs;
+
+	private volatile boolean running = true;
+
+	private static final Logger log = Logger.getLogger(ZenHubMirrorCacheInvalidator.class.getName());
+
+	ZenHubMirrorCacheInvalidator(ZenHubMirrorEventsService eventsService, ZenHubMirrorClientCache cache,
+			long pollIntervalInMsecs) {
+
+		setName(ZenHubMirrorCacheInvalidator.class.getName());
+		setDaemon(true);
+
+		this.eventsService = eventsService;
+		this.cache = cache;
+		this.pollIntervalInMsecs = pollIntervalInMsecs;
+	}
+
+	@Override
+	public void run() {
+
+		ZenHubMirrorChangeFeed feed = null;
+
+		while (running) {
+			try {
+
+				if (feed == null) {
+					long cursor = eventsService.getHeadCursor();
+					feed = new ZenHubMirrorChangeFeed(eventsService, cursor);
+
+					// Anything cached before the cursor was known may already be stale.
+					cache.invalidateAll();
+				}
+
+				if (feed.poll(cache::invalidate)) {
+					cache.invalidateAll();
+				}
+
+			} catch (Exception e) {
+				if (!running) {
+					break;
+				}
+				log.log(Level.WARNING, "Unable to read the change feed of the mirror, invalidating the cache.", e);
+				cache.invalidateAll();
+			}
+
+			try {
+				TimeUnit.MILLISECONDS.sleep(pollIntervalInMsecs);
+			} catch (InterruptedException e) {
+				/* ignore: running flag is checked */
+			}
+		}
+	}
+
+	void stopInvalidator() {
+		running = false;
+		this.interrupt();
+	}
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapi.client;
+
+import java.util.function.Consumer;
+
+import com.zhapi.shared.json.ChangeFeedResponseJson;
+import com.zhapi.shared.json.RepositoryChangeEventJson;
+
+/**
+ * Reads the change feed of the mirror from a cursor, delivering each event to
+ * the caller exactly once.
+ * 
+ * The cursor advances only after an event has been processed without throwing
+ * an exception; callers that need to resume after a restart should persist
+ * getCursor() (eg after each poll) and pass it to the constructor.
+ * 
+ * This class is not thread safe.
+ */
+public class ZenHubMirrorChangeFeed {
+
+	private static final int DEFAULT_PAGE_SIZE = 100;
+
+	private final ZenHubMirrorEventsService eventsService;
+
+	private final int pageSize;
+
+	private long cursor;
+
+	public ZenHubMirrorChangeFeed(ZenHubMirrorEventsService eventsService, long initialCursor) {
+		this(eventsService, initialCursor, DEFAULT_PAGE_SIZE);
+	}
+
+	public ZenHubMirrorChangeFeed(ZenHubMirrorEventsService eventsService, long initialCursor, int pageSize) {
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("Invalid page size: " + pageSize);
+		}
+
+		this.eventsService = eventsService;
+		this.cursor = initialCursor;
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Pass each event after the cursor to the consumer, in order, until no more
+	 * events are available.
+	 * 
+	 * @return true if the mirror reported that events after the cursor were
+	 *         missed (they expired, or the mirror database was replaced), in which
+	 *         case the caller should re-read any state that it derives from the
+	 *         feed
+	 */
+	public boolean poll(Consumer<RepositoryChangeEventJson> consumer) {
+
+		boolean resyncRequired = false;
+
+		ChangeFeedResponseJson page;
+		do {
+			page = eventsService.getChanges(cursor, pageSize);
+
+			resyncRequired |= page.isResyncRequired();
+
+			for (RepositoryChangeEventJson event : page.getEvents()) {
+				consumer.accept(event);
+				cursor = event.getSeq();
+			}
+
+			// Skip past a cursor that the mirror no longer recognizes
+			cursor = page.getNextCursor();
+
+		} while (page.isHasMore());
+
+		return resyncRequired;
+	}
+
+	/** The sequence number of the last event that was processed. */
+	public long getCursor() {
+		return cursor;
+	}
+
+}
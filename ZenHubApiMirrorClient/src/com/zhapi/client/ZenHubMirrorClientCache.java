@@ -0,0 +1,211 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapi.client;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.zhapi.ApiResponse;
+import com.zhapi.shared.json.RepositoryChangeEventJson;
+
+/**
+ * A bounded, least-recently-used cache of the resources returned by the
+ * mirror, keyed by request path (eg 'board/(repo id)').
+ * 
+ * Entries are invalidated by ZenHubMirrorCacheInvalidator, which tails the
+ * change feed of the mirror: an event that identifies a resource invalidates
+ * only that resource, while an event without a resource type invalidates every
+ * resource of the repository.
+ * 
+ * To ensure that a response that was requested before an invalidation is not
+ * cached after it, callers obtain a generation before issuing the request, and
+ * pass it to put(...); the response is discarded if an invalidation occurred in
+ * the meantime.
+ * 
+ * This class is thread safe.
+ */
+public class ZenHubMirrorClientCache {
+
+	private final Object lock = new Object();
+
+	private final LinkedHashMap<String, ApiResponse<?>> entries_synch_lock;
+
+	/** repo id -> keys of the cached resources of that repository */
+	private final Map<Long, Set<String>> keysByRepo_synch_lock = new HashMap<>();
+
+	/** Incremented on every invalidation */
+	private long generation_synch_lock = 0;
+
+	private long hits_synch_lock = 0;
+
+	private long misses_synch_lock = 0;
+
+	public ZenHubMirrorClientCache(int maxEntries) {
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("Invalid cache size: " + maxEntries);
+		}
+
+		this.entries_synch_lock = new LinkedHashMap<String, ApiResponse<?>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, ApiResponse<?>> eldest) {
+				if (size() > maxEntries) {
+					removeFromRepoIndex(eldest.getKey());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/** Return the cached response for the request path, or null if there is none. */
+	@SuppressWarnings("unchecked")
+	public <T> ApiResponse<T> get(String path) {
+		synchronized (lock) {
+			ApiResponse<T> result = (ApiResponse<T>) entries_synch_lock.get(path);
+			if (result != null) {
+				hits_synch_lock++;
+			} else {
+				misses_synch_lock++;
+			}
+			return result;
+		}
+	}
+
+	/** Call before issuing a request whose response will be passed to put(...). */
+	public long getGeneration() {
+		synchronized (lock) {
+			return generation_synch_lock;
+		}
+	}
+
+	/**
+	 * Cache the response, unless the path is not a cacheable resource, or an
+	 * invalidation occurred since the given generation.
+	 */
+	public void put(String path, ApiResponse<?> response, long generation) {
+		Long repoId = getRepoId(path);
+		if (repoId == null) {
+			return;
+		}
+
+		synchronized (lock) {
+			if (generation != generation_synch_lock) {
+				return;
+			}
+
+			entries_synch_lock.put(path, response);
+			keysByRepo_synch_lock.computeIfAbsent(repoId, e -> new HashSet<>()).add(path);
+		}
+	}
+
+	/** Invalidate the resource(s) identified by the change event. */
+	public void invalidate(RepositoryChangeEventJson event) {
+		String resourceType = event.getResourceType();
+
+		synchronized (lock) {
+			generation_synch_lock++;
+
+			if (resourceType == null) {
+				Set<String> keys = keysByRepo_synch_lock.remove(event.getRepoId());
+				if (keys != null) {
+					keys.forEach(entries_synch_lock::remove);
+				}
+				return;
+			}
+
+			// The request paths of the mirror service match the resource types of the
+			// change events.
+			String key = resourceType + "/" + event.getRepoId()
+					+ (event.getIssueNumber() != null ? "/" + event.getIssueNumber() : "");
+
+			entries_synch_lock.remove(key);
+			removeFromRepoIndex(key);
+		}
+	}
+
+	/** Remove every entry (for example, after events may have been missed). */
+	public void invalidateAll() {
+		synchronized (lock) {
+			generation_synch_lock++;
+			entries_synch_lock.clear();
+			keysByRepo_synch_lock.clear();
+		}
+	}
+
+	public long getHits() {
+		synchronized (lock) {
+			return hits_synch_lock;
+		}
+	}
+
+	public long getMisses() {
+		synchronized (lock) {
+			return misses_synch_lock;
+		}
+	}
+
+	/** Must be called with the lock held. */
+	private void removeFromRepoIndex(String key) {
+		Long repoId = getRepoId(key);
+		if (repoId == null) {
+			return;
+		}
+
+		Set<String> keys = keysByRepo_synch_lock.get(repoId);
+		if (keys != null) {
+			keys.remove(key);
+			if (keys.isEmpty()) {
+				keysByRepo_synch_lock.remove(repoId);
+			}
+		}
+	}
+
+	/**
+	 * Return the repository id of a resource path ('(resource type)/(repo
+	 * id)[/(issue number)]'), or null if the path is not a cacheable resource.
+	 */
+	private static Long getRepoId(String path) {
+		String[] components = path.split("/");
+		if (components.length < 2 || components.length > 3 || components[1].contains("?")) {
+			return null;
+		}
+
+		switch (components[0]) {
+		case RepositoryChangeEventJson.RESOURCE_BOARD:
+		case RepositoryChangeEventJson.RESOURCE_EPICS:
+		case RepositoryChangeEventJson.RESOURCE_EPIC:
+		case RepositoryChangeEventJson.RESOURCE_DEPENDENCIES:
+		case RepositoryChangeEventJson.RESOURCE_ISSUE_DATA:
+		case RepositoryChangeEventJson.RESOURCE_ISSUE_EVENTS:
+			break;
+		default:
+			return null;
+		}
+
+		try {
+			return Long.parseLong(components[1]);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+package com.zhapi.client;
+
+/**
+ * Receives the timing of each request that ZenHubMirrorApiClient sends to a
+ * mirror endpoint (requests served from the cache or replica are not sent, and
+ * so are not reported). Register with
+ * ZenHubMirrorApiClientBuilder.listener(...); ZenHubMirrorClientMetrics is a
+ * listener that aggregates the requests into histograms.
+ * 
+ * Listeners are called on the thread that issued the request (or a thread of
+ * the client, for asynchronous and hedged requests), so must be thread safe,
+ * and should return quickly. Exceptions thrown by a listener are logged and
+ * ignored.
+ */
+public interface ZenHubMirrorClientListener {
+
+	public void requestCompleted(ZenHubMirrorRequestEvent event);
+
+}
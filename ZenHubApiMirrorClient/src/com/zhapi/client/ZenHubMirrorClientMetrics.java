@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+package com.zhapi.client;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A ZenHubMirrorClientListener that aggregates the requests of the client by
+ * endpoint (see ZenHubMirrorEndpointMetrics). The metrics may be read directly,
+ * or periodically passed to a ZenHubMirrorMetricsExporter.
+ * 
+ * Example:
+ * 
+ * ZenHubMirrorClientMetrics metrics = new ZenHubMirrorClientMetrics();
+ * 
+ * ZenHubMirrorApiClient client = ZenHubMirrorApiClient.builder().apiUrl(...).listener(metrics).build();
+ * 
+ * metrics.startExporter(m -> System.out.println(metrics), 60 * 1000);
+ * 
+ * This class is thread safe.
+ */
+public class ZenHubMirrorClientMetrics implements ZenHubMirrorClientListener {
+
+	private final Map<String, ZenHubMirrorEndpointMetrics> metricsByEndpoint = new ConcurrentHashMap<>();
+
+	private final Object lock = new Object();
+
+	private ScheduledExecutorService exporterExecutor_synch_lock;
+
+	private static final Logger log = Logger.getLogger(ZenHubMirrorClientMetrics.class.getName());
+
+	@Override
+	public void requestCompleted(ZenHubMirrorRequestEvent event) {
+		metricsByEndpoint.computeIfAbsent(event.getEndpointUrl(), e -> new ZenHubMirrorEndpointMetrics()).record(event);
+	}
+
+	/** Endpoint URL -> the metrics of the requests sent to that endpoint. */
+	public Map<String, ZenHubMirrorEndpointMetrics> getMetricsByEndpoint() {
+		return Collections.unmodifiableMap(new TreeMap<>(metricsByEndpoint));
+	}
+
+	/**
+	 * Pass the metrics to the exporter every intervalInMsecs, on a daemon thread,
+	 * until stopExporter() is called. Only one exporter may be active at a time.
+	 */
+	public void startExporter(ZenHubMirrorMetricsExporter exporter, long intervalInMsecs) {
+		if (intervalInMsecs <= 0) {
+			throw new IllegalArgumentException("Invalid export interval: " + intervalInMsecs);
+		}
+
+		synchronized (lock) {
+			if (exporterExecutor_synch_lock != null) {
+				throw new IllegalStateException("An exporter is already active.");
+			}
+
+			exporterExecutor_synch_lock = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, ZenHubMirrorClientMetrics.class.getName() + "-exporter");
+				t.setDaemon(true);
+				return t;
+			});
+
+			exporterExecutor_synch_lock.scheduleWithFixedDelay(() -> {
+				try {
+					exporter.export(getMetricsByEndpoint());
+				} catch (Exception e) {
+					// An exception would otherwise cancel all future exports
+					log.log(Level.WARNING, "Unable to export client metrics.", e);
+				}
+			}, intervalInMsecs, intervalInMsecs, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public void stopExporter() {
+		synchronized (lock) {
+			if (exporterExecutor_synch_lock != null) {
+				exporterExecutor_synch_lock.shutdownNow();
+				exporterExecutor_synch_lock = null;
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		getMetricsByEndpoint().forEach((url, metrics) -> sb.append(url + ": " + metrics + "\n"));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+package com.zhapi.client;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * A single mirror instance that requests may be sent to, with the number of
+ * requests currently outstanding to it, the latencies of its recent requests,
+ * and its health.
+ * 
+ * Health is checked passively: after a number of consecutive failed (or slow)
+ * requests the endpoint is ejected, and receives no requests until the
+ * ejection time has elapsed. The ejection time doubles on each consecutive
+ * ejection, up to a maximum, and is reset by a successful request.
+ * 
+ * This class is thread safe.
+ */
+class ZenHubMirrorEndpoint {
+
+	/** The number of recent request latencies used to compute the percentile */
+	private static final int LATENCY_WINDOW_SIZE = 128;
+
+	/** The percentile is not computed until this many requests have completed */
+	private static final int MIN_LATENCY_SAMPLES = 16;
+
+	private static final int MAX_EJECTION_MULTIPLIER = 16;
+
+	private static final Logger log = Logger.getLogger(ZenHubMirrorEndpoint.class.getName());
+
+	private final String url; // Will not end with a slash, will begin with http(s)://
+
+	private final int maxConsecutiveFailures;
+
+	private final long baseEjectionTimeInMsecs;
+
+	private final AtomicInteger outstanding = new AtomicInteger();
+
+	private final Object lock = new Object();
+
+	/** Ring buffer of the latencies of recent requests, in nanoseconds */
+	private final long[] latenciesInNanos_synch_lock = new long[LATENCY_WINDOW_SIZE];
+
+	private long latencyCount_synch_lock = 0;
+
+	private int consecutiveFailures_synch_lock = 0;
+
+	private int consecutiveEjections_synch_lock = 0;
+
+	/** System.nanoTime() at which the ejection ends, or null if not ejected */
+	private Long ejectedUntilInNanos_synch_lock = null;
+
+	ZenHubMirrorEndpoint(String url, int maxConsecutiveFailures, long baseEjectionTimeInMsecs) {
+		this.url = url;
+		this.maxConsecutiveFailures = maxConsecutiveFailures;
+		this.baseEjectionTimeInMsecs = baseEjectionTimeInMsecs;
+	}
+
+	String getUrl() {
+		return url;
+	}
+
+	int getOutstanding() {
+		return outstanding.get();
+	}
+
+	/** Called before a request is sent to the endpoint. */
+	void requestStarted() {
+		outstanding.incrementAndGet();
+	}
+
+	/**
+	 * Called after a request to the endpoint completes (or fails).
+	 * 
+	 * @param failed whether the request failed, or was slower than the slow
+	 *               request threshold
+	 */
+	void requestCompleted(long latencyInNanos, boolean failed) {
+		outstanding.decrementAndGet();
+
+		long ejectionTimeInMsecs;
+
+		synchronized (lock) {
+			latenciesInNanos_synch_lock[(int) (latencyCount_synch_lock % LATENCY_WINDOW_SIZE)] = latencyInNanos;
+			latencyCount_synch_lock++;
+
+			if (!failed) {
+				consecutiveFailures_synch_lock = 0;
+				consecutiveEjections_synch_lock = 0;
+				return;
+			}
+
+			consecutiveFailures_synch_lock++;
+			if (consecutiveFailures_synch_lock < maxConsecutiveFailures || ejectedUntilInNanos_synch_lock != null) {
+				return;
+			}
+
+			int multiplier = Math.min(1 << Math.min(consecutiveEjections_synch_lock, 30), MAX_EJECTION_MULTIPLIER);
+			ejectionTimeInMsecs = baseEjectionTimeInMsecs * multiplier;
+
+			ejectedUntilInNanos_synch_lock = System.nanoTime()
+					+ TimeUnit.NANOSECONDS.convert(ejectionTimeInMsecs, TimeUnit.MILLISECONDS);
+			consecutiveEjections_synch_lock++;
+			consecutiveFailures_synch_lock = 0;
+		}
+
+		log.warning("Mirror endpoint " + url + " is failing, ejecting for " + ejectionTimeInMsecs + " msecs.");
+	}
+
+	/** Whether the endpoint is eligible to receive requests (it is not ejected). */
+	boolean isHealthy() {
+		synchronized (lock) {
+			if (ejectedUntilInNanos_synch_lock == null) {
+				return true;
+			}
+
+			if (System.nanoTime() - ejectedUntilInNanos_synch_lock >= 0) {
+				// Ejection has elapsed: the next request is a trial, and one more failure
+				// ejects the endpoint again (for longer).
+				ejectedUntilInNanos_synch_lock = null;
+				consecutiveFailures_synch_lock = maxConsecutiveFailures - 1;
+				return true;
+			}
+
+			return false;
+		}
+	}
+
+	/**
+	 * Return the given percentile (0-100) of the latencies of recent requests, in
+	 * nanoseconds, or -1 if too few requests have completed.
+	 */
+	long getLatencyPercentileInNanos(int percentile) {
+		long[] sorted;
+		synchronized (lock) {
+			if (latencyCount_synch_lock < MIN_LATENCY_SAMPLES) {
+				return -1;
+			}
+			int size = (int) Math.min(latencyCount_synch_lock, LATENCY_WINDOW_SIZE);
+			sorted = Arrays.copyOf(latenciesInNanos_synch_lock, size);
+		}
+
+		Arrays.sort(sorted);
+
+		int index = (int) Math.ceil(percentile / 100d * sorted.length) - 1;
+
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+	}
+
+	@Override
+	public String toString() {
+		return url;
+	}
+}
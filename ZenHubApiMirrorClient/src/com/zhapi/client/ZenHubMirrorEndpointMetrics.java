@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+package com.zhapi.client;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The requests sent to a single mirror endpoint, as aggregated by
+ * ZenHubMirrorClientMetrics: request/failure/byte counts, and histograms of
+ * time to first byte, total latency and deserialization time.
+ * 
+ * This class is thread safe.
+ */
+public class ZenHubMirrorEndpointMetrics {
+
+	private final LongAdder requests = new LongAdder();
+
+	private final LongAdder failures = new LongAdder();
+
+	private final LongAdder bytesRead = new LongAdder();
+
+	private final ZenHubMirrorLatencyHistogram timeToFirstByte = new ZenHubMirrorLatencyHistogram();
+
+	private final ZenHubMirrorLatencyHistogram totalLatency = new ZenHubMirrorLatencyHistogram();
+
+	private final ZenHubMirrorLatencyHistogram deserialization = new ZenHubMirrorLatencyHistogram();
+
+	void record(ZenHubMirrorRequestEvent event) {
+		requests.increment();
+		if (event.isFailed()) {
+			failures.increment();
+		}
+		bytesRead.add(event.getBytesRead());
+
+		if (event.getTimeToFirstByteInNanos() >= 0) {
+			timeToFirstByte.record(event.getTimeToFirstByteInNanos());
+		}
+		if (event.getDeserializationInNanos() >= 0) {
+			deserialization.record(event.getDeserializationInNanos());
+		}
+		totalLatency.record(event.getTotalLatencyInNanos());
+	}
+
+	public long getRequests() {
+		return requests.sum();
+	}
+
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+
+	public ZenHubMirrorLatencyHistogram getTimeToFirstByte() {
+		return timeToFirstByte;
+	}
+
+	public ZenHubMirrorLatencyHistogram getTotalLatency() {
+		return totalLatency;
+	}
+
+	public ZenHubMirrorLatencyHistogram getDeserialization() {
+		return deserialization;
+	}
+
+	@Override
+	public String toString() {
+		return "requests=" + getRequests() + " failures=" + getFailures() + " bytes=" + getBytesRead() + "\n  ttfb: "
+				+ timeToFirstByte + "\n  total: " + totalLatency + "\n  deserialization: " + deserialization;
+	}
+}
@@ -21,6 +21,7 @@
 import java.util.List;
 
 import com.zhapi.ApiResponse;
+import com.zhapi.shared.json.ChangeFeedResponseJson;
 import com.zhapi.shared.json.RepositoryChangeEventJson;
 
 public class ZenHubMirrorEventsService {
@@ -44,4 +45,30 @@ public List<RepositoryChangeEventJson> getResourceChangeEvents(long timestampEqu
 
 	}
 
+	/**
+	 * Return up to 'limit' change events after the given cursor (0 to read from the
+	 * start of the feed). To resume reading the feed exactly once, process the
+	 * returned events, store the returned nextCursor, and pass it as the cursor of
+	 * the next call.
+	 */
+	public ChangeFeedResponseJson getChanges(long afterCursor, int limit) {
+
+		ApiResponse<ChangeFeedResponseJson> response = zenhubClient
+				.get("/changes?after=" + afterCursor + "&limit=" + limit, ChangeFeedResponseJson.class);
+
+		return response.getResponse();
+	}
+
+	/**
+	 * Return the current position of the change feed (the sequence number of the
+	 * most recent event); a feed read from this cursor will see every subsequent
+	 * change.
+	 */
+	public long getHeadCursor() {
+
+		ApiResponse<ChangeFeedResponseJson> response = zenhubClient.get("/changes/head", ChangeFeedResponseJson.class);
+
+		return response.getResponse().getHeadCursor();
+	}
+
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+package com.zhapi.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations, in the style of HdrHistogram: values are recorded
+ * (in microseconds) into log-linear buckets, with 16 linear sub-buckets per
+ * power of two, so that percentiles are accurate to within 1/16 (6.25%) of the
+ * value across the full range (from microseconds to hours), in a fixed amount
+ * of memory.
+ * 
+ * Recording is lock-free. Percentiles are computed from a (not necessarily
+ * atomic) view of the buckets, which is sufficient for monitoring.
+ * 
+ * This class is thread safe.
+ */
+public class ZenHubMirrorLatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/** Values below SUB_BUCKETS have their own bucket; above, 16 buckets per power of two (up to 2^63) */
+	private static final int BUCKETS = SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	private final LongAdder totalCount = new LongAdder();
+
+	private final LongAdder totalInMicros = new LongAdder();
+
+	private final AtomicLong maxInMicros = new AtomicLong();
+
+	/** Record a duration; negative durations are recorded as 0. */
+	public void record(long durationInNanos) {
+		long micros = Math.max(0, TimeUnit.MICROSECONDS.convert(durationInNanos, TimeUnit.NANOSECONDS));
+
+		counts.incrementAndGet(getBucket(micros));
+		totalCount.increment();
+		totalInMicros.add(micros);
+		maxInMicros.accumulateAndGet(micros, Math::max);
+	}
+
+	public long getCount() {
+		return totalCount.sum();
+	}
+
+	public long getMaxInMicros() {
+		return maxInMicros.get();
+	}
+
+	public double getMeanInMicros() {
+		long count = getCount();
+		return count > 0 ? (double) totalInMicros.sum() / count : 0;
+	}
+
+	/**
+	 * Return the value at the given percentile (0-100), in microseconds, as the
+	 * highest value of the bucket that contains it (or 0 if nothing has been
+	 * recorded).
+	 */
+	public long getPercentileInMicros(double percentile) {
+
+		long[] snapshot = new long[BUCKETS];
+		long count = 0;
+		for (int x = 0; x < BUCKETS; x++) {
+			snapshot[x] = counts.get(x);
+			count += snapshot[x];
+		}
+
+		if (count == 0) {
+			return 0;
+		}
+
+		long target = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100d * count));
+
+		long seen = 0;
+		for (int x = 0; x < BUCKETS; x++) {
+			seen += snapshot[x];
+			if (seen >= target) {
+				return Math.min(getBucketHighestValue(x), getMaxInMicros());
+			}
+		}
+
+		return getMaxInMicros();
+	}
+
+	private static int getBucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BUCKET_BITS
+		int shift = exponent - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) - SUB_BUCKETS; // 0 to SUB_BUCKETS-1
+
+		return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+	}
+
+	private static long getBucketHighestValue(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+
+		int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+		long subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+
+		long lowest = (SUB_BUCKETS + subBucket) << shift;
+
+		return lowest + (1l << shift) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + getCount() + " p50=" + getPercentileInMicros(50) + "us p95=" + getPercentileInMicros(95)
+				+ "us p99=" + getPercentileInMicros(99) + "us max=" + getMaxInMicros() + "us";
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+package com.zhapi.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Selects the mirror endpoint that a request is sent to: the healthy endpoint
+ * with the fewest outstanding requests (ties are broken randomly, so that
+ * idle endpoints share the load).
+ * 
+ * If every endpoint has been ejected, requests are sent to all of them (again
+ * by fewest outstanding requests), rather than failing outright.
+ * 
+ * This class is thread safe.
+ */
+class ZenHubMirrorLoadBalancer {
+
+	private final List<ZenHubMirrorEndpoint> endpoints;
+
+	ZenHubMirrorLoadBalancer(List<ZenHubMirrorEndpoint> endpoints) {
+		if (endpoints.isEmpty()) {
+			throw new IllegalArgumentException("At least one endpoint is required.");
+		}
+		this.endpoints = Collections.unmodifiableList(new ArrayList<>(endpoints));
+	}
+
+	/**
+	 * Return the endpoint to send a request to, or null if there is no endpoint
+	 * other than the excluded one.
+	 * 
+	 * @param exclude an endpoint that must not be returned (eg the endpoint the
+	 *                original of a hedged request was sent to), or null
+	 */
+	ZenHubMirrorEndpoint select(ZenHubMirrorEndpoint exclude) {
+
+		ZenHubMirrorEndpoint result = select(exclude, true);
+		if (result == null) {
+			result = select(exclude, false);
+		}
+
+		return result;
+	}
+
+	private ZenHubMirrorEndpoint select(ZenHubMirrorEndpoint exclude, boolean healthyOnly) {
+
+		ZenHubMirrorEndpoint result = null;
+		int resultOutstanding = Integer.MAX_VALUE;
+		int ties = 0;
+
+		for (ZenHubMirrorEndpoint endpoint : endpoints) {
+			if (endpoint == exclude || (healthyOnly && !endpoint.isHealthy())) {
+				continue;
+			}
+
+			int outstanding = endpoint.getOutstanding();
+			if (outstanding < resultOutstanding) {
+				result = endpoint;
+				resultOutstanding = outstanding;
+				ties = 1;
+
+			} else if (outstanding == resultOutstanding) {
+				// Reservoir sampling: each of the tied endpoints is equally likely
+				ties++;
+				if (ThreadLocalRandom.current().nextInt(ties) == 0) {
+					result = endpoint;
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * The first configured endpoint; requests whose responses depend on the
+	 * state of a specific mirror instance (such as change feed cursors) are
+	 * always sent here.
+	 */
+	ZenHubMirrorEndpoint getPrimary() {
+		return endpoints.get(0);
+	}
+
+	int size() {
+		return endpoints.size();
+	}
+
+	List<ZenHubMirrorEndpoint> getEndpoints() {
+		return endpoints;
+	}
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+package com.zhapi.client;
+
+import java.util.Map;
+
+/**
+ * Periodically receives the metrics collected by ZenHubMirrorClientMetrics, for
+ * example to publish them to a monitoring system; see
+ * ZenHubMirrorClientMetrics.startExporter(...).
+ */
+public interface ZenHubMirrorMetricsExporter {
+
+	/**
+	 * @param metricsByEndpoint endpoint URL -> the metrics of that endpoint
+	 *                          (cumulative since the metrics were created)
+	 */
+	public void export(Map<String, ZenHubMirrorEndpointMetrics> metricsByEndpoint);
+
+}
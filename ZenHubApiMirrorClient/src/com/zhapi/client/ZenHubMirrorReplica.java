@@ -0,0 +1,327 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapi.client;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.zhapi.json.IssueEventJson;
+import com.zhapi.json.responses.DependenciesForARepoResponseJson;
+import com.zhapi.json.responses.GetBoardForRepositoryResponseJson;
+import com.zhapi.json.responses.GetEpicResponseJson;
+import com.zhapi.json.responses.GetEpicsResponseJson;
+import com.zhapi.json.responses.GetIssueDataResponseJson;
+import com.zhapi.shared.json.RepositoryChangeEventJson;
+import com.zhapi.shared.json.RepositorySnapshotJson;
+
+/**
+ * A local, in-memory copy of all the resources that the mirror has stored for
+ * a set of repositories, for clients that read the same resources many times
+ * (where even a round trip to the mirror per resource is too slow).
+ * 
+ * The replica is bootstrapped from a snapshot of each repository (see
+ * RepositorySnapshotJson), then kept up to date by a background thread that
+ * tails the change feed of the mirror from the position of the snapshot: each
+ * change event causes the corresponding resource to be re-read from the mirror.
+ * If the mirror reports that events were missed, the snapshots are re-read.
+ * 
+ * Until the initial snapshots are loaded, and for resources that the replica
+ * does not contain, ZenHubMirrorApiClient requests the resource from the mirror
+ * as usual. Resources returned by the replica are shared between callers, and
+ * so must not be modified.
+ * 
+ * This class is thread safe.
+ */
+public class ZenHubMirrorReplica {
+
+	private final ZenHubMirrorApiClient client;
+
+	private final Set<Long> repoIds;
+
+	/** repo id -> (request path, eg 'board/(repo id)' -> resource) */
+	private final Map<Long, Map<String, Object>> resourcesByRepo = new ConcurrentHashMap<>();
+
+	private final CountDownLatch initialized = new CountDownLatch(1);
+
+	private final ZenHubMirrorReplicaThread thread;
+
+	private static final Logger log = Logger.getLogger(ZenHubMirrorReplica.class.getName());
+
+	ZenHubMirrorReplica(ZenHubMirrorApiClient client, Collection<Long> repoIds, long pollIntervalInMsecs) {
+		this.client = client;
+		this.repoIds = new HashSet<>(repoIds);
+		this.thread = new ZenHubMirrorReplicaThread(pollIntervalInMsecs);
+	}
+
+	void start() {
+		thread.start();
+	}
+
+	void stop() {
+		thread.stopReplica();
+	}
+
+	/**
+	 * Return the resource at the given request path (eg 'issueData/(repo
+	 * id)/(issue number)'), or null if the path is not a resource of one of the
+	 * replicated repositories, or the replica does not contain it.
+	 */
+	<T> T get(String path, Class<T> clazz) {
+
+		Long repoId = getRepoId(path);
+		if (repoId == null) {
+			return null;
+		}
+
+		Map<String, Object> resources = resourcesByRepo.get(repoId);
+		if (resources == null) {
+			return null;
+		}
+
+		Object result = resources.get(path);
+
+		return clazz.isInstance(result) ? clazz.cast(result) : null;
+	}
+
+	/** Whether the snapshots of all the replicated repositories have been loaded. */
+	public boolean isInitialized() {
+		return initialized.getCount() == 0;
+	}
+
+	/**
+	 * Wait up to the given time for the snapshots of all the replicated
+	 * repositories to be loaded.
+	 * 
+	 * @return true if the replica is initialized
+	 */
+	public boolean awaitInitialized(long timeout, TimeUnit unit) throws InterruptedException {
+		return initialized.await(timeout, unit);
+	}
+
+	/** The number of resources in the replica. */
+	public int size() {
+		return resourcesByRepo.values().stream().mapToInt(e -> e.size()).sum();
+	}
+
+	/** The sequence number of the last change event that was applied. */
+	public long getCursor() {
+		return thread.cursor;
+	}
+
+	/** Replace the resources of the repository with the contents of the snapshot. */
+	private void applySnapshot(long repoId, RepositorySnapshotJson snapshot) {
+
+		Map<String, Object> resources = new ConcurrentHashMap<>();
+
+		if (snapshot != null) {
+			putIfNotNull(resources, RepositoryChangeEventJson.RESOURCE_BOARD + "/" + repoId, snapshot.getBoard());
+			putIfNotNull(resources, RepositoryChangeEventJson.RESOURCE_EPICS + "/" + repoId, snapshot.getEpics());
+			putIfNotNull(resources, RepositoryChangeEventJson.RESOURCE_DEPENDENCIES + "/" + repoId,
+					snapshot.getDependencies());
+
+			snapshot.getEpic().forEach((issueNumber, epic) -> putIfNotNull(resources,
+					RepositoryChangeEventJson.RESOURCE_EPIC + "/" + repoId + "/" + issueNumber, epic));
+
+			snapshot.getIssueData().forEach((issueNumber, issueData) -> putIfNotNull(resources,
+					RepositoryChangeEventJson.RESOURCE_ISSUE_DATA + "/" + repoId + "/" + issueNumber, issueData));
+
+			snapshot.getIssueEvents().forEach((issueNumber, events) -> putIfNotNull(resources,
+					RepositoryChangeEventJson.RESOURCE_ISSUE_EVENTS + "/" + repoId + "/" + issueNumber,
+					toArray(events)));
+		}
+
+		resourcesByRepo.put(repoId, resources);
+	}
+
+	/**
+	 * Re-read the resource identified by the change event from the mirror; an
+	 * event that does not identify a resource causes the snapshot of the
+	 * repository to be re-read.
+	 */
+	private void applyChangeEvent(RepositoryChangeEventJson event) {
+
+		long repoId = event.getRepoId();
+		if (!repoIds.contains(repoId)) {
+			return;
+		}
+
+		String resourceType = event.getResourceType();
+
+		Class<?> clazz = resourceType != null ? getResourceClass(resourceType) : null;
+		if (clazz == null) {
+			applySnapshot(repoId, readSnapshot(repoId));
+			return;
+		}
+
+		String path = resourceType + "/" + repoId + (event.getIssueNumber() != null ? "/" + event.getIssueNumber() : "");
+
+		Object resource = client.getIfPresent(path, clazz).orElse(null);
+
+		Map<String, Object> resources = resourcesByRepo.computeIfAbsent(repoId, e -> new ConcurrentHashMap<>());
+		if (resource != null) {
+			resources.put(path, resource);
+		} else {
+			resources.remove(path);
+		}
+	}
+
+	/** Returns null if the mirror has no resources for the repository. */
+	private RepositorySnapshotJson readSnapshot(long repoId) {
+		return client.getIfPresent("snapshot/" + repoId, RepositorySnapshotJson.class).orElse(null);
+	}
+
+	/** The class that ZenHubMirrorApiClient.get(...) is called with, for each resource type. */
+	private static Class<?> getResourceClass(String resourceType) {
+		switch (resourceType) {
+		case RepositoryChangeEventJson.RESOURCE_BOARD:
+			return GetBoardForRepositoryResponseJson.class;
+		case RepositoryChangeEventJson.RESOURCE_EPICS:
+			return GetEpicsResponseJson.class;
+		case RepositoryChangeEventJson.RESOURCE_EPIC:
+			return GetEpicResponseJson.class;
+		case RepositoryChangeEventJson.RESOURCE_DEPENDENCIES:
+			return DependenciesForARepoResponseJson.class;
+		case RepositoryChangeEventJson.RESOURCE_ISSUE_DATA:
+			return GetIssueDataResponseJson.class;
+		case RepositoryChangeEventJson.RESOURCE_ISSUE_EVENTS:
+			return IssueEventJson[].class;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Return the repository id of a request path of the form '(resource
+	 * type)/(repo id)[/(issue number)]', or null if the path is not of that form.
+	 */
+	private static Long getRepoId(String path) {
+		String[] components = path.split("/");
+		if (components.length < 2 || components.length > 3 || getResourceClass(components[0]) == null) {
+			return null;
+		}
+
+		try {
+			return Long.parseLong(components[1]);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static void putIfNotNull(Map<String, Object> resources, String path, Object resource) {
+		if (resource != null) {
+			resources.put(path, resource);
+		}
+	}
+
+	private static IssueEventJson[] toArray(List<IssueEventJson> events) {
+		return events != null ? events.toArray(new IssueEventJson[events.size()]) : null;
+	}
+
+	/**
+	 * Loads the snapshots, then tails the change feed; on failure, the failed
+	 * step is retried on the next poll.
+	 */
+	private class ZenHubMirrorReplicaThread extends Thread {
+
+		private final long pollIntervalInMsecs;
+
+		private volatile boolean running = true;
+
+		private volatile long cursor;
+
+		ZenHubMirrorReplicaThread(long pollIntervalInMsecs) {
+			setName(ZenHubMirrorReplica.class.getName());
+			setDaemon(true);
+
+			this.pollIntervalInMsecs = pollIntervalInMsecs;
+		}
+
+		@Override
+		public void run() {
+
+			ZenHubMirrorEventsService eventsService = new ZenHubMirrorEventsService(client);
+
+			ZenHubMirrorChangeFeed feed = null;
+
+			while (running) {
+				try {
+
+					if (feed == null) {
+						feed = loadSnapshots(eventsService);
+						initialized.countDown();
+					}
+
+					if (feed.poll(ZenHubMirrorReplica.this::applyChangeEvent)) {
+						log.info("Events were missed by the replica, re-reading the snapshots.");
+						feed = null;
+						continue;
+					}
+
+					cursor = feed.getCursor();
+
+				} catch (Exception e) {
+					if (!running) {
+						break;
+					}
+					log.log(Level.WARNING, "Unable to update the replica from the mirror.", e);
+				}
+
+				try {
+					TimeUnit.MILLISECONDS.sleep(pollIntervalInMsecs);
+				} catch (InterruptedException e) {
+					/* ignore: running flag is checked */
+				}
+			}
+		}
+
+		/**
+		 * Read the snapshot of every repository, and return a feed positioned at the
+		 * oldest of the snapshots.
+		 */
+		private ZenHubMirrorChangeFeed loadSnapshots(ZenHubMirrorEventsService eventsService) {
+
+			// The current position of the feed is the position for repositories that the
+			// mirror has no resources for.
+			long feedCursor = eventsService.getHeadCursor();
+
+			for (long repoId : repoIds) {
+				RepositorySnapshotJson snapshot = readSnapshot(repoId);
+				if (snapshot != null) {
+					feedCursor = Math.min(feedCursor, snapshot.getSeq());
+				}
+				applySnapshot(repoId, snapshot);
+			}
+
+			cursor = feedCursor;
+
+			return new ZenHubMirrorChangeFeed(eventsService, feedCursor);
+		}
+
+		void stopReplica() {
+			running = false;
+			this.interrupt();
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+package com.zhapi.client;
+
+/**
+ * The outcome and timing of a single request to a mirror endpoint; see
+ * ZenHubMirrorClientListener.
+ */
+public class ZenHubMirrorRequestEvent {
+
+	private final String endpointUrl;
+	private final String path;
+	private final int statusCode;
+	private final boolean failed;
+	private final long bytesRead;
+	private final long timeToFirstByteInNanos;
+	private final long deserializationInNanos;
+	private final long totalLatencyInNanos;
+
+	ZenHubMirrorRequestEvent(String endpointUrl, String path, int statusCode, boolean failed, long bytesRead,
+			long timeToFirstByteInNanos, long deserializationInNanos, long totalLatencyInNanos) {
+		this.endpointUrl = endpointUrl;
+		this.path = path;
+		this.statusCode = statusCode;
+		this.failed = failed;
+		this.bytesRead = bytesRead;
+		this.timeToFirstByteInNanos = timeToFirstByteInNanos;
+		this.deserializationInNanos = deserializationInNanos;
+		this.totalLatencyInNanos = totalLatencyInNanos;
+	}
+
+	/** The URL of the mirror endpoint that the request was sent to. */
+	public String getEndpointUrl() {
+		return endpointUrl;
+	}
+
+	/** The request path, relative to the endpoint URL (eg 'board/(repo id)'). */
+	public String getPath() {
+		return path;
+	}
+
+	/** The HTTP status code, or -1 if no response was received. */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/** Whether the request failed (no response, or the response could not be read or parsed). */
+	public boolean isFailed() {
+		return failed;
+	}
+
+	/** The number of bytes of the response body that were read. */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/** The time from sending the request until the status line of the response was received, or -1 if it was not. */
+	public long getTimeToFirstByteInNanos() {
+		return timeToFirstByteInNanos;
+	}
+
+	/**
+	 * The time spent reading and parsing the response body (these overlap, as the
+	 * body is parsed as it is read), or -1 if the body was not parsed.
+	 */
+	public long getDeserializationInNanos() {
+		return deserializationInNanos;
+	}
+
+	/** The time from sending the request until the response was fully processed. */
+	public long getTotalLatencyInNanos() {
+		return totalLatencyInNanos;
+	}
+
+}
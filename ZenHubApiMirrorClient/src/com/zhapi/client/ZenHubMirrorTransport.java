@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapi.client;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Sends HTTP requests on behalf of ZenHubMirrorApiClient. The default
+ * implementation is ZenHubMirrorUrlConnectionTransport; an alternative (for
+ * example, one backed by a pooled HTTP client library) may be passed to the
+ * ZenHubMirrorApiClient constructor.
+ * 
+ * Implementations must be thread safe.
+ */
+public interface ZenHubMirrorTransport {
+
+	/**
+	 * Send a GET request to the given URL. The caller must close the returned
+	 * response, which allows the underlying connection to be reused.
+	 * 
+	 * @param authorization the value of the Authorization header, or null
+	 */
+	public ZenHubMirrorTransportResponse get(String url, String authorization) throws IOException;
+
+	/**
+	 * As get(url, authorization), but the request may be aborted from another
+	 * thread: before blocking on the response, the transport passes an action
+	 * that aborts the request to abortHandler. Once the action has run, the
+	 * blocked call (or a read of the response body) fails with an IOException.
+	 * 
+	 * This is used to abort the slower of a hedged pair of requests. The default
+	 * implementation cannot abort requests; with such a transport, a hedged
+	 * request only returns once its original request has also completed.
+	 */
+	public default ZenHubMirrorTransportResponse get(String url, String authorization,
+			Consumer<Runnable> abortHandler) throws IOException {
+		return get(url, authorization);
+	}
+
+	/** Release any resources (eg pooled connections) held by the transport. */
+	public default void close() {
+	}
+
+}
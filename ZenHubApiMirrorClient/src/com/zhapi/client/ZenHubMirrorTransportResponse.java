@@ -0,0 +1,34 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapi.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The status code and body of a response returned by a ZenHubMirrorTransport.
+ * Closing the response releases the underlying connection.
+ */
+public interface ZenHubMirrorTransportResponse extends Closeable {
+
+	public int getStatusCode();
+
+	/** The body of the response (for both successful and failed requests). */
+	public InputStream getBody() throws IOException;
+
+}
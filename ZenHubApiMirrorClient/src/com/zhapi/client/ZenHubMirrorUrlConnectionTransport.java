@@ -0,0 +1,193 @@
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+package com.zhapi.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.function.Consumer;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import com.zhapi.ZHUtil;
+
+/**
+ * A ZenHubMirrorTransport that uses HttpURLConnection.
+ * 
+ * Connections are kept alive and reused by the JVM's HTTP keep-alive cache:
+ * each response body (including the body of an error response) is read to the
+ * end and closed, which returns the connection to the cache, so that
+ * subsequent requests to the same mirror do not pay for a new TCP connection
+ * and TLS handshake. The SSL socket factory is created once, and shared by all
+ * connections.
+ * 
+ * The keep-alive cache is owned by the JVM, and shared with every other user
+ * of HttpURLConnection in the process, so this class does not configure it.
+ * The number of idle connections that are kept per destination is set by the
+ * 'http.maxConnections' system property (default: 5), which the JVM reads when
+ * the first connection is opened. Applications that issue many concurrent
+ * requests to the mirror should raise it on the command line (eg
+ * -Dhttp.maxConnections=32); otherwise, connections beyond that number are
+ * closed once their response has been read. For a pool that is sized per
+ * client, pass a ZenHubMirrorTransport backed by a pooled HTTP client library
+ * to the client builder instead.
+ * 
+ * This class is thread safe.
+ */
+public class ZenHubMirrorUrlConnectionTransport implements ZenHubMirrorTransport {
+
+	public static final int DEFAULT_CONNECT_TIMEOUT_IN_MSECS = 10 * 1000;
+
+	public static final int DEFAULT_READ_TIMEOUT_IN_MSECS = 60 * 1000;
+
+	private static final Object SSL_LOCK = new Object();
+
+	private static SSLSocketFactory sslSocketFactory_synch_sslLock;
+
+	private final int connectTimeoutInMsecs;
+
+	private final int readTimeoutInMsecs;
+
+	public ZenHubMirrorUrlConnectionTransport() {
+		this(DEFAULT_CONNECT_TIMEOUT_IN_MSECS, DEFAULT_READ_TIMEOUT_IN_MSECS);
+	}
+
+	public ZenHubMirrorUrlConnectionTransport(int connectTimeoutInMsecs, int readTimeoutInMsecs) {
+
+		if (connectTimeoutInMsecs < 0 || readTimeoutInMsecs < 0) {
+			throw new IllegalArgumentException("Invalid transport configuration");
+		}
+
+		this.connectTimeoutInMsecs = connectTimeoutInMsecs;
+		this.readTimeoutInMsecs = readTimeoutInMsecs;
+	}
+
+	@Override
+	public ZenHubMirrorTransportResponse get(String uri, String authorization) throws IOException {
+		return get(uri, authorization, a -> {
+		});
+	}
+
+	/** The request is aborted by disconnecting, which closes its socket. */
+	@Override
+	public ZenHubMirrorTransportResponse get(String uri, String authorization, Consumer<Runnable> abortHandler)
+			throws IOException {
+
+		URL url = new URL(uri);
+		HttpURLConnection httpConnection = (HttpURLConnection) url.openConnection();
+		if (httpConnection instanceof HttpsURLConnection) {
+			HttpsURLConnection connection = (HttpsURLConnection) httpConnection;
+			connection.setSSLSocketFactory(getSslSocketFactory());
+			connection.setHostnameVerifier((a, b) -> true);
+		}
+
+		httpConnection.setRequestMethod("GET");
+		httpConnection.setConnectTimeout(connectTimeoutInMsecs);
+		httpConnection.setReadTimeout(readTimeoutInMsecs);
+
+		if (authorization != null) {
+			httpConnection.setRequestProperty("Authorization", authorization);
+		}
+
+		abortHandler.accept(httpConnection::disconnect);
+
+		int code = httpConnection.getResponseCode();
+
+		// On an error code, getInputStream() throws, and the body is instead
+		// available from the error stream (which may be null if there is no body).
+		InputStream body = code < 400 ? httpConnection.getInputStream() : httpConnection.getErrorStream();
+
+		return new UrlConnectionResponse(code, body);
+	}
+
+	private static SSLSocketFactory getSslSocketFactory() {
+		synchronized (SSL_LOCK) {
+			if (sslSocketFactory_synch_sslLock == null) {
+				sslSocketFactory_synch_sslLock = generateSslContext().getSocketFactory();
+			}
+			return sslSocketFactory_synch_sslLock;
+		}
+	}
+
+	private static SSLContext generateSslContext() {
+		SSLContext sslContext = null;
+		try {
+			sslContext = SSLContext.getInstance("TLS");
+			sslContext.init(null, new TrustManager[] { new X509TrustManager() {
+				public void checkClientTrusted(X509Certificate[] arg0, String arg1) throws CertificateException {
+				}
+
+				public void checkServerTrusted(X509Certificate[] arg0, String arg1) throws CertificateException {
+				}
+
+				public X509Certificate[] getAcceptedIssuers() {
+
+					return new X509Certificate[0];
+				}
+
+			} }, new java.security.SecureRandom());
+		} catch (Exception e) {
+			ZHUtil.throwAsUnchecked(e);
+		}
+
+		return sslContext;
+	}
+
+	/** Reads any unread body on close, so that the connection can be reused. */
+	private static class UrlConnectionResponse implements ZenHubMirrorTransportResponse {
+
+		private final int code;
+
+		private final InputStream body;
+
+		UrlConnectionResponse(int code, InputStream body) {
+			this.code = code;
+			this.body = body != null ? body : new ByteArrayInputStream(new byte[0]);
+		}
+
+		@Override
+		public int getStatusCode() {
+			return code;
+		}
+
+		@Override
+		public InputStream getBody() {
+			return body;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				byte[] barr = new byte[1024 * 8];
+				while (body.read(barr) != -1) {
+					/* drain */
+				}
+			} finally {
+				body.close();
+			}
+		}
+	}
+
+}
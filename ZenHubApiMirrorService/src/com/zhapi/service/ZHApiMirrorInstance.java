@@ -29,9 +29,12 @@
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.zhapi.service.yaml.ZHConfigFileYaml;
+import com.zhapimirror.ZHAccessHeat;
 import com.zhapimirror.ZHDatabase;
+import com.zhapimirror.ZHReadThrough;
 import com.zhapimirror.ZHServerInstance;
 import com.zhapimirror.ZHServerInstance.ZHServerInstanceBuilder;
+import com.zhapimirror.ZHWorkerPool.ExecutionMode;
 
 /**
  * Only a single instance of a number of objects are maintained in the
@@ -91,7 +94,8 @@ private ZHApiMirrorInstance() {
 
 			ZHServerInstanceBuilder builder = ZHServerInstance.builder().githubServerName(sf.getGithubServer())
 					.githubUsername(sf.getGithubUsername()).githubPassword(sf.getGithubPassword())
-					.zenhubServerName(sf.getZenhubServer()).zenhubApiKey(sf.getZenhubApiKey()).dbDir(new File(dbPath));
+					.zenhubServerName(sf.getZenhubServer()).zenhubApiKey(sf.getZenhubApiKey()).zenhubApiKeys(sf.getZenhubApiKeys())
+					.dbDir(new File(dbPath));
 
 			if (!orgList.isEmpty()) {
 				builder = builder.orgNames(orgList);
@@ -104,6 +108,81 @@ private ZHApiMirrorInstance() {
 				builder = builder.individualRepos(individualReposList);
 			}
 
+			if (sf.getWorkerThreads() != null) {
+				builder = builder.workerThreads(sf.getWorkerThreads());
+			}
+
+			if (sf.getMaxWorkerThreads() != null) {
+				builder = builder.maxWorkerThreads(sf.getMaxWorkerThreads());
+			}
+
+			if (sf.getAutoScaleWorkerThreads() != null) {
+				builder = builder.autoScaleWorkerThreads(sf.getAutoScaleWorkerThreads());
+			}
+
+			if (sf.getWorkerExecutionMode() != null) {
+				String mode = sf.getWorkerExecutionMode().trim().toLowerCase();
+				if (mode.equals("threads")) {
+					builder = builder.workerExecutionMode(ExecutionMode.THREADS);
+				} else if (mode.equals("virtual")) {
+					builder = builder.workerExecutionMode(ExecutionMode.TASK_PER_FETCH);
+				} else {
+					throw new RuntimeException("Unrecognized workerExecutionMode: " + sf.getWorkerExecutionMode());
+				}
+			}
+
+			if (sf.getMaxConcurrentFetches() != null) {
+				builder = builder.maxConcurrentFetches(sf.getMaxConcurrentFetches());
+			}
+
+			if (sf.getZenhubRequestsPerMinute() != null) {
+				builder = builder.zenhubRequestsPerMinute(sf.getZenhubRequestsPerMinute());
+			}
+
+			if (sf.getFullIssueListingIntervalHours() != null) {
+				builder = builder.fullIssueListingIntervalInHours(sf.getFullIssueListingIntervalHours());
+			}
+
+			if (sf.getMinRepositoryScanIntervalSeconds() != null) {
+				builder = builder.minRepositoryScanIntervalInSeconds(sf.getMinRepositoryScanIntervalSeconds());
+			}
+
+			if (sf.getMaxRepositoryScanIntervalSeconds() != null) {
+				builder = builder.maxRepositoryScanIntervalInSeconds(sf.getMaxRepositoryScanIntervalSeconds());
+			}
+
+			if (sf.getFullScanWindowHours() != null) {
+				builder = builder.fullScanWindowInHours(sf.getFullScanWindowHours());
+			}
+
+			if (sf.getResourceScanThreads() != null) {
+				builder = builder.resourceScanThreads(sf.getResourceScanThreads());
+			}
+
+			if (sf.getRepositoryInventoryTtlMinutes() != null) {
+				builder = builder.repositoryInventoryTtlInMinutes(sf.getRepositoryInventoryTtlMinutes());
+			}
+
+			if (sf.getFullEpicReconciliationIntervalHours() != null) {
+				builder = builder.fullEpicReconciliationIntervalInHours(sf.getFullEpicReconciliationIntervalHours());
+			}
+
+			if (sf.getReadThrough() != null) {
+				builder = builder.readThrough(sf.getReadThrough());
+			}
+
+			if (sf.getReadThroughWaitMsecs() != null) {
+				builder = builder.readThroughWaitInMsecs(sf.getReadThroughWaitMsecs());
+			}
+
+			if (sf.getAccessHeatHalfLifeMinutes() != null) {
+				builder = builder.accessHeatHalfLifeInMinutes(sf.getAccessHeatHalfLifeMinutes());
+			}
+
+			if (sf.getIssueMaxAgeHours() != null) {
+				builder = builder.issueMaxAgeInHours(sf.getIssueMaxAgeHours());
+			}
+
 			this.serverInstance = builder.build();
 
 			db = serverInstance.getDb();
@@ -148,4 +227,18 @@ public String getPresharedKey() {
 		return presharedKey;
 	}
 
+	/** Returns empty if read-through of missing resources is disabled. */
+	public Optional<ZHReadThrough> getReadThrough() {
+		return serverInstance.getReadThrough();
+	}
+
+	public ZHAccessHeat getAccessHeat() {
+		return serverInstance.getAccessHeat();
+	}
+
+	/** Stop the background threads of the server instance. */
+	public void shutdown() {
+		serverInstance.shutdown();
+	}
+
 }
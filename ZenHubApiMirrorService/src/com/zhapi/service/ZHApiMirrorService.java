@@ -16,9 +16,15 @@
 
 package com.zhapi.service;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import javax.enterprise.context.RequestScoped;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
@@ -27,17 +33,18 @@
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
 
-import com.zhapi.json.IssueEventJson;
-import com.zhapi.json.responses.DependenciesForARepoResponseJson;
-import com.zhapi.json.responses.GetBoardForRepositoryResponseJson;
-import com.zhapi.json.responses.GetEpicResponseJson;
-import com.zhapi.json.responses.GetEpicsResponseJson;
-import com.zhapi.json.responses.GetIssueDataResponseJson;
+import com.zhapi.shared.json.ChangeFeedResponseJson;
 import com.zhapi.shared.json.RepositoryChangeEventJson;
+import com.zhapi.shared.json.RepositorySnapshotJson;
 import com.zhapimirror.JsonUtil;
+import com.zhapimirror.ZHAccessHeat.ZHAccessHeatEntryJson;
 import com.zhapimirror.ZHDatabase;
+import com.zhapimirror.ZHReadThrough;
+import com.zhapimirror.ZHRepositorySnapshot;
+import com.zhapimirror.ZHResourceMetadata;
 import com.zhapimirror.ZHUtil;
 
 /**
@@ -46,102 +53,110 @@
  * returns the result.
  * 
  * Before processing a request, the pre-shared key is verified, here.
+ * 
+ * Resources are returned with Age and Last-Modified headers (see
+ * ZHResourceMetadata). If read-through is enabled, a request for a resource
+ * that is not in the database, or that is older than the 'maxAge' query
+ * parameter of the request, causes it to be fetched with priority, and the
+ * request may wait a bounded time for it (see ZHReadThrough). If a resource
+ * older than 'maxAge' cannot be refreshed in time (or at all, when read-through
+ * is disabled), the stored copy is returned with a 'Warning: 110' (response is
+ * stale) header.
  */
 @RequestScoped
 @Path("/")
 public class ZHApiMirrorService {
 
+	private static final int DEFAULT_CHANGES_LIMIT = 100;
+
+	private static final int MAX_CHANGES_LIMIT = 1000;
+
+	private static final int DEFAULT_HOT_RESOURCES_LIMIT = 100;
+
+	private static final int MAX_HOT_RESOURCES_LIMIT = 1000;
+
+	/** RFC 7234 warning, added when the returned resource is older than the requested maxAge */
+	private static final String STALE_WARNING = "110 - \"Response is Stale\"";
+
 	@Context
 	HttpHeaders headers;
 
 	@GET
 	@Path("/dependencies/{repoId}")
-	public Response getDependenciesForARepository(@PathParam("repoId") long repoId) {
+	public Response getDependenciesForARepository(@PathParam("repoId") long repoId,
+			@QueryParam("maxAge") Long maxAgeInSecs) {
 
 		verifyHeaderAuth();
 		ZHDatabase db = getDb();
 
-		DependenciesForARepoResponseJson deps = db.getDependenciesForARepository(repoId).orElse(null);
-		if (deps != null) {
-			return Response.ok(JsonUtil.toString(deps)).type(MediaType.APPLICATION_JSON_TYPE).build();
-		} else {
-			return Response.status(Status.NOT_FOUND).build();
-		}
+		return getResource(db, RepositoryChangeEventJson.RESOURCE_DEPENDENCIES, repoId, null, maxAgeInSecs,
+				() -> db.getDependenciesForARepository(repoId), rt -> rt.requestRepository(repoId),
+				rt -> rt.refreshRepositoryResources(repoId));
 	}
 
 	@GET
 	@Path("/board/{repoId}")
-	public Response getZenHubBoardForRepo(@PathParam("repoId") long repoId) {
+	public Response getZenHubBoardForRepo(@PathParam("repoId") long repoId,
+			@QueryParam("maxAge") Long maxAgeInSecs) {
 
 		verifyHeaderAuth();
 		ZHDatabase db = getDb();
 
-		GetBoardForRepositoryResponseJson board = db.getZenHubBoardForRepo(repoId).orElse(null);
-		if (board != null) {
-			return Response.ok(JsonUtil.toString(board)).type(MediaType.APPLICATION_JSON_TYPE).build();
-		} else {
-			return Response.status(Status.NOT_FOUND).build();
-		}
+		return getResource(db, RepositoryChangeEventJson.RESOURCE_BOARD, repoId, null, maxAgeInSecs,
+				() -> db.getZenHubBoardForRepo(repoId), rt -> rt.requestRepository(repoId),
+				rt -> rt.refreshRepositoryResources(repoId));
 	}
 
 	@GET
 	@Path("/epic/{repoId}/{issueId}")
-	public Response getEpic(@PathParam("repoId") long repoId, @PathParam("issueId") int issueId) {
+	public Response getEpic(@PathParam("repoId") long repoId, @PathParam("issueId") int issueId,
+			@QueryParam("maxAge") Long maxAgeInSecs) {
 
 		verifyHeaderAuth();
 		ZHDatabase db = getDb();
 
-		GetEpicResponseJson epic = db.getEpic(repoId, issueId).orElse(null);
-		if (epic != null) {
-			return Response.ok(JsonUtil.toString(epic)).type(MediaType.APPLICATION_JSON_TYPE).build();
-		} else {
-			return Response.status(Status.NOT_FOUND).build();
-		}
+		return getResource(db, RepositoryChangeEventJson.RESOURCE_EPIC, repoId, issueId, maxAgeInSecs,
+				() -> db.getEpic(repoId, issueId), rt -> rt.requestRepository(repoId),
+				rt -> rt.refreshEpic(repoId, issueId));
 	}
 
 	@GET
 	@Path("/epics/{repoId}")
-	public Response getEpics(@PathParam("repoId") long repoId) {
+	public Response getEpics(@PathParam("repoId") long repoId,
+			@QueryParam("maxAge") Long maxAgeInSecs) {
 
 		verifyHeaderAuth();
 		ZHDatabase db = getDb();
 
-		GetEpicsResponseJson board = db.getEpics(repoId).orElse(null);
-		if (board != null) {
-			return Response.ok(JsonUtil.toString(board)).type(MediaType.APPLICATION_JSON_TYPE).build();
-		} else {
-			return Response.status(Status.NOT_FOUND).build();
-		}
+		return getResource(db, RepositoryChangeEventJson.RESOURCE_EPICS, repoId, null, maxAgeInSecs,
+				() -> db.getEpics(repoId), rt -> rt.requestRepository(repoId),
+				rt -> rt.refreshRepositoryResources(repoId));
 	}
 
 	@GET
 	@Path("/issueData/{repoId}/{issueId}")
-	public Response getIssueData(@PathParam("repoId") long repoId, @PathParam("issueId") int issueId) {
+	public Response getIssueData(@PathParam("repoId") long repoId, @PathParam("issueId") int issueId,
+			@QueryParam("maxAge") Long maxAgeInSecs) {
 
 		verifyHeaderAuth();
 		ZHDatabase db = getDb();
 
-		GetIssueDataResponseJson issueData = db.getIssueData(repoId, issueId).orElse(null);
-		if (issueData != null) {
-			return Response.ok(JsonUtil.toString(issueData)).type(MediaType.APPLICATION_JSON_TYPE).build();
-		} else {
-			return Response.status(Status.NOT_FOUND).build();
-		}
+		return getResource(db, RepositoryChangeEventJson.RESOURCE_ISSUE_DATA, repoId, issueId, maxAgeInSecs,
+				() -> db.getIssueData(repoId, issueId), rt -> rt.requestIssue(repoId, issueId),
+				rt -> rt.requestIssue(repoId, issueId));
 	}
 
 	@GET
 	@Path("/issueEvents/{repoId}/{issueId}")
-	public Response getIssueEvents(@PathParam("repoId") long repoId, @PathParam("issueId") int issueId) {
+	public Response getIssueEvents(@PathParam("repoId") long repoId, @PathParam("issueId") int issueId,
+			@QueryParam("maxAge") Long maxAgeInSecs) {
 
 		verifyHeaderAuth();
 		ZHDatabase db = getDb();
 
-		List<IssueEventJson> issueData = db.getIssueEvents(repoId, issueId).orElse(null);
-		if (issueData != null) {
-			return Response.ok(JsonUtil.toString(issueData)).type(MediaType.APPLICATION_JSON_TYPE).build();
-		} else {
-			return Response.status(Status.NOT_FOUND).build();
-		}
+		return getResource(db, RepositoryChangeEventJson.RESOURCE_ISSUE_EVENTS, repoId, issueId, maxAgeInSecs,
+				() -> db.getIssueEvents(repoId, issueId), rt -> rt.requestIssue(repoId, issueId),
+				rt -> rt.requestIssue(repoId, issueId));
 	}
 
 	@GET
@@ -157,6 +172,172 @@ public Response getRecentResourceChangeEvents(@QueryParam("since") long sinceGre
 		return Response.ok(JsonUtil.toString(changes)).type(MediaType.APPLICATION_JSON_TYPE).build();
 	}
 
+	/**
+	 * Return the change events after the given cursor (the sequence number of the
+	 * last event the caller has processed, or 0 to read from the start of the
+	 * feed), up to 'limit' events.
+	 */
+	@GET
+	@Path("/changes")
+	public Response getChanges(@QueryParam("after") @DefaultValue("0") long after,
+			@QueryParam("limit") @DefaultValue("" + DEFAULT_CHANGES_LIMIT) int limit) {
+
+		verifyHeaderAuth();
+
+		if (after < 0 || limit <= 0) {
+			return Response.status(Status.BAD_REQUEST).build();
+		}
+
+		ZHDatabase db = getDb();
+
+		ChangeFeedResponseJson changes = db.getChangeEvents(after, Math.min(limit, MAX_CHANGES_LIMIT));
+
+		return Response.ok(JsonUtil.toString(changes)).type(MediaType.APPLICATION_JSON_TYPE).build();
+	}
+
+	/**
+	 * Return the current position of the change feed, with no events: both
+	 * nextCursor and headCursor are the sequence number of the most recent event.
+	 * A caller that starts reading the feed from this cursor will see every
+	 * subsequent change.
+	 */
+	@GET
+	@Path("/changes/head")
+	public Response getChangesHead() {
+
+		verifyHeaderAuth();
+
+		long head = getDb().getLastChangeEventSeq();
+
+		ChangeFeedResponseJson result = new ChangeFeedResponseJson();
+		result.setNextCursor(head);
+		result.setHeadCursor(head);
+
+		return Response.ok(JsonUtil.toString(result)).type(MediaType.APPLICATION_JSON_TYPE).build();
+	}
+
+	/**
+	 * Return all of the stored resources of the repository, with the position of
+	 * the change feed at the time of the snapshot; used by clients to bootstrap a
+	 * local replica.
+	 */
+	@GET
+	@Path("/snapshot/{repoId}")
+	public Response getRepositorySnapshot(@PathParam("repoId") long repoId) {
+
+		verifyHeaderAuth();
+		ZHDatabase db = getDb();
+
+		RepositorySnapshotJson snapshot = ZHRepositorySnapshot.create(db, repoId).orElse(null);
+		if (snapshot != null) {
+			return Response.ok(JsonUtil.toString(snapshot)).type(MediaType.APPLICATION_JSON_TYPE).build();
+		} else {
+			return Response.status(Status.NOT_FOUND).build();
+		}
+	}
+
+	/**
+	 * Return the resources that are most frequently read by clients, hottest
+	 * first, up to 'limit' resources (see ZHAccessHeat).
+	 */
+	@GET
+	@Path("/diagnostics/hot")
+	public Response getHotResources(
+			@QueryParam("limit") @DefaultValue("" + DEFAULT_HOT_RESOURCES_LIMIT) int limit) {
+
+		verifyHeaderAuth();
+
+		if (limit <= 0) {
+			return Response.status(Status.BAD_REQUEST).build();
+		}
+
+		List<ZHAccessHeatEntryJson> hot = ZHApiMirrorInstance.getInstance().getAccessHeat()
+				.getHotResources(Math.min(limit, MAX_HOT_RESOURCES_LIMIT));
+
+		return Response.ok(JsonUtil.toString(hot)).type(MediaType.APPLICATION_JSON_TYPE).build();
+	}
+
+	/**
+	 * Return the resource from the database, with its Age (seconds since it was
+	 * last fetched from ZenHub) and Last-Modified (when its contents last changed)
+	 * headers.
+	 * 
+	 * If read-through is enabled, and the resource is not present, it is requested
+	 * (request); if the caller specified a maxAge (in seconds) and the resource
+	 * was fetched longer ago than that, only that resource is refreshed (refresh).
+	 * In both cases the request waits the configured time for the resource to be
+	 * fetched; if it is not fetched in time, the stored copy (if any) is
+	 * returned.
+	 * 
+	 * If the returned copy is older than maxAge (because read-through is disabled,
+	 * or the refresh did not complete in time), the response includes a stale
+	 * Warning header, so that the caller is not misled into thinking that maxAge
+	 * was honoured.
+	 * 
+	 * Each read of an existing resource is recorded in ZHAccessHeat.
+	 */
+	private static <T> Response getResource(ZHDatabase db, String resourceType, long repoId, Integer issueNumber,
+			Long maxAgeInSecs, Supplier<Optional<T>> lookup, Consumer<ZHReadThrough> request,
+			Consumer<ZHReadThrough> refresh) {
+
+		if (maxAgeInSecs != null && maxAgeInSecs < 0) {
+			return Response.status(Status.BAD_REQUEST).build();
+		}
+
+		Optional<T> result = lookup.get();
+
+		ZHReadThrough readThrough = ZHApiMirrorInstance.getInstance().getReadThrough().orElse(null);
+
+		boolean stale = false;
+
+		if (!result.isPresent()) {
+			if (readThrough != null) {
+				request.accept(readThrough);
+				result = readThrough.await(lookup);
+			}
+
+		} else if (maxAgeInSecs != null) {
+			long maxAgeInMsecs = TimeUnit.MILLISECONDS.convert(maxAgeInSecs, TimeUnit.SECONDS);
+
+			Supplier<Optional<T>> freshLookup = () -> ZHResourceMetadata.isFresh(db, resourceType, repoId, issueNumber,
+					maxAgeInMsecs) ? lookup.get() : Optional.empty();
+
+			if (!freshLookup.get().isPresent()) {
+				Optional<T> fresh = Optional.empty();
+
+				if (readThrough != null) {
+					refresh.accept(readThrough);
+					fresh = readThrough.await(freshLookup);
+				}
+
+				if (fresh.isPresent()) {
+					result = fresh;
+				} else {
+					stale = true;
+				}
+			}
+		}
+
+		if (!result.isPresent()) {
+			return Response.status(Status.NOT_FOUND).build();
+		}
+
+		ZHApiMirrorInstance.getInstance().getAccessHeat().recordRead(resourceType, repoId, issueNumber);
+
+		ResponseBuilder response = Response.ok(JsonUtil.toString(result.get())).type(MediaType.APPLICATION_JSON_TYPE);
+
+		db.getResourceMetadata(resourceType, repoId, issueNumber).ifPresent(metadata -> {
+			response.header("Age", ZHResourceMetadata.getAgeInSeconds(metadata));
+			response.lastModified(new Date(metadata.getLastChangedAt()));
+		});
+
+		if (stale) {
+			response.header("Warning", STALE_WARNING);
+		}
+
+		return response.build();
+	}
+
 	private void verifyHeaderAuth() {
 		String key = ZHApiMirrorInstance.getInstance().getPresharedKey();
 
@@ -37,5 +37,7 @@ public void contextInitialized(ServletContextEvent servletContextEvent) {
 	}
 
 	public void contextDestroyed(ServletContextEvent servletContextEvent) {
+		log.logInfo("* ZenHubApiMirrorService stopping.");
+		ZHApiMirrorInstance.getInstance().shutdown();
 	}
 }
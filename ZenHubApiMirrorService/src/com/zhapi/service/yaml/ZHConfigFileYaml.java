@@ -32,6 +32,7 @@ public class ZHConfigFileYaml {
 
 	private String zenhubServer;
 	private String zenhubApiKey;
+	private List<String> zenhubApiKeys = new ArrayList<>();
 
 	private List<String> userRepoList = new ArrayList<>();
 
@@ -43,6 +44,40 @@ public class ZHConfigFileYaml {
 
 	private String dbPath;
 
+	private Integer workerThreads;
+
+	private Integer maxWorkerThreads;
+
+	private Boolean autoScaleWorkerThreads;
+
+	private String workerExecutionMode;
+
+	private Integer maxConcurrentFetches;
+
+	private Integer zenhubRequestsPerMinute;
+
+	private Long fullIssueListingIntervalHours;
+
+	private Long minRepositoryScanIntervalSeconds;
+
+	private Long maxRepositoryScanIntervalSeconds;
+
+	private Long fullScanWindowHours;
+
+	private Integer resourceScanThreads;
+
+	private Long repositoryInventoryTtlMinutes;
+
+	private Long fullEpicReconciliationIntervalHours;
+
+	private Boolean readThrough;
+
+	private Long readThroughWaitMsecs;
+
+	private Long accessHeatHalfLifeMinutes;
+
+	private Long issueMaxAgeHours;
+
 	public String getGithubServer() {
 		return githubServer;
 	}
@@ -123,4 +158,148 @@ public void setZenhubApiKey(String zenhubApiKey) {
 		this.zenhubApiKey = zenhubApiKey;
 	}
 
+	public List<String> getZenhubApiKeys() {
+		return zenhubApiKeys;
+	}
+
+	public void setZenhubApiKeys(List<String> zenhubApiKeys) {
+		this.zenhubApiKeys = zenhubApiKeys;
+	}
+
+	public Integer getWorkerThreads() {
+		return workerThreads;
+	}
+
+	public void setWorkerThreads(Integer workerThreads) {
+		this.workerThreads = workerThreads;
+	}
+
+	public Integer getMaxWorkerThreads() {
+		return maxWorkerThreads;
+	}
+
+	public void setMaxWorkerThreads(Integer maxWorkerThreads) {
+		this.maxWorkerThreads = maxWorkerThreads;
+	}
+
+	public Boolean getAutoScaleWorkerThreads() {
+		return autoScaleWorkerThreads;
+	}
+
+	public void setAutoScaleWorkerThreads(Boolean autoScaleWorkerThreads) {
+		this.autoScaleWorkerThreads = autoScaleWorkerThreads;
+	}
+
+	public String getWorkerExecutionMode() {
+		return workerExecutionMode;
+	}
+
+	public void setWorkerExecutionMode(String workerExecutionMode) {
+		this.workerExecutionMode = workerExecutionMode;
+	}
+
+	public Integer getMaxConcurrentFetches() {
+		return maxConcurrentFetches;
+	}
+
+	public void setMaxConcurrentFetches(Integer maxConcurrentFetches) {
+		this.maxConcurrentFetches = maxConcurrentFetches;
+	}
+
+	public Integer getZenhubRequestsPerMinute() {
+		return zenhubRequestsPerMinute;
+	}
+
+	public void setZenhubRequestsPerMinute(Integer zenhubRequestsPerMinute) {
+		this.zenhubRequestsPerMinute = zenhubRequestsPerMinute;
+	}
+
+	public Long getFullIssueListingIntervalHours() {
+		return fullIssueListingIntervalHours;
+	}
+
+	public void setFullIssueListingIntervalHours(Long fullIssueListingIntervalHours) {
+		this.fullIssueListingIntervalHours = fullIssueListingIntervalHours;
+	}
+
+	public Long getMinRepositoryScanIntervalSeconds() {
+		return minRepositoryScanIntervalSeconds;
+	}
+
+	public void setMinRepositoryScanIntervalSeconds(Long minRepositoryScanIntervalSeconds) {
+		this.minRepositoryScanIntervalSeconds = minRepositoryScanIntervalSeconds;
+	}
+
+	public Long getMaxRepositoryScanIntervalSeconds() {
+		return maxRepositoryScanIntervalSeconds;
+	}
+
+	public void setMaxRepositoryScanIntervalSeconds(Long maxRepositoryScanIntervalSeconds) {
+		this.maxRepositoryScanIntervalSeconds = maxRepositoryScanIntervalSeconds;
+	}
+
+	public Long getFullScanWindowHours() {
+		return fullScanWindowHours;
+	}
+
+	public void setFullScanWindowHours(Long fullScanWindowHours) {
+		this.fullScanWindowHours = fullScanWindowHours;
+	}
+
+	public Integer getResourceScanThreads() {
+		return resourceScanThreads;
+	}
+
+	public void setResourceScanThreads(Integer resourceScanThreads) {
+		this.resourceScanThreads = resourceScanThreads;
+	}
+
+	public Long getRepositoryInventoryTtlMinutes() {
+		return repositoryInventoryTtlMinutes;
+	}
+
+	public void setRepositoryInventoryTtlMinutes(Long repositoryInventoryTtlMinutes) {
+		this.repositoryInventoryTtlMinutes = repositoryInventoryTtlMinutes;
+	}
+
+	public Long getFullEpicReconciliationIntervalHours() {
+		return fullEpicReconciliationIntervalHours;
+	}
+
+	public void setFullEpicReconciliationIntervalHours(Long fullEpicReconciliationIntervalHours) {
+		this.fullEpicReconciliationIntervalHours = fullEpicReconciliationIntervalHours;
+	}
+
+	public Boolean getReadThrough() {
+		return readThrough;
+	}
+
+	public void setReadThrough(Boolean readThrough) {
+		this.readThrough = readThrough;
+	}
+
+	public Long getReadThroughWaitMsecs() {
+		return readThroughWaitMsecs;
+	}
+
+	public void setReadThroughWaitMsecs(Long readThroughWaitMsecs) {
+		this.readThroughWaitMsecs = readThroughWaitMsecs;
+	}
+
+	public Long getAccessHeatHalfLifeMinutes() {
+		return accessHeatHalfLifeMinutes;
+	}
+
+	public void setAccessHeatHalfLifeMinutes(Long accessHeatHalfLifeMinutes) {
+		this.accessHeatHalfLifeMinutes = accessHeatHalfLifeMinutes;
+	}
+
+	public Long getIssueMaxAgeHours() {
+		return issueMaxAgeHours;
+	}
+
+	public void setIssueMaxAgeHours(Long issueMaxAgeHours) {
+		this.issueMaxAgeHours = issueMaxAgeHours;
+	}
+
 }
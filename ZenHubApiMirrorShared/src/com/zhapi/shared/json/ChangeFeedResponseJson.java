@@ -0,0 +1,86 @@
+
+package com.zhapi.shared.json;
+
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A page of the change feed: the events with a sequence number greater than
+ * the requested cursor, in ascending sequence order.
+ * 
+ * To resume reading the feed, pass nextCursor as the cursor of the next
+ * request; if hasMore is true, more events are immediately available.
+ * 
+ * If resyncRequired is true, events after the requested cursor have already
+ * expired from the feed, so the caller has missed events and should re-read
+ * any state that it derives from the feed.
+ * 
+ * headCursor is the sequence number of the most recent event in the feed, at
+ * the time of the request; a caller that only needs the current position of
+ * the feed should request /changes/head, which returns it without reading (or
+ * expiring) any events.
+ */
+public class ChangeFeedResponseJson {
+	private List<RepositoryChangeEventJson> events = new ArrayList<>();
+	private long nextCursor;
+	private boolean hasMore;
+	private boolean resyncRequired;
+	private long headCursor;
+
+	public List<RepositoryChangeEventJson> getEvents() {
+		return events;
+	}
+
+	public void setEvents(List<RepositoryChangeEventJson> events) {
+		this.events = events;
+	}
+
+	public long getNextCursor() {
+		return nextCursor;
+	}
+
+	public void setNextCursor(long nextCursor) {
+		this.nextCursor = nextCursor;
+	}
+
+	public boolean isHasMore() {
+		return hasMore;
+	}
+
+	public void setHasMore(boolean hasMore) {
+		this.hasMore = hasMore;
+	}
+
+	public boolean isResyncRequired() {
+		return resyncRequired;
+	}
+
+	public void setResyncRequired(boolean resyncRequired) {
+		this.resyncRequired = resyncRequired;
+	}
+
+	public long getHeadCursor() {
+		return headCursor;
+	}
+
+	public void setHeadCursor(long headCursor) {
+		this.headCursor = headCursor;
+	}
+
+}
@@ -17,10 +17,43 @@
  * limitations under the License. 
 */
 
+/**
+ * A change to the mirrored ZenHub resources of a repository.
+ * 
+ * Events that identify the resource that changed include a resource type
+ * (one of the RESOURCE_* constants), the issue number (for issue-level
+ * resources), and an optional short summary of the changed fields. Events
+ * without a resource type only indicate that something in the repository
+ * changed.
+ * 
+ * Each event is assigned a sequence number when it is persisted; sequence
+ * numbers increase monotonically (and are never reused), and may be used as a
+ * cursor into the change feed.
+ */
 public class RepositoryChangeEventJson {
+
+	public static final String RESOURCE_BOARD = "board";
+	public static final String RESOURCE_EPICS = "epics";
+	public static final String RESOURCE_EPIC = "epic";
+	public static final String RESOURCE_DEPENDENCIES = "dependencies";
+	public static final String RESOURCE_ISSUE_DATA = "issueData";
+	public static final String RESOURCE_ISSUE_EVENTS = "issueEvents";
+
+	private long seq;
 	private long time;
 	private long repoId;
 	private String uuid;
+	private String resourceType;
+	private Integer issueNumber;
+	private String changeSummary;
+
+	public long getSeq() {
+		return seq;
+	}
+
+	public void setSeq(long seq) {
+		this.seq = seq;
+	}
 
 	public long getTime() {
 		return time;
@@ -46,4 +79,28 @@ public void setUuid(String uuid) {
 		this.uuid = uuid;
 	}
 
+	public String getResourceType() {
+		return resourceType;
+	}
+
+	public void setResourceType(String resourceType) {
+		this.resourceType = resourceType;
+	}
+
+	public Integer getIssueNumber() {
+		return issueNumber;
+	}
+
+	public void setIssueNumber(Integer issueNumber) {
+		this.issueNumber = issueNumber;
+	}
+
+	public String getChangeSummary() {
+		return changeSummary;
+	}
+
+	public void setChangeSummary(String changeSummary) {
+		this.changeSummary = changeSummary;
+	}
+
 }
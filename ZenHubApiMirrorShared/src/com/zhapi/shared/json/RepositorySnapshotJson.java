@@ -0,0 +1,123 @@
+package com.zhapi.shared.json;
+
+/*
+ * Copyright 2020 Jonathan West
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+*/
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.zhapi.json.IssueEventJson;
+import com.zhapi.json.responses.DependenciesForARepoResponseJson;
+import com.zhapi.json.responses.GetBoardForRepositoryResponseJson;
+import com.zhapi.json.responses.GetEpicResponseJson;
+import com.zhapi.json.responses.GetEpicsResponseJson;
+import com.zhapi.json.responses.GetIssueDataResponseJson;
+
+/**
+ * All of the resources that the mirror has stored for a single repository.
+ * 
+ * The seq field is the position of the change feed at the time the snapshot
+ * was started: a replica that applies the change events after seq, on top of
+ * the snapshot, will be up to date (events that occurred while the snapshot
+ * was being read may be applied a second time, which is harmless as each event
+ * causes the resource to be re-read).
+ * 
+ * Resources that the mirror has not stored are null (or absent from the maps).
+ */
+public class RepositorySnapshotJson {
+
+	private long repoId;
+	private long seq;
+
+	private GetBoardForRepositoryResponseJson board;
+	private GetEpicsResponseJson epics;
+	private DependenciesForARepoResponseJson dependencies;
+
+	/** issue number -> epic */
+	private Map<Integer, GetEpicResponseJson> epic = new HashMap<>();
+
+	/** issue number -> issue data */
+	private Map<Integer, GetIssueDataResponseJson> issueData = new HashMap<>();
+
+	/** issue number -> issue events, newest first */
+	private Map<Integer, List<IssueEventJson>> issueEvents = new HashMap<>();
+
+	public long getRepoId() {
+		return repoId;
+	}
+
+	public void setRepoId(long repoId) {
+		this.repoId = repoId;
+	}
+
+	public long getSeq() {
+		return seq;
+	}
+
+	public void setSeq(long seq) {
+		this.seq = seq;
+	}
+
+	public GetBoardForRepositoryResponseJson getBoard() {
+		return board;
+	}
+
+	public void setBoard(GetBoardForRepositoryResponseJson board) {
+		this.board = board;
+	}
+
+	public GetEpicsResponseJson getEpics() {
+		return epics;
+	}
+
+	public void setEpics(GetEpicsResponseJson epics) {
+		this.epics = epics;
+	}
+
+	public DependenciesForARepoResponseJson getDependencies() {
+		return dependencies;
+	}
+
+	public void setDependencies(DependenciesForARepoResponseJson dependencies) {
+		this.dependencies = dependencies;
+	}
+
+	public Map<Integer, GetEpicResponseJson> getEpic() {
+		return epic;
+	}
+
+	public void setEpic(Map<Integer, GetEpicResponseJson> epic) {
+		this.epic = epic;
+	}
+
+	public Map<Integer, GetIssueDataResponseJson> getIssueData() {
+		return issueData;
+	}
+
+	public void setIssueData(Map<Integer, GetIssueDataResponseJson> issueData) {
+		this.issueData = issueData;
+	}
+
+	public Map<Integer, List<IssueEventJson>> getIssueEvents() {
+		return issueEvents;
+	}
+
+	public void setIssueEvents(Map<Integer, List<IssueEventJson>> issueEvents) {
+		this.issueEvents = issueEvents;
+	}
+
+}